@@ -0,0 +1,31 @@
+package com.xqnode.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行基准测试并把结果写成json, 方便不同版本之间对比
+ * <p>
+ * java -jar target/benchmarks.jar [JMH参数, 如 RedisServiceBenchmark -prof gc]
+ * <p>
+ * 结果默认写到jmh-result.json, 可以用-Dbenchmark.result=文件名修改
+ *
+ * @author xqnode
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .resultFormat(ResultFormatType.JSON)
+                .result(System.getProperty("benchmark.result", "jmh-result.json"))
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,140 @@
+package com.xqnode.benchmark.mybatis;
+
+import com.example.common.LoginProperties;
+import com.example.common.UserBatchProperties;
+import com.example.entity.User;
+import com.example.mapper.UserMapper;
+import com.example.service.CredentialCache;
+import com.example.service.CredentialCacheInterceptor;
+import com.example.service.UserBatchService;
+import org.mybatis.spring.annotation.MapperScan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量写入user表的吞吐量, 结果的ops/s即每秒写入的行数, 数据库使用MySQL模式的内存H2
+ * <p>
+ * single: 逐行insert, 每行一次往返; jdbcBatch: 逐行insert, BATCH执行器批量发送;
+ * multiRow: 多行VALUES; upsert: 多行VALUES, 所有用户名都已存在, 全部走更新. rowsPerStatement只影响multiRow和upsert.
+ * H2不支持rewriteBatchedStatements, jdbcBatch和multiRow的差距在MySQL上会因该参数缩小, 需要在真实MySQL上对比.
+ *
+ * @author xqnode
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkInsertBenchmark {
+
+    private static final int ROWS = 10000;
+
+    @Param({"single", "jdbcBatch", "multiRow", "upsert"})
+    private String mode;
+
+    @Param({"100", "500"})
+    private int rowsPerStatement;
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+    private UserMapper userMapper;
+    private UserBatchService userBatchService;
+    private List<User> users;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(BulkInsertApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:bulk;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.schema=classpath:benchmark-schema.sql",
+                        "--spring.datasource.initialization-mode=always",
+                        "--user.batch.rows-per-statement=" + rowsPerStatement);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        userMapper = context.getBean(UserMapper.class);
+        userBatchService = context.getBean(UserBatchService.class);
+        users = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            User user = new User();
+            user.setUsername("user" + i);
+            user.setNickname("用户" + i);
+            user.setPassword("pwd" + i);
+            users.add(user);
+        }
+        if ("upsert".equals(mode)) {
+            userBatchService.insert(users);
+        }
+    }
+
+    /**
+     * 用户名有唯一索引, 除upsert外每次写入前清空表
+     */
+    @Setup(Level.Invocation)
+    public void truncate() {
+        if (!"upsert".equals(mode)) {
+            jdbcTemplate.execute("truncate table `user`");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void write() {
+        switch (mode) {
+            case "single":
+                for (User user : users) {
+                    userMapper.insert(user);
+                }
+                break;
+            case "jdbcBatch":
+                userBatchService.insertByJdbcBatch(users);
+                break;
+            case "multiRow":
+                userBatchService.insert(users);
+                break;
+            default:
+                userBatchService.upsert(users);
+        }
+    }
+
+    /**
+     * 只加载mapper和批量写入, 包含upsert时失效登录缓存的拦截器
+     */
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @MapperScan("com.example.mapper")
+    @Import({UserBatchService.class, UserBatchProperties.class, CredentialCache.class,
+            CredentialCacheInterceptor.class, LoginProperties.class})
+    static class BulkInsertApplication {
+    }
+}
@@ -0,0 +1,117 @@
+package com.xqnode.benchmark.mybatis;
+
+import com.example.common.LoginProperties;
+import com.example.controller.UserController;
+import com.example.service.CredentialCache;
+import com.example.service.CredentialCacheInterceptor;
+import com.example.service.CredentialService;
+import org.mybatis.spring.annotation.MapperScan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * 通过MockMvc调用UserController.login, 数据库使用MySQL模式的内存H2
+ * <p>
+ * passwordFormat为noop时库里是明文密码, 主要比较查库和缓存的开销; 为bcrypt时库里是{bcrypt}哈希(cost=4,
+ * 生产默认为10), 主要比较密码校验线程池的吞吐
+ *
+ * @author xqnode
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoginBenchmark {
+
+    private static final int USERS = 10000;
+
+    @Param({"noop", "bcrypt"})
+    private String passwordFormat;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private List<String> bodies;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(LoginApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:login;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.schema=classpath:benchmark-schema.sql",
+                        "--spring.datasource.initialization-mode=always");
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        List<Object[]> rows = new ArrayList<>(USERS);
+        bodies = new ArrayList<>(USERS);
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(4);
+        for (int i = 0; i < USERS; i++) {
+            String password = "bcrypt".equals(passwordFormat) ? "{bcrypt}" + bcrypt.encode("pwd" + i) : "pwd" + i;
+            rows.add(new Object[]{"user" + i, "用户" + i, password});
+            bodies.add("{\"username\":\"user" + i + "\",\"password\":\"pwd" + i + "\"}");
+        }
+        jdbcTemplate.batchUpdate("insert into `user` (username, nickname, `password`) values (?, ?, ?)", rows);
+        mockMvc = MockMvcBuilders.standaloneSetup(context.getBean(UserController.class)).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult login() throws Exception {
+        String body = bodies.get(ThreadLocalRandom.current().nextInt(USERS));
+        MvcResult started = mockMvc.perform(post("/user/login").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andReturn();
+        // 登录是异步返回的, 等待校验完成后再分派一次得到响应体
+        return mockMvc.perform(asyncDispatch(started)).andReturn();
+    }
+
+    /**
+     * 只加载UserController、登录校验和mapper, 不依赖service-mybatis的启动类
+     */
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @MapperScan("com.example.mapper")
+    @Import({UserController.class, CredentialService.class, CredentialCache.class, CredentialCacheInterceptor.class,
+            LoginProperties.class})
+    static class LoginApplication {
+    }
+}
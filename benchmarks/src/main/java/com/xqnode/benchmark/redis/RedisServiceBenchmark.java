@@ -0,0 +1,98 @@
+package com.xqnode.benchmark.redis;
+
+import com.xqnode.benchmark.support.LocalRedis;
+import com.xqnode.redis.RedisApplication;
+import com.xqnode.redis.service.RedisBatch;
+import com.xqnode.redis.service.RedisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisService逐条调用 vs RedisBatch pipeline批量调用, 每次调用处理batchSize个key
+ *
+ * @author xqnode
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisServiceBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int batchSize;
+
+    private final LocalRedis redis = new LocalRedis();
+    private ConfigurableApplicationContext context;
+    private RedisService redisService;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int port = redis.start();
+        context = new SpringApplicationBuilder(RedisApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.redis.host=localhost", "--spring.redis.port=" + port);
+        redisService = context.getBean(RedisService.class);
+        keys = new String[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            keys[i] = "bench:" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        redis.stop();
+    }
+
+    @Benchmark
+    public void singleSet() {
+        for (String key : keys) {
+            redisService.set(key, key);
+        }
+    }
+
+    @Benchmark
+    public void batchSet() {
+        RedisBatch batch = redisService.batch();
+        for (String key : keys) {
+            batch.set(key, key);
+        }
+        batch.execute();
+    }
+
+    @Benchmark
+    public void singleGet(Blackhole blackhole) {
+        for (String key : keys) {
+            blackhole.consume(redisService.get(key));
+        }
+    }
+
+    @Benchmark
+    public void batchGet(Blackhole blackhole) {
+        RedisBatch batch = redisService.batch();
+        for (String key : keys) {
+            batch.get(key);
+        }
+        blackhole.consume(batch.execute());
+    }
+}
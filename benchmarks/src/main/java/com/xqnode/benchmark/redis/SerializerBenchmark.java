@@ -0,0 +1,146 @@
+package com.xqnode.benchmark.redis;
+
+import com.xqnode.redis.serializer.RedisSerializers;
+import com.xqnode.redis.serializer.SerializerFormat;
+import lombok.Data;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.IterationParams;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisConfig中hash value序列化方式的对比: 原有json(default typing) vs smile/cbor, 以及是否LZ4压缩
+ * <p>
+ * ns/op由JMH给出, 每种组合序列化后的字节数作为辅助指标serialize:serializedBytes一起写进结果
+ *
+ * @author xqnode
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    private SerializerFormat format;
+
+    /**
+     * 0表示不压缩
+     */
+    @Param({"0", "256"})
+    private int compressThreshold;
+
+    private RedisSerializer<Object> serializer;
+    private UserProfile value;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        serializer = RedisSerializers.valueSerializer(format, Object.class, compressThreshold);
+        value = UserProfile.sample();
+        bytes = serializer.serialize(value);
+    }
+
+    @Benchmark
+    public byte[] serialize(Size size) {
+        byte[] result = serializer.serialize(value);
+        size.record(result.length);
+        return result;
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(bytes);
+    }
+
+    /**
+     * 序列化后的字节数
+     * <p>
+     * EVENTS计数器的结果是各次测量迭代的值相加, 所以每次迭代只记入字节数的1/迭代次数, 相加后正好是一次序列化的字节数
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Size {
+        public double serializedBytes;
+        private int iterations;
+
+        @Setup(Level.Iteration)
+        public void setup(IterationParams params) {
+            iterations = params.getCount();
+        }
+
+        void record(int bytes) {
+            serializedBytes = (double) bytes / iterations;
+        }
+    }
+
+    /**
+     * 模拟缓存在hash中的用户资料
+     */
+    @Data
+    public static class UserProfile {
+        private Long id;
+        private String username;
+        private String nickname;
+        private Integer age;
+        private Boolean vip;
+        private List<String> tags;
+        private Map<String, String> attributes;
+        private List<Address> addresses;
+
+        static UserProfile sample() {
+            UserProfile profile = new UserProfile();
+            profile.setId(10086L);
+            profile.setUsername("zhangsan");
+            profile.setNickname("Java学习指南");
+            profile.setAge(28);
+            profile.setVip(true);
+            List<String> tags = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tags.add("tag-" + i);
+            }
+            profile.setTags(tags);
+            Map<String, String> attributes = new HashMap<>();
+            for (int i = 0; i < 8; i++) {
+                attributes.put("attr-" + i, "value-" + i);
+            }
+            profile.setAttributes(attributes);
+            List<Address> addresses = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Address address = new Address();
+                address.setProvince("安徽");
+                address.setCity("合肥");
+                address.setDetail("蜀山区某某路" + i + "号");
+                addresses.add(address);
+            }
+            profile.setAddresses(addresses);
+            return profile;
+        }
+    }
+
+    @Data
+    public static class Address {
+        private String province;
+        private String city;
+        private String detail;
+    }
+}
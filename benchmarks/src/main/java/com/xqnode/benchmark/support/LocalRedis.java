@@ -0,0 +1,31 @@
+package com.xqnode.benchmark.support;
+
+import redis.embedded.RedisServer;
+
+/**
+ * 基准测试用的本地redis
+ * <p>
+ * 默认在benchmark.redis.port端口(6380)启动一个内嵌redis; 指定-Dbenchmark.redis.embedded=false时
+ * 直接连接该端口上已有的redis
+ *
+ * @author xqnode
+ */
+public class LocalRedis {
+
+    private final int port = Integer.getInteger("benchmark.redis.port", 6380);
+    private RedisServer server;
+
+    public int start() {
+        if (Boolean.parseBoolean(System.getProperty("benchmark.redis.embedded", "true"))) {
+            server = RedisServer.builder().port(port).setting("maxmemory 256mb").build();
+            server.start();
+        }
+        return port;
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+}
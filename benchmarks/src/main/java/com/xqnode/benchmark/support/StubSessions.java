@@ -0,0 +1,66 @@
+package com.xqnode.benchmark.support;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 不依赖容器的Session替身, 发出的消息只计数不写网络
+ *
+ * @author xqnode
+ */
+public final class StubSessions {
+
+    private StubSessions() {
+    }
+
+    public static Session create(String id, LongAdder sent) {
+        Object basic = Proxy.newProxyInstance(StubSessions.class.getClassLoader(),
+                new Class<?>[]{RemoteEndpoint.Basic.class}, (proxy, method, args) -> {
+                    if (method.getName().startsWith("send")) {
+                        sent.increment();
+                    }
+                    return null;
+                });
+        Object async = Proxy.newProxyInstance(StubSessions.class.getClassLoader(),
+                new Class<?>[]{RemoteEndpoint.Async.class}, (proxy, method, args) -> {
+                    if (method.getName().startsWith("send")) {
+                        sent.increment();
+                        // 带回调的发送立即回调成功
+                        if (args.length > 1 && args[1] instanceof SendHandler) {
+                            ((SendHandler) args[1]).onResult(new SendResult());
+                        }
+                    }
+                    return null;
+                });
+        Map<String, Object> userProperties = new HashMap<>();
+        return (Session) Proxy.newProxyInstance(StubSessions.class.getClassLoader(),
+                new Class<?>[]{Session.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+                        case "getBasicRemote":
+                            return basic;
+                        case "getAsyncRemote":
+                            return async;
+                        case "isOpen":
+                            return true;
+                        case "getUserProperties":
+                            return userProperties;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "StubSession[" + id + "]";
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
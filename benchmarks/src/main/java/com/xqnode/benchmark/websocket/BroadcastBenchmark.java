@@ -0,0 +1,98 @@
+package com.xqnode.benchmark.websocket;
+
+import com.example.common.WebSocketDeliveryProperties;
+import com.example.service.DeliveryLanes;
+import com.example.service.FanoutEngine;
+import com.example.service.WebSocketServer;
+import com.xqnode.benchmark.support.StubSessions;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.websocket.Session;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 房间广播吞吐量, 使用替身Session, 不经过网络
+ * <p>
+ * ops/s为每秒广播的消息数, deliveries为每秒投递的(消息 x 收件人)数
+ *
+ * @author xqnode
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BroadcastBenchmark {
+
+    private static final String ROOM = "bench";
+
+    @Param({"100", "1000", "10000"})
+    private int members;
+
+    @Param({"1", "4", "8"})
+    private int lanes;
+
+    private final WebSocketServer server = new WebSocketServer();
+    private final LongAdder sent = new LongAdder();
+    private DeliveryLanes deliveryLanes;
+    private Session[] sessions;
+    private String frame;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        WebSocketDeliveryProperties properties = new WebSocketDeliveryProperties();
+        properties.setLanes(lanes);
+        deliveryLanes = new DeliveryLanes(properties);
+        server.setDeliveryLanes(deliveryLanes);
+        server.setFanoutEngine(new FanoutEngine(deliveryLanes));
+        sessions = new Session[members];
+        for (int i = 0; i < members; i++) {
+            sessions[i] = StubSessions.create(String.valueOf(i), sent);
+            server.onOpen(sessions[i], String.valueOf(i));
+            server.onMessage("{\"type\":\"join\",\"roomId\":\"" + ROOM + "\"}", sessions[i], String.valueOf(i));
+        }
+        frame = "{\"fromUserId\":\"0\",\"roomId\":\"" + ROOM + "\",\"text\":\"hello everyone\"}";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (int i = 0; i < members; i++) {
+            server.onClose(sessions[i], String.valueOf(i));
+        }
+        deliveryLanes.shutdown();
+        System.out.println("sent=" + sent.sum());
+    }
+
+    @Benchmark
+    public int broadcast(Deliveries deliveries) {
+        int delivered = WebSocketServer.broadcastLocal(ROOM, frame, null).join();
+        deliveries.deliveries += delivered;
+        return delivered;
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Deliveries {
+        public long deliveries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            deliveries = 0;
+        }
+    }
+}
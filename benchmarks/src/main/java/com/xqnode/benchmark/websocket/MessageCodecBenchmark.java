@@ -0,0 +1,93 @@
+package com.xqnode.benchmark.websocket;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.example.codec.BinaryMessageCodec;
+import com.example.codec.ChatMessage;
+import com.example.codec.JsonMessageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息编解码: hutool JSONObject vs 流式解码/复用缓冲区编码/二进制帧
+ * <p>
+ * 分配速率需要加GC profiler: java -jar benchmarks.jar MessageCodecBenchmark -prof gc,
+ * 看gc.alloc.rate.norm(每次操作分配的字节数)
+ *
+ * @author xqnode
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageCodecBenchmark {
+
+    private final String inbound = "{\"toUserId\":\"10086\",\"text\":\"你好, 这是一条测试消息 \\\"quoted\\\"\",\"clientTime\":1612345678901,\"meta\":{\"os\":\"web\",\"tags\":[1,2,3]}}";
+    private final ChatMessage message = new ChatMessage();
+    private final ByteBuffer binaryInbound = BinaryMessageCodec.encodeChat("10086", "你好, 这是一条测试消息");
+    /**
+     * 编码的输入放在字段里, 全是字面量时拼接会被编译期折叠成常量
+     */
+    private String fromUserId = "1";
+    private String text = "你好, 这是一条测试消息 \"quoted\"";
+
+    @Benchmark
+    public void decodeHutool(Blackhole bh) {
+        JSONObject obj = JSONUtil.parseObj(inbound);
+        bh.consume(obj.getStr("toUserId"));
+        bh.consume(obj.getStr("text"));
+    }
+
+    @Benchmark
+    public void decodeStreaming(Blackhole bh) {
+        JsonMessageCodec.decode(inbound, message);
+        bh.consume(message.getToUserId());
+        bh.consume(message.getText());
+    }
+
+    @Benchmark
+    public void decodeBinary(Blackhole bh) {
+        BinaryMessageCodec.decode(binaryInbound.duplicate(), message);
+        bh.consume(message.getToUserId());
+        bh.consume(message.getText());
+    }
+
+    /**
+     * 原来的拼接方式, 输出不是合法json, 仅作对比
+     */
+    @Benchmark
+    public String encodeConcat() {
+        return "{\"fromUserId: " + fromUserId + "\", \"text\": " + text + "}";
+    }
+
+    @Benchmark
+    public String encodeHutool() {
+        return JSONUtil.createObj().set("fromUserId", fromUserId).set("text", text).toString();
+    }
+
+    @Benchmark
+    public String encodePooled() {
+        return JsonMessageCodec.encodeChat(fromUserId, text);
+    }
+
+    @Benchmark
+    public int encodeBinary() {
+        ByteBuffer buffer = BinaryMessageCodec.encodeChat(fromUserId, text);
+        int size = buffer.remaining();
+        BinaryMessageCodec.release(buffer);
+        return size;
+    }
+}
@@ -0,0 +1,199 @@
+package com.xqnode.benchmark.websocket;
+
+import com.example.common.WebSocketOutboundProperties;
+import com.example.service.OutboundQueue;
+import com.example.service.OverflowPolicy;
+import com.example.service.WebSocketConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.websocket.CloseReason;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * 发送队列的批量窗口和permessage-deflate对帧数、线上字节数和延迟的影响, 使用替身连接, 不经过网络
+ * <p>
+ * 替身连接对每一帧按permessage-deflate的方式压缩(连接内保留字典, SYNC_FLUSH)并统计压缩后的字节数,
+ * 压缩的CPU开销计入吞吐量. 每轮结束打印每条消息平均的帧数、字节数和入队到发送完成的平均延迟.
+ * pauseMicros模拟发送方的消息间隔, 为0时发送方全速入队, 窗口内总能攒满batchMaxMessages条.
+ * 队列使用BLOCK策略, 发送方先等待空位再入队, 吞吐量是发送队列实际发出的速率, 不包含丢弃的消息.
+ * 消息轮流取自一组序号和正文都不相同的消息, 同一条消息反复压缩时字典命中整条消息, 压缩率会失真.
+ * <p>
+ * 真实网络上的延迟对比用{@link com.xqnode.benchmark.websocket.load.WebSocketLoadTest},
+ * 例如-Dload.serverArgs=--websocket.outbound.batch-window=5ms
+ *
+ * @author xqnode
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutboundBatchingBenchmark {
+
+    @Param({"0", "2", "10"})
+    private int batchWindowMillis;
+
+    @Param({"false", "true"})
+    private boolean compression;
+
+    @Param({"0", "20"})
+    private int pauseMicros;
+
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder wireBytes = new LongAdder();
+    private OutboundQueue queue;
+    private String[] messages;
+    private int next;
+    private long pauseTokens;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        WebSocketOutboundProperties properties = new WebSocketOutboundProperties();
+        properties.setBatchWindow(Duration.ofMillis(batchWindowMillis));
+        // 发送方比发送队列快时在发送方等待, 不丢弃
+        properties.setOverflowPolicy(OverflowPolicy.BLOCK);
+        properties.setBlockTimeout(Duration.ofSeconds(10));
+        queue = new OutboundQueue("bench", wireConnection(), properties);
+        messages = messages(4096);
+        // Blackhole.consumeCPU的1个token约几纳秒, 这里只求量级
+        pauseTokens = pauseMicros * 200L;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        // 等待最后一个窗口发送完
+        Thread.sleep(batchWindowMillis + 50L);
+        OutboundQueue.Stats stats = queue.stats();
+        long messages = Math.max(stats.getSentMessages(), 1);
+        System.out.printf("%nmessages=%d frames/message=%.4f bytes/message=%.2f avgLatency=%dus maxLatency=%dus dropped=%d%n",
+                stats.getSentMessages(), (double) frames.sum() / messages, (double) wireBytes.sum() / messages,
+                stats.getAvgLatencyMicros(), stats.getMaxLatencyMicros(), stats.getDropped());
+        queue.close();
+    }
+
+    @Benchmark
+    public boolean offer() {
+        if (pauseTokens > 0) {
+            Blackhole.consumeCPU(pauseTokens);
+        }
+        String message = messages[next];
+        next = (next + 1) & (messages.length - 1);
+        return queue.awaitCapacity() && queue.offer(message);
+    }
+
+    /**
+     * 聊天消息: 发件人和收件人取自100个用户, 带递增的消息id和时间戳, 正文由常用词随机组成
+     *
+     * @param count 2的幂
+     */
+    private static String[] messages(int count) {
+        String[] words = {"hello", "ok", "see", "you", "at", "the", "meeting", "tomorrow", "thanks", "sure", "lunch",
+                "later", "call", "me", "when", "free", "sounds", "good", "on", "my", "way", "done", "sent", "file"};
+        Random random = new Random(42);
+        long timestamp = 1700000000000L;
+        String[] messages = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 2 + random.nextInt(10); w > 0; w--) {
+                text.append(words[random.nextInt(words.length)]).append(w > 1 ? " " : "");
+            }
+            timestamp += random.nextInt(2000);
+            messages[i] = "{\"id\":" + (100000 + i) + ",\"fromUserId\":\"user" + random.nextInt(100)
+                    + "\",\"toUserId\":\"user" + random.nextInt(100) + "\",\"time\":" + timestamp
+                    + ",\"text\":\"" + text + "\"}";
+        }
+        return messages;
+    }
+
+    /**
+     * 统计帧数和线上字节数的替身连接, 发送立即完成
+     */
+    private WebSocketConnection wireConnection() {
+        Deflater deflater = compression ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+        byte[] out = new byte[64 * 1024];
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        return new WebSocketConnection() {
+            @Override
+            public String getId() {
+                return "bench";
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public Map<String, Object> getAttributes() {
+                return attributes;
+            }
+
+            @Override
+            public String getRequestParameter(String name) {
+                return null;
+            }
+
+            @Override
+            public CompletableFuture<Void> sendText(String text) {
+                byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+                frames.increment();
+                wireBytes.add(deflater == null ? payload.length : deflate(deflater, payload, out));
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public CompletableFuture<Void> sendBinary(ByteBuffer data) {
+                frames.increment();
+                wireBytes.add(data.remaining());
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public CompletableFuture<Void> sendPing() {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public void close(CloseReason reason) {
+            }
+        };
+    }
+
+    /**
+     * 按permessage-deflate压缩一帧, 返回压缩后的字节数; 帧尾的00 00 ff ff按协议不发送
+     */
+    private static int deflate(Deflater deflater, byte[] payload, byte[] out) {
+        synchronized (deflater) {
+            deflater.setInput(payload);
+            int total = 0;
+            int n;
+            while ((n = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH)) > 0) {
+                total += n;
+            }
+            return total - 4;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.xqnode.benchmark.websocket;
+
+import com.example.service.WebSocketServer;
+import com.xqnode.benchmark.support.StubSessions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.websocket.Session;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocketServer.onMessage的解析和路由开销, 使用替身Session, 不经过网络
+ *
+ * @author xqnode
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WebSocketServerBenchmark {
+
+    private static final int USERS = 1000;
+
+    private final WebSocketServer server = new WebSocketServer();
+    private final LongAdder sent = new LongAdder();
+    private Session[] sessions;
+    private String[] messages;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sessions = new Session[USERS];
+        messages = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            sessions[i] = StubSessions.create(String.valueOf(i), sent);
+            server.onOpen(sessions[i], String.valueOf(i));
+            messages[i] = "{\"toUserId\":\"" + ((i + 1) % USERS) + "\",\"text\":\"hello from " + i + "\"}";
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (int i = 0; i < USERS; i++) {
+            server.onClose(sessions[i], String.valueOf(i));
+        }
+        System.out.println("sent=" + sent.sum());
+    }
+
+    @Benchmark
+    public void onMessage() {
+        int from = ThreadLocalRandom.current().nextInt(USERS);
+        server.onMessage(messages[from], sessions[from], String.valueOf(from));
+    }
+}
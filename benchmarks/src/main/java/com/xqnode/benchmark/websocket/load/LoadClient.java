@@ -0,0 +1,125 @@
+package com.xqnode.benchmark.websocket.load;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+
+/**
+ * 压测的一个客户端连接
+ * <p>
+ * 发出的消息text为发送时的{@link LoadStats#clock()}, 收到后用当前时间减去它得到投递延迟;
+ * 服务端会把排队的消息用换行合并成一帧, 按行处理.
+ *
+ * @author xqnode
+ */
+class LoadClient extends Endpoint {
+
+    private static final String TEXT_FIELD = "\"text\":\"";
+
+    private final String userId;
+    private final LoadStats stats;
+    private volatile Session session;
+    private volatile boolean closing;
+
+    LoadClient(String userId, LoadStats stats) {
+        this.userId = userId;
+        this.stats = stats;
+    }
+
+    @Override
+    public void onOpen(Session session, EndpointConfig config) {
+        this.session = session;
+        session.addMessageHandler(new MessageHandler.Whole<String>() {
+            @Override
+            public void onMessage(String frame) {
+                received(frame);
+            }
+        });
+    }
+
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        if (!closing) {
+            stats.getUnexpectedCloses().increment();
+        }
+    }
+
+    @Override
+    public void onError(Session session, Throwable error) {
+        stats.getReceiveErrors().increment();
+    }
+
+    String getUserId() {
+        return userId;
+    }
+
+    /**
+     * 同一连接不能并发发送, 发送线程之间按连接加锁
+     *
+     * @return 是否发送成功
+     */
+    boolean send(String message) {
+        Session current = session;
+        if (current == null || !current.isOpen()) {
+            stats.getSendErrors().increment();
+            return false;
+        }
+        try {
+            synchronized (this) {
+                current.getBasicRemote().sendText(message);
+            }
+            return true;
+        } catch (Exception e) {
+            stats.getSendErrors().increment();
+            return false;
+        }
+    }
+
+    void close() {
+        closing = true;
+        Session current = session;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    private void received(String frame) {
+        long now = stats.clock();
+        int from = 0;
+        while (from < frame.length()) {
+            int end = frame.indexOf('\n', from);
+            if (end < 0) {
+                end = frame.length();
+            }
+            long sentNanos = sentNanos(frame, from, end);
+            if (sentNanos > 0) {
+                stats.delivered(now - sentNanos);
+            }
+            from = end + 1;
+        }
+    }
+
+    /**
+     * 从一行消息中取出发送时间, 不是压测消息(如离线信箱)时返回0
+     */
+    private static long sentNanos(String frame, int from, int end) {
+        int start = frame.indexOf(TEXT_FIELD, from);
+        if (start < 0 || start >= end) {
+            return 0;
+        }
+        long value = 0;
+        for (int i = start + TEXT_FIELD.length(); i < end; i++) {
+            char c = frame.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
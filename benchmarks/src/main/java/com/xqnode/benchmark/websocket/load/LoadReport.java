@@ -0,0 +1,52 @@
+package com.xqnode.benchmark.websocket.load;
+
+import lombok.Data;
+
+/**
+ * 一次压测的结果, 写成json方便不同版本之间对比
+ *
+ * @author xqnode
+ */
+@Data
+public class LoadReport {
+    /**
+     * servlet、reactive, 连接外部服务端时为external
+     */
+    private String serverMode;
+    private String pattern;
+    private int clients;
+    private int roomSize;
+    private int durationSeconds;
+    private int targetRate;
+
+    private int connected;
+    private long connectFailures;
+    /**
+     * 每秒建立的连接数
+     */
+    private double connectRate;
+    private double connectP99Millis;
+    /**
+     * 服务端full gc后每个连接占用的堆内存, 连接外部服务端时为-1
+     */
+    private long heapBytesPerConnection;
+
+    private long sent;
+    private long expectedDeliveries;
+    private long delivered;
+    private long lost;
+    /**
+     * 测量阶段每秒投递到收件人的消息数
+     */
+    private double deliveriesPerSecond;
+    private double latencyP50Millis;
+    private double latencyP99Millis;
+    private double latencyP999Millis;
+    private double latencyMaxMillis;
+
+    private long sendErrors;
+    private long receiveErrors;
+    private long unexpectedCloses;
+    private long serverDropped;
+    private long serverErrors;
+}
@@ -0,0 +1,44 @@
+package com.xqnode.benchmark.websocket.load;
+
+import lombok.Getter;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测过程中所有客户端共用的计数和延迟直方图, 延迟以微秒记录
+ *
+ * @author xqnode
+ */
+@Getter
+class LoadStats {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final long startNanos = System.nanoTime();
+    private final Histogram deliveryLatency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final Histogram connectLatency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder sendErrors = new LongAdder();
+    private final LongAdder receiveErrors = new LongAdder();
+    private final LongAdder unexpectedCloses = new LongAdder();
+
+    /**
+     * 压测开始以来的纳秒数, 始终为正, 作为消息中的发送时间
+     */
+    long clock() {
+        return System.nanoTime() - startNanos + 1;
+    }
+
+    void delivered(long latencyNanos) {
+        delivered.increment();
+        deliveryLatency.recordValue(Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(latencyNanos), 0), MAX_LATENCY_MICROS));
+    }
+
+    void connected(long latencyNanos) {
+        connectLatency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY_MICROS));
+    }
+}
@@ -0,0 +1,83 @@
+package com.xqnode.benchmark.websocket.load;
+
+import com.example.common.ReactiveWebSocketConfig;
+import com.example.common.WebSocketConfig;
+import com.example.common.WebSocketDeliveryProperties;
+import com.example.common.WebSocketLifecycleProperties;
+import com.example.common.WebSocketMailboxProperties;
+import com.example.common.WebSocketOutboundProperties;
+import com.example.mailbox.LocalMailboxStore;
+import com.example.mailbox.MailboxService;
+import com.example.service.ConnectionStats;
+import com.example.service.DeliveryLanes;
+import com.example.service.FanoutEngine;
+import com.example.service.OutboundQueue;
+import com.example.service.SessionLifecycleManager;
+import com.example.service.WebSocketServer;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 压测用的websocket服务端, 由{@link WebSocketLoadTest}在单独的JVM中启动, 堆内存只包含服务端的连接
+ * <p>
+ * 只加载service-websocket的连接、扇出、心跳和本地离线信箱, 不连接数据库和redis;
+ * 传入--spring.main.web-application-type=reactive时运行在Reactor Netty上
+ *
+ * @author xqnode
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class, RedisAutoConfiguration.class,
+        RedisRepositoriesAutoConfiguration.class})
+@Import({WebSocketConfig.class, ReactiveWebSocketConfig.class, WebSocketServer.class, DeliveryLanes.class,
+        FanoutEngine.class, SessionLifecycleManager.class, MailboxService.class, LocalMailboxStore.class,
+        WebSocketOutboundProperties.class, WebSocketDeliveryProperties.class, WebSocketLifecycleProperties.class,
+        WebSocketMailboxProperties.class, LoadTestServer.StatsController.class})
+public class LoadTestServer {
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(LoadTestServer.class).run(args);
+    }
+
+    @RestController
+    static class StatsController {
+
+        /**
+         * 服务端堆内存和连接指标
+         *
+         * @param gc 是否先做一次full gc, 测量每连接内存时使用
+         */
+        @GetMapping("/load/stats")
+        public Map<String, Object> stats(@RequestParam(defaultValue = "false") boolean gc) {
+            if (gc) {
+                System.gc();
+            }
+            Runtime runtime = Runtime.getRuntime();
+            ConnectionStats connections = WebSocketServer.connectionStats();
+            long dropped = 0;
+            long failed = 0;
+            for (OutboundQueue.Stats outbound : WebSocketServer.outboundStats()) {
+                dropped += outbound.getDropped();
+                failed += outbound.getFailed();
+            }
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("heapUsed", runtime.totalMemory() - runtime.freeMemory());
+            stats.put("online", connections.getOnline());
+            stats.put("evicted", connections.getEvicted());
+            stats.put("errors", connections.getErrors());
+            stats.put("dropped", dropped);
+            stats.put("failed", failed);
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.xqnode.benchmark.websocket.load;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.json.JSONUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * servlet(Tomcat)和reactive(Reactor Netty)两种服务端模式的对比
+ * <p>
+ * 每种模式依次跑两轮{@link WebSocketLoadTest}: 空闲轮只建立idleClients个连接并保持, 比较每连接堆内存;
+ * 流量轮按load.*参数发送消息, 比较吞吐和延迟. 每轮在单独的JVM中运行, 结果写到load-result-模式-轮次.json并打印对比表.
+ * <p>
+ * 投递速率达到目标速率说明服务端没有饱和, 这时只能比较延迟; 要比较最大吞吐需要把rate调到超过服务端的处理能力,
+ * 并且压测客户端不能和服务端抢同一批CPU.
+ * <p>
+ * java -Dload.idleClients=10000 -Dload.rate=20000 -cp target/benchmarks.jar com.xqnode.benchmark.websocket.load.ServerModeComparison
+ *
+ * @author xqnode
+ */
+public class ServerModeComparison {
+
+    private static final String[] MODES = {"servlet", "reactive"};
+    private static final int IDLE_CLIENTS = Integer.getInteger("load.idleClients", 10000);
+    private static final int IDLE_SECONDS = Integer.getInteger("load.idleDuration", 30);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, LoadReport> reports = new LinkedHashMap<>();
+        for (String mode : MODES) {
+            reports.put(mode + "-idle", run(mode, "idle", "-Dload.clients=" + IDLE_CLIENTS, "-Dload.rate=0",
+                    "-Dload.duration=" + IDLE_SECONDS));
+            reports.put(mode + "-traffic", run(mode, "traffic"));
+        }
+
+        System.out.printf("%-18s %10s %14s %10s %14s %10s %10s %10s %8s%n", "run", "connected", "heap/conn(B)",
+                "target/s", "deliveries/s", "p50(ms)", "p99(ms)", "p999(ms)", "errors");
+        for (Map.Entry<String, LoadReport> entry : reports.entrySet()) {
+            LoadReport r = entry.getValue();
+            long errors = r.getConnectFailures() + r.getSendErrors() + r.getReceiveErrors() + r.getUnexpectedCloses()
+                    + r.getLost() + r.getServerDropped() + r.getServerErrors();
+            System.out.printf("%-18s %10d %14d %10d %14.0f %10.2f %10.2f %10.2f %8d%n", entry.getKey(), r.getConnected(),
+                    r.getHeapBytesPerConnection(), r.getTargetRate(), r.getDeliveriesPerSecond(), r.getLatencyP50Millis(),
+                    r.getLatencyP99Millis(), r.getLatencyP999Millis(), errors);
+        }
+    }
+
+    /**
+     * 在子进程中运行一轮压测, 传入本进程的load.*参数, overrides中的参数优先
+     */
+    private static LoadReport run(String mode, String phase, String... overrides) throws Exception {
+        String result = "load-result-" + mode + "-" + phase + ".json";
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("load.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        for (String override : overrides) {
+            command.add(override);
+        }
+        command.add("-Dload.serverMode=" + mode);
+        command.add("-Dload.result=" + result);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(WebSocketLoadTest.class.getName());
+        // 错误比例超限时子进程返回1, 结果文件仍然会写出
+        new ProcessBuilder(command).inheritIO().start().waitFor();
+        return JSONUtil.toBean(FileUtil.readUtf8String(result), LoadReport.class);
+    }
+}
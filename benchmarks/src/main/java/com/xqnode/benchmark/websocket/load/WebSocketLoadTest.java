@@ -0,0 +1,328 @@
+package com.xqnode.benchmark.websocket.load;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.http.HttpUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.HdrHistogram.Histogram;
+
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.ContainerProvider;
+import javax.websocket.WebSocketContainer;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * /imserver/{userId}的压测和稳定性测试
+ * <p>
+ * 默认在单独的JVM中启动{@link LoadTestServer}, 按connectRate建立clients个连接, 然后按rate(条/秒)持续发送duration秒:
+ * <ul>
+ * <li>direct: 随机用户之间一对一发送</li>
+ * <li>broadcast: 连接按roomSize分组加入房间, 随机用户向自己的房间广播</li>
+ * <li>mixed: 按broadcastRatio的比例混合两种消息</li>
+ * </ul>
+ * 输出连接速率、投递延迟p50/p99/p999、服务端每连接堆内存和各类错误数, 结果写到load-result.json;
+ * 错误比例超过maxErrorRate时以状态码1退出, 可以直接放进CI.
+ * <p>
+ * serverMode为servlet(Tomcat)或reactive(Reactor Netty); rate=0时只保持空闲连接duration秒, 用于测量空闲连接的内存和心跳.
+ * <p>
+ * java -Dload.clients=5000 -Dload.pattern=mixed -cp target/benchmarks.jar com.xqnode.benchmark.websocket.load.WebSocketLoadTest
+ * <p>
+ * 发送时间取计划的发送时刻而不是实际发送时刻, 发送线程落后时排队的时间也计入延迟.
+ * 连接数较多时需要调大ulimit -n; 指定-Dload.target=ws://host:port时压测已经运行的服务端, 不测量内存.
+ *
+ * @author xqnode
+ */
+public class WebSocketLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 2000);
+    private static final int CONNECT_RATE = Integer.getInteger("load.connectRate", 500);
+    private static final int CONNECT_THREADS = Integer.getInteger("load.connectThreads", 16);
+    private static final String PATTERN = System.getProperty("load.pattern", "direct");
+    private static final double BROADCAST_RATIO = Double.parseDouble(System.getProperty("load.broadcastRatio", "0.1"));
+    private static final int ROOM_SIZE = Integer.getInteger("load.roomSize", 50);
+    private static final int RATE = Integer.getInteger("load.rate", 2000);
+    private static final int SENDERS = Integer.getInteger("load.senders", 4);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup", 10);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration", 60);
+    private static final String SERVER_MODE = System.getProperty("load.serverMode", "servlet");
+    private static final String TARGET = System.getProperty("load.target");
+    private static final String SERVER_JVM_ARGS = System.getProperty("load.serverJvmArgs", "-Xmx2g");
+    private static final String SERVER_ARGS = System.getProperty("load.serverArgs", "");
+    private static final String RESULT = System.getProperty("load.result", "load-result.json");
+    private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("load.maxErrorRate", "0.001"));
+
+    private final LoadStats stats = new LoadStats();
+    private final LoadReport report = new LoadReport();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder expected = new LongAdder();
+    private List<LoadClient> clients;
+
+    public static void main(String[] args) throws Exception {
+        LoadReport report = new WebSocketLoadTest().run();
+        String json = JSONUtil.toJsonPrettyStr(report);
+        System.out.println(json);
+        FileUtil.writeUtf8String(json, RESULT);
+
+        long errors = report.getConnectFailures() + report.getSendErrors() + report.getReceiveErrors()
+                + report.getUnexpectedCloses() + report.getLost();
+        double errorRate = (double) errors / Math.max(1, report.getClients() + report.getExpectedDeliveries());
+        if (errorRate > MAX_ERROR_RATE) {
+            System.out.printf("错误比例%.4f超过%.4f%n", errorRate, MAX_ERROR_RATE);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    public LoadReport run() throws Exception {
+        report.setServerMode(TARGET == null ? SERVER_MODE : "external");
+        report.setPattern(PATTERN);
+        report.setClients(CLIENTS);
+        report.setRoomSize(ROOM_SIZE);
+        report.setDurationSeconds(DURATION_SECONDS);
+        report.setTargetRate(RATE);
+
+        Process server = null;
+        String target = TARGET;
+        String statsUrl = null;
+        if (target == null) {
+            int port = freePort();
+            statsUrl = "http://localhost:" + port + "/load/stats";
+            server = startServer(port, statsUrl);
+            target = "ws://localhost:" + port;
+        }
+        try {
+            long heapBefore = statsUrl == null ? 0 : serverStats(statsUrl, true).getLong("heapUsed");
+            connect(target);
+            if (clients.size() < 2) {
+                throw new IllegalStateException("建立的连接数不足: " + clients.size());
+            }
+            if (!"direct".equals(PATTERN)) {
+                joinRooms();
+            }
+            if (statsUrl != null) {
+                long heapAfter = serverStats(statsUrl, true).getLong("heapUsed");
+                report.setHeapBytesPerConnection((heapAfter - heapBefore) / clients.size());
+            } else {
+                report.setHeapBytesPerConnection(-1);
+            }
+
+            if (RATE > 0) {
+                drive();
+                drain();
+            } else {
+                TimeUnit.SECONDS.sleep(DURATION_SECONDS);
+            }
+
+            if (statsUrl != null) {
+                JSONObject serverStats = serverStats(statsUrl, false);
+                report.setServerDropped(serverStats.getLong("dropped"));
+                report.setServerErrors(serverStats.getLong("errors") + serverStats.getLong("failed"));
+            }
+            report.setSent(sent.sum());
+            report.setExpectedDeliveries(expected.sum());
+            report.setDelivered(stats.getDelivered().sum());
+            report.setLost(Math.max(0, expected.sum() - stats.getDelivered().sum()));
+            report.setSendErrors(stats.getSendErrors().sum());
+            report.setReceiveErrors(stats.getReceiveErrors().sum());
+            report.setUnexpectedCloses(stats.getUnexpectedCloses().sum());
+            Histogram latency = stats.getDeliveryLatency();
+            report.setLatencyP50Millis(latency.getValueAtPercentile(50) / 1000.0);
+            report.setLatencyP99Millis(latency.getValueAtPercentile(99) / 1000.0);
+            report.setLatencyP999Millis(latency.getValueAtPercentile(99.9) / 1000.0);
+            report.setLatencyMaxMillis(latency.getMaxValue() / 1000.0);
+            return report;
+        } finally {
+            if (clients != null) {
+                clients.forEach(LoadClient::close);
+            }
+            if (server != null) {
+                server.destroy();
+                server.waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * 按connectRate建立连接, 每个连接在连接线程池中同步握手
+     */
+    private void connect(String target) throws InterruptedException {
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        container.setDefaultMaxSessionIdleTimeout(0);
+        ClientEndpointConfig config = ClientEndpointConfig.Builder.create().build();
+        LoadClient[] connected = new LoadClient[CLIENTS];
+        ExecutorService connectors = Executors.newFixedThreadPool(CONNECT_THREADS);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / CONNECT_RATE;
+        long start = stats.clock();
+        for (int i = 0; i < CLIENTS; i++) {
+            pace(start + i * intervalNanos);
+            int index = i;
+            connectors.execute(() -> {
+                LoadClient client = new LoadClient("load" + index, stats);
+                long begin = System.nanoTime();
+                try {
+                    container.connectToServer(client, config, URI.create(target + "/imserver/" + client.getUserId()));
+                    stats.connected(System.nanoTime() - begin);
+                    connected[index] = client;
+                } catch (Exception e) {
+                    stats.getConnectFailures().increment();
+                }
+            });
+        }
+        connectors.shutdown();
+        connectors.awaitTermination(10, TimeUnit.MINUTES);
+        double seconds = (stats.clock() - start) / 1e9;
+
+        clients = new ArrayList<>(CLIENTS);
+        for (LoadClient client : connected) {
+            if (client != null) {
+                clients.add(client);
+            }
+        }
+        report.setConnected(clients.size());
+        report.setConnectFailures(stats.getConnectFailures().sum());
+        report.setConnectRate(clients.size() / seconds);
+        report.setConnectP99Millis(stats.getConnectLatency().getValueAtPercentile(99) / 1000.0);
+    }
+
+    /**
+     * 第k个连接加入房间load-(k/roomSize)
+     */
+    private void joinRooms() throws InterruptedException {
+        for (int k = 0; k < clients.size(); k++) {
+            clients.get(k).send("{\"type\":\"join\",\"roomId\":\"" + room(k) + "\"}");
+        }
+        // 等服务端处理完加入房间的消息
+        TimeUnit.SECONDS.sleep(1);
+    }
+
+    /**
+     * 发送线程按计划的时刻发送, 预热结束后清空延迟直方图开始测量
+     */
+    private void drive() throws InterruptedException {
+        long start = stats.clock();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) * SENDERS / RATE;
+        ExecutorService senders = Executors.newFixedThreadPool(SENDERS);
+        for (int s = 0; s < SENDERS; s++) {
+            long offset = intervalNanos * s / SENDERS;
+            senders.execute(() -> {
+                for (long due = start + offset; due < end; due += intervalNanos) {
+                    pace(due);
+                    sendOne(due);
+                }
+            });
+        }
+
+        pace(measureStart);
+        stats.getDeliveryLatency().reset();
+        long deliveredAtStart = stats.getDelivered().sum();
+        senders.shutdown();
+        senders.awaitTermination(DURATION_SECONDS + 60, TimeUnit.SECONDS);
+        double seconds = (stats.clock() - measureStart) / 1e9;
+        report.setDeliveriesPerSecond((stats.getDelivered().sum() - deliveredAtStart) / seconds);
+    }
+
+    private void sendOne(long due) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int n = clients.size();
+        int from = random.nextInt(n);
+        boolean broadcast = "broadcast".equals(PATTERN)
+                || ("mixed".equals(PATTERN) && random.nextDouble() < BROADCAST_RATIO);
+        if (broadcast) {
+            if (clients.get(from).send("{\"roomId\":\"" + room(from) + "\",\"text\":\"" + due + "\"}")) {
+                sent.increment();
+                expected.add(roomMembers(from) - 1);
+            }
+            return;
+        }
+        int to = random.nextInt(n - 1);
+        if (to >= from) {
+            to++;
+        }
+        if (clients.get(from).send("{\"toUserId\":\"" + clients.get(to).getUserId() + "\",\"text\":\"" + due + "\"}")) {
+            sent.increment();
+            expected.increment();
+        }
+    }
+
+    /**
+     * 等待在途的消息投递完, 最多10秒
+     */
+    private void drain() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (stats.getDelivered().sum() < expected.sum() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+
+    private static String room(int k) {
+        return "load-" + k / ROOM_SIZE;
+    }
+
+    private int roomMembers(int k) {
+        int roomStart = k / ROOM_SIZE * ROOM_SIZE;
+        return Math.min(ROOM_SIZE, clients.size() - roomStart);
+    }
+
+    private void pace(long due) {
+        long wait;
+        while ((wait = due - stats.clock()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private static Process startServer(int port, String statsUrl) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(split(SERVER_JVM_ARGS));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LoadTestServer.class.getName());
+        command.add("--server.port=" + port);
+        command.add("--server.tomcat.max-connections=" + (CLIENTS + 1000));
+        command.add("--spring.main.web-application-type=" + SERVER_MODE);
+        command.addAll(split(SERVER_ARGS));
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        long deadline = System.currentTimeMillis() + 60000;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                serverStats(statsUrl, false);
+                return process;
+            } catch (Exception e) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("压测服务端启动失败");
+                }
+                TimeUnit.MILLISECONDS.sleep(200);
+            }
+        }
+        process.destroyForcibly();
+        throw new IllegalStateException("压测服务端启动超时");
+    }
+
+    private static JSONObject serverStats(String statsUrl, boolean gc) {
+        return JSONUtil.parseObj(HttpUtil.get(statsUrl + "?gc=" + gc, 10000));
+    }
+
+    private static List<String> split(String args) {
+        return args.trim().isEmpty() ? new ArrayList<>() : Arrays.asList(args.trim().split("\\s+"));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
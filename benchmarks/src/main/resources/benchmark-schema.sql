@@ -0,0 +1,9 @@
+DROP TABLE IF EXISTS `user`;
+CREATE TABLE `user` (
+  `id` INT NOT NULL AUTO_INCREMENT,
+  `username` VARCHAR(64) NOT NULL,
+  `nickname` VARCHAR(64),
+  `password` VARCHAR(128) NOT NULL,
+  PRIMARY KEY (`id`)
+);
+CREATE UNIQUE INDEX `uk_user_username` ON `user` (`username`);
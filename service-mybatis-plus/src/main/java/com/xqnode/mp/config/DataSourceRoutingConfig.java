@@ -0,0 +1,88 @@
+package com.xqnode.mp.config;
+
+import com.xqnode.mp.datasource.ReadWriteRoutingInterceptor;
+import com.xqnode.mp.datasource.RoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 开启读写分离时替换默认的数据源, mapper和事务使用的是包了延迟取连接的{@link RoutingDataSource}
+ * <p>
+ * 主从连接池都在dataSource这一个bean里创建, 不单独注册成DataSource bean:
+ * 否则每个DataSource bean初始化时都会触发数据源初始化器去取主数据源, 形成循环依赖
+ *
+ * @author xqnode
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "datasource.routing", name = "enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties dataSourceProperties, DataSourceRoutingProperties properties,
+                                 Environment environment) {
+        // 主库, 连接池参数沿用spring.datasource.hikari.*
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<DataSourceRoutingProperties.Replica> configured = properties.getReplicas();
+        for (int i = 0; i < configured.size(); i++) {
+            DataSourceRoutingProperties.Replica replica = configured.get(i);
+            HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class)
+                    .url(replica.getUrl())
+                    .username(replica.getUsername())
+                    .password(replica.getPassword())
+                    .driverClassName(replica.getDriverClassName())
+                    .build();
+            dataSource.setPoolName("replica-" + i);
+            dataSource.setConnectionTimeout(properties.getReplicaConnectionTimeout().toMillis());
+            // 从库启动时不可用也不影响应用启动, 由健康检查决定是否使用
+            dataSource.setInitializationFailTimeout(-1);
+            dataSource.setReadOnly(true);
+            replicas.put(dataSource.getPoolName(), dataSource);
+        }
+        return new LazyRoutingDataSource(new RoutingDataSource(primary, replicas,
+                properties.getPrimaryAfterWrite().toNanos(), properties.getHealthCheckInterval().toMillis()));
+    }
+
+    @Bean
+    public ReadWriteRoutingInterceptor readWriteRoutingInterceptor(DataSourceRoutingProperties properties) {
+        return new ReadWriteRoutingInterceptor(properties.getReadPrefixes());
+    }
+
+    /**
+     * 延迟取连接的代理, 容器关闭时一并关闭主从连接池
+     */
+    public static class LazyRoutingDataSource extends LazyConnectionDataSourceProxy implements DisposableBean {
+
+        LazyRoutingDataSource(RoutingDataSource routingDataSource) {
+            super(routingDataSource);
+        }
+
+        public RoutingDataSource getRoutingDataSource() {
+            return (RoutingDataSource) getTargetDataSource();
+        }
+
+        @Override
+        public void destroy() {
+            getRoutingDataSource().destroy();
+        }
+    }
+}
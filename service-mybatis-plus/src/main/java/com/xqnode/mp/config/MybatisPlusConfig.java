@@ -0,0 +1,48 @@
+package com.xqnode.mp.config;
+
+import com.baomidou.mybatisplus.annotation.DbType;
+import com.baomidou.mybatisplus.core.injector.AbstractMethod;
+import com.baomidou.mybatisplus.core.injector.DefaultSqlInjector;
+import com.baomidou.mybatisplus.extension.injector.methods.InsertBatchSomeColumn;
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * mybatis-plus配置
+ *
+ * @author xqnode
+ */
+@Configuration
+public class MybatisPlusConfig {
+
+    /**
+     * 分页插件, 把Page参数改写成limit; 每页最多maxPageSize行
+     */
+    @Bean
+    public MybatisPlusInterceptor mybatisPlusInterceptor(PagingProperties pagingProperties) {
+        PaginationInnerInterceptor pagination = new PaginationInnerInterceptor(DbType.MYSQL);
+        pagination.setMaxLimit(pagingProperties.getMaxPageSize());
+        MybatisPlusInterceptor interceptor = new MybatisPlusInterceptor();
+        interceptor.addInnerInterceptor(pagination);
+        return interceptor;
+    }
+
+    /**
+     * 在默认的通用方法之外注入insertBatchSomeColumn(多行VALUES插入), 继承BaseMapper的mapper声明该方法即可使用
+     */
+    @Bean
+    public DefaultSqlInjector sqlInjector() {
+        return new DefaultSqlInjector() {
+            @Override
+            public List<AbstractMethod> getMethodList(Class<?> mapperClass) {
+                List<AbstractMethod> methods = super.getMethodList(mapperClass);
+                methods.add(new InsertBatchSomeColumn());
+                return methods;
+            }
+        };
+    }
+}
@@ -0,0 +1,34 @@
+package com.xqnode.mp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 分页配置
+ *
+ * @author xqnode
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "user.paging")
+public class PagingProperties {
+    /**
+     * 每页最多行数, 超出时按该值查询
+     */
+    private long maxPageSize = 1000;
+    /**
+     * 总数缓存的存活时间, 期间新增或删除的行不反映在总数里
+     */
+    private Duration countCacheTtl = Duration.ofSeconds(30);
+    /**
+     * 缓存的查询条件个数上限
+     */
+    private long countCacheMaximumSize = 1000;
+    /**
+     * 全表并行遍历的线程数
+     */
+    private int scanParallelism = Runtime.getRuntime().availableProcessors();
+}
@@ -0,0 +1,24 @@
+package com.xqnode.mp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 批量写入配置
+ *
+ * @author xqnode
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "user.batch")
+public class UserBatchProperties {
+    /**
+     * 多行VALUES插入时每条insert包含的行数, 整条语句不能超过MySQL的max_allowed_packet
+     */
+    private int rowsPerStatement = 500;
+    /**
+     * BATCH执行器中累计多少行发送一次
+     */
+    private int flushSize = 2000;
+}
@@ -0,0 +1,19 @@
+package com.xqnode.mp.datasource;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 指定mapper方法走主库还是从库, 优先于按方法名前缀的判断; 只对查询语句生效, 写语句总是走主库
+ *
+ * @author xqnode
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DataSourceRoute {
+    DataSourceType value();
+}
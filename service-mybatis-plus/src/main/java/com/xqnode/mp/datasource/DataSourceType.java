@@ -0,0 +1,11 @@
+package com.xqnode.mp.datasource;
+
+/**
+ * 语句使用的数据源
+ *
+ * @author xqnode
+ */
+public enum DataSourceType {
+    PRIMARY,
+    REPLICA
+}
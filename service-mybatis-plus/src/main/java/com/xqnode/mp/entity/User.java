@@ -6,5 +6,6 @@ import lombok.Data;
 public class User {
     private Long id;
     private String username;
+    private String nickname;
     private String password;
 }
@@ -2,11 +2,32 @@ package com.xqnode.mp.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.xqnode.mp.entity.User;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 /**
  * @author xqnode
  */
 @Repository
 public interface UserMapper extends BaseMapper<User> {
+
+    /**
+     * 多行VALUES插入, 由{@link com.xqnode.mp.config.MybatisPlusConfig}注入
+     */
+    int insertBatchSomeColumn(List<User> entityList);
+
+    /**
+     * 多行VALUES插入, 按uk_user_username判断, 用户名已存在时更新昵称和密码
+     */
+    @Insert("<script>"
+            + "insert into user (username, nickname, `password`) values "
+            + "<foreach collection='list' item='item' separator=','>"
+            + "(#{item.username}, #{item.nickname}, #{item.password})"
+            + "</foreach>"
+            + " on duplicate key update nickname = values(nickname), `password` = values(`password`)"
+            + "</script>")
+    int upsertBatch(@Param("list") List<User> entityList);
 }
@@ -0,0 +1,61 @@
+package com.xqnode.mp.page;
+
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xqnode.mp.config.PagingProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * 分页总数缓存, 同一查询条件翻页时只在第一次或过期后执行COUNT
+ * <p>
+ * 以查询条件生成的sql片段加参数值作为key, 总数在countCacheTtl内可能与实际不一致.
+ *
+ * @author xqnode
+ */
+@Component
+public class CountCache {
+
+    private final Cache<String, Long> cache;
+
+    public CountCache(PagingProperties properties) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getCountCacheMaximumSize())
+                .expireAfterWrite(properties.getCountCacheTtl())
+                .build();
+    }
+
+    /**
+     * 读取总数, 未命中时调用counter计算; 同一条件并发未命中时只计算一次
+     *
+     * @param table
+     * @param wrapper
+     * @param counter
+     * @return 总数
+     */
+    public long get(String table, Wrapper<?> wrapper, Supplier<Long> counter) {
+        return cache.get(key(table, wrapper), k -> counter.get());
+    }
+
+    /**
+     * 表有批量增删时主动清空, 不等过期
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static String key(String table, Wrapper<?> wrapper) {
+        if (wrapper == null) {
+            return table;
+        }
+        StringBuilder key = new StringBuilder(table).append('|').append(wrapper.getCustomSqlSegment());
+        if (wrapper instanceof AbstractWrapper) {
+            key.append('|').append(new TreeMap<>(((AbstractWrapper<?, ?, ?>) wrapper).getParamNameValuePairs()));
+        }
+        return key.toString();
+    }
+}
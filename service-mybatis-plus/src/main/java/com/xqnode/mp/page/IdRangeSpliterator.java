@@ -0,0 +1,86 @@
+package com.xqnode.mp.page;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * 按id区间切分的分页遍历, 每次前进取区间内的下一页
+ * <p>
+ * 拆分时把剩余的id区间对半分, 并行流中每个线程各自按id翻页, 互不重叠.
+ * 估算大小用id区间的跨度, id不连续时偏大, 只用于决定拆分的粒度.
+ *
+ * @author xqnode
+ */
+public class IdRangeSpliterator<T> implements Spliterator<List<T>> {
+
+    /**
+     * 查询(afterId, maxId]区间内按id升序的前size行
+     */
+    @FunctionalInterface
+    public interface PageLoader<T> {
+        List<T> load(long afterId, long maxId, int size);
+    }
+
+    private final PageLoader<T> loader;
+    private final ToLongFunction<T> idOf;
+    private final int pageSize;
+    private long afterId;
+    private long maxId;
+    private boolean done;
+
+    /**
+     * @param loader
+     * @param idOf
+     * @param pageSize
+     * @param afterId  不含
+     * @param maxId    包含
+     */
+    public IdRangeSpliterator(PageLoader<T> loader, ToLongFunction<T> idOf, int pageSize, long afterId, long maxId) {
+        this.loader = loader;
+        this.idOf = idOf;
+        this.pageSize = pageSize;
+        this.afterId = afterId;
+        this.maxId = maxId;
+        this.done = afterId >= maxId;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super List<T>> action) {
+        if (done) {
+            return false;
+        }
+        List<T> page = loader.load(afterId, maxId, pageSize);
+        if (page.isEmpty()) {
+            done = true;
+            return false;
+        }
+        afterId = idOf.applyAsLong(page.get(page.size() - 1));
+        done = page.size() < pageSize || afterId >= maxId;
+        action.accept(page);
+        return true;
+    }
+
+    @Override
+    public Spliterator<List<T>> trySplit() {
+        // 剩余区间不到两页时不再拆分
+        if (done || maxId - afterId < 2L * pageSize) {
+            return null;
+        }
+        long mid = afterId + (maxId - afterId) / 2;
+        IdRangeSpliterator<T> upper = new IdRangeSpliterator<>(loader, idOf, pageSize, mid, maxId);
+        maxId = mid;
+        return upper;
+    }
+
+    @Override
+    public long estimateSize() {
+        return done ? 0 : maxId - afterId;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
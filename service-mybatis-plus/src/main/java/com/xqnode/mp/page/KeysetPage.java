@@ -0,0 +1,23 @@
+package com.xqnode.mp.page;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 按id翻页的一页结果, 下一页从lastId之后开始
+ *
+ * @author xqnode
+ */
+@Data
+public class KeysetPage<T> {
+    private List<T> records;
+    /**
+     * 本页最后一行的id, 本页为空时沿用请求的lastId
+     */
+    private Long lastId;
+    /**
+     * 本页取满时为true, 可能还有下一页
+     */
+    private boolean hasMore;
+}
@@ -1,7 +1,71 @@
 package com.xqnode.mp.service;
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.xqnode.mp.entity.User;
+import com.xqnode.mp.page.KeysetPage;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface UserService extends IService<User> {
+
+    /**
+     * 多行VALUES批量插入, 每rowsPerStatement行一条insert, 比saveBatch的逐行批量少很多语句
+     *
+     * @param entityList
+     * @return 是否成功
+     */
+    boolean saveBatchMultiRow(List<User> entityList);
+
+    /**
+     * 多行VALUES批量插入, 用户名已存在时更新昵称和密码, 依赖username上的唯一索引
+     *
+     * @param entityList
+     * @return 是否成功
+     */
+    boolean upsertBatch(List<User> entityList);
+
+    /**
+     * 按id翻页, 从lastId之后取size行, 不查总数; 走主键索引, 任意深度的耗时都相同
+     *
+     * @param lastId  上一页最后一行的id, 第一页传null
+     * @param size
+     * @param wrapper 附加的查询条件, 可以为null; 会在其上追加id条件和排序, 不要自带排序
+     * @return 一页结果
+     */
+    KeysetPage<User> pageAfterId(Long lastId, long size, LambdaQueryWrapper<User> wrapper);
+
+    /**
+     * 按页码分页, 总数按查询条件缓存; 不需要总数时直接用page(new Page<>(current, size, false), wrapper)
+     * <p>
+     * 页码分页用OFFSET, 越往后越慢, 深翻页用{@link #pageAfterId}
+     *
+     * @param current
+     * @param size
+     * @param wrapper 可以为null
+     * @return 一页结果
+     */
+    IPage<User> pageWithCachedCount(long current, long size, Wrapper<User> wrapper);
+
+    /**
+     * 按id区间拆分的全表分页遍历, parallel为true时各区间由并行流的线程分别翻页, 页之间无顺序
+     *
+     * @param pageSize
+     * @param parallel
+     * @return 每个元素是一页
+     */
+    Stream<List<User>> scanPages(int pageSize, boolean parallel);
+
+    /**
+     * 用scanParallelism个线程并行遍历全表, 用于批处理; action可能被多个线程同时调用
+     *
+     * @param pageSize
+     * @param action
+     * @return 遍历的行数
+     */
+    long scanAll(int pageSize, Consumer<List<User>> action);
 }
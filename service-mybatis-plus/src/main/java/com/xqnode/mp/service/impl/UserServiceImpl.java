@@ -1,11 +1,145 @@
 package com.xqnode.mp.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.xqnode.mp.config.PagingProperties;
+import com.xqnode.mp.config.UserBatchProperties;
 import com.xqnode.mp.entity.User;
 import com.xqnode.mp.mapper.UserMapper;
+import com.xqnode.mp.page.CountCache;
+import com.xqnode.mp.page.IdRangeSpliterator;
+import com.xqnode.mp.page.KeysetPage;
 import com.xqnode.mp.service.UserService;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements UserService {
+
+    private static final String TABLE = "user";
+
+    @Resource
+    private UserBatchProperties batchProperties;
+    @Resource
+    private PagingProperties pagingProperties;
+    @Resource
+    private CountCache countCache;
+
+    /**
+     * 逐行insert的批量, 每flushSize行发送一次; MySQL需要开启rewriteBatchedStatements才会改写成多行VALUES
+     */
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public boolean saveBatch(Collection<User> entityList) {
+        countCache.invalidateAll();
+        return saveBatch(entityList, batchProperties.getFlushSize());
+    }
+
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public boolean saveBatchMultiRow(List<User> entityList) {
+        countCache.invalidateAll();
+        return executeMultiRow(entityList, (mapper, rows) -> mapper.insertBatchSomeColumn(rows));
+    }
+
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public boolean upsertBatch(List<User> entityList) {
+        countCache.invalidateAll();
+        return executeMultiRow(entityList, UserMapper::upsertBatch);
+    }
+
+    @Override
+    public KeysetPage<User> pageAfterId(Long lastId, long size, LambdaQueryWrapper<User> wrapper) {
+        long limit = Math.min(size, pagingProperties.getMaxPageSize());
+        // 调用方通常每页复用同一个wrapper, 在副本上追加翻页条件
+        LambdaQueryWrapper<User> query = wrapper == null ? Wrappers.lambdaQuery() : wrapper.clone();
+        query.gt(lastId != null, User::getId, lastId).orderByAsc(User::getId);
+        List<User> records = page(new Page<>(1, limit, false), query).getRecords();
+        KeysetPage<User> page = new KeysetPage<>();
+        page.setRecords(records);
+        page.setLastId(records.isEmpty() ? lastId : records.get(records.size() - 1).getId());
+        page.setHasMore(records.size() == limit);
+        return page;
+    }
+
+    @Override
+    public IPage<User> pageWithCachedCount(long current, long size, Wrapper<User> wrapper) {
+        Page<User> page = page(new Page<>(current, size, false), wrapper);
+        page.setTotal(countCache.get(TABLE, wrapper, () -> (long) count(wrapper)));
+        return page;
+    }
+
+    @Override
+    public Stream<List<User>> scanPages(int pageSize, boolean parallel) {
+        // 别名全用小写, 不同数据库对列标签大小写的处理不同
+        Map<String, Object> range = getMap(Wrappers.<User>query().select("min(id) as min_id", "max(id) as max_id"));
+        if (range == null || range.get("min_id") == null) {
+            return Stream.empty();
+        }
+        long minId = ((Number) range.get("min_id")).longValue();
+        long maxId = ((Number) range.get("max_id")).longValue();
+        // 每页行数超过分页插件的上限时会被截断, 被误判为最后一页
+        int limit = (int) Math.min(pageSize, pagingProperties.getMaxPageSize());
+        IdRangeSpliterator<User> spliterator = new IdRangeSpliterator<>(this::pageInRange, User::getId, limit,
+                minId - 1, maxId);
+        return StreamSupport.stream(spliterator, parallel);
+    }
+
+    @Override
+    public long scanAll(int pageSize, Consumer<List<User>> action) {
+        LongAdder rows = new LongAdder();
+        // 并行流在哪个ForkJoinPool中启动就使用哪个池, 不占用公共池
+        ForkJoinPool pool = new ForkJoinPool(pagingProperties.getScanParallelism());
+        try {
+            pool.submit(() -> scanPages(pageSize, true).forEach(page -> {
+                action.accept(page);
+                rows.add(page.size());
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("遍历user表被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("遍历user表失败", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return rows.sum();
+    }
+
+    private List<User> pageInRange(long afterId, long maxId, int size) {
+        return page(new Page<>(1, size, false), Wrappers.<User>lambdaQuery()
+                .gt(User::getId, afterId).le(User::getId, maxId).orderByAsc(User::getId)).getRecords();
+    }
+
+    /**
+     * 按rowsPerStatement切分后在BATCH执行器中执行, 累计约flushSize行发送一次
+     */
+    private boolean executeMultiRow(List<User> entityList, BiConsumer<UserMapper, List<User>> statement) {
+        int rowsPerStatement = batchProperties.getRowsPerStatement();
+        List<List<User>> chunks = new ArrayList<>();
+        for (int from = 0; from < entityList.size(); from += rowsPerStatement) {
+            chunks.add(entityList.subList(from, Math.min(from + rowsPerStatement, entityList.size())));
+        }
+        int chunksPerFlush = Math.max(1, batchProperties.getFlushSize() / rowsPerStatement);
+        return executeBatch(chunks, chunksPerFlush,
+                (sqlSession, rows) -> statement.accept(sqlSession.getMapper(UserMapper.class), rows));
+    }
 }
@@ -1,9 +1,14 @@
 package com.xqnode.mp;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.xqnode.mp.entity.User;
 import com.xqnode.mp.mapper.UserMapper;
+import com.xqnode.mp.page.KeysetPage;
 import com.xqnode.mp.service.UserService;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,4 +45,34 @@ public class MpTest {
         System.out.println(list2);
     }
 
+    @Test
+    public void testKeysetPaging() {
+        int total = userService.count();
+
+        // 按id翻完所有页, 与总数一致且id递增; 每页复用同一个wrapper
+        LambdaQueryWrapper<User> wrapper = Wrappers.<User>lambdaQuery().isNotNull(User::getUsername);
+        String conditions = wrapper.getSqlSegment();
+        long rows = 0;
+        Long lastId = null;
+        KeysetPage<User> page;
+        do {
+            page = userService.pageAfterId(lastId, 2, wrapper);
+            for (User user : page.getRecords()) {
+                Assert.assertTrue(lastId == null || user.getId() > lastId);
+                lastId = user.getId();
+                rows++;
+            }
+        } while (page.isHasMore());
+        Assert.assertEquals(total, rows);
+        Assert.assertEquals(conditions, wrapper.getSqlSegment());
+
+        // 并行遍历全表
+        Assert.assertEquals(total, userService.scanAll(2, records -> {
+        }));
+
+        IPage<User> first = userService.pageWithCachedCount(1, 2, null);
+        Assert.assertEquals(total, first.getTotal());
+        System.out.println("page===================================");
+        System.out.println(first.getRecords());
+    }
 }
@@ -0,0 +1,96 @@
+package com.xqnode.mp;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.xqnode.mp.config.DataSourceRoutingConfig;
+import com.xqnode.mp.datasource.RoutingDataSource;
+import com.xqnode.mp.entity.User;
+import com.xqnode.mp.mapper.UserMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 读写分离: 主库和从库是两个内存H2, 同一个id在两边的密码不同, 用来区分查询走了哪个库
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReadWriteRoutingTest.PRIMARY_URL,
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "datasource.routing.enabled=true",
+        "datasource.routing.replicas[0].url=" + ReadWriteRoutingTest.REPLICA_URL,
+        "datasource.routing.replicas[0].username=sa",
+        "datasource.routing.replicas[0].password=",
+        "datasource.routing.primary-after-write=300ms",
+        "datasource.routing.health-check-interval=1h"})
+public class ReadWriteRoutingTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:mp-routing-primary;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:mp-routing-replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    static {
+        // 在spring容器启动前建好两个库
+        createDatabase(PRIMARY_URL, "primary");
+        createDatabase(REPLICA_URL, "replica");
+    }
+
+    @Autowired
+    private UserMapper userMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    public void routesReadsToReplicaAndKeepsWritesOnPrimary() throws InterruptedException {
+        // 按方法名判断的查询走从库, 分页插件生成的count语句跟着原查询走
+        Assert.assertEquals("replica", userMapper.selectById(1L).getPassword());
+        Page<User> page = userMapper.selectPage(new Page<>(1, 10), null);
+        Assert.assertEquals(1, page.getTotal());
+        Assert.assertEquals("replica", page.getRecords().get(0).getPassword());
+
+        // 写入走主库, 刚写入后同一线程的查询也走主库, 能读到自己的写入
+        User bob = new User();
+        bob.setUsername("bob");
+        bob.setPassword("pwd");
+        userMapper.insert(bob);
+        Assert.assertNotNull(userMapper.selectById(bob.getId()));
+        Thread.sleep(400);
+        Assert.assertNull(userMapper.selectById(bob.getId()));
+
+        // 读写事务整个走主库, 只读事务走从库
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        Assert.assertEquals("primary", readWrite.execute(status -> userMapper.selectById(1L).getPassword()));
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        Assert.assertEquals("replica", readOnly.execute(status -> userMapper.selectById(1L).getPassword()));
+
+        RoutingDataSource.Stats stats = ((DataSourceRoutingConfig.LazyRoutingDataSource) dataSource)
+                .getRoutingDataSource().stats();
+        Assert.assertTrue(stats.getReplicaConnections() >= 4);
+        Assert.assertEquals(0, stats.getFailovers());
+    }
+
+    private static void createDatabase(String url, String password) {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("create table if not exists `user` (`id` bigint not null auto_increment primary key, "
+                    + "`username` varchar(64) not null unique, `nickname` varchar(64), `password` varchar(128) not null)");
+            statement.execute("insert into `user` (username, `password`) values ('alice', '" + password + "')");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.common;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 读写分离配置, 主库沿用spring.datasource.*
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "datasource.routing")
+public class DataSourceRoutingProperties {
+    /**
+     * 是否开启读写分离, 关闭时只使用主库
+     */
+    private boolean enabled = false;
+    /**
+     * 从库列表, 按轮询分担读请求
+     */
+    private List<Replica> replicas = new ArrayList<>();
+    /**
+     * mapper方法名以这些前缀开头的查询走从库, 可以用@DataSourceRoute单独指定
+     */
+    private List<String> readPrefixes = new ArrayList<>(Arrays.asList("select", "count", "get", "list", "page", "find"));
+    /**
+     * 同一线程写入后的这段时间内, 查询仍然走主库, 避免读到从库还没同步的旧数据; 0表示不处理
+     */
+    private Duration primaryAfterWrite = Duration.ofSeconds(1);
+    /**
+     * 从库健康检查间隔, 不可用的从库恢复后在下一次检查时重新加入
+     */
+    private Duration healthCheckInterval = Duration.ofSeconds(5);
+    /**
+     * 从库获取连接的超时时间, 超时后标记为不可用并换下一个从库或主库
+     */
+    private Duration replicaConnectionTimeout = Duration.ofSeconds(1);
+
+    @Data
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+        private String driverClassName;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.common;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 登录校验配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "login")
+public class LoginProperties {
+    /**
+     * 本地缓存的账号数上限, 超出后按访问频率淘汰
+     */
+    private long cacheMaximumSize = 10000;
+    /**
+     * 缓存条目写入后的存活时间, 失效通知没有覆盖到的修改(如直接改库)最多在这段时间后生效
+     */
+    private Duration cacheTtl = Duration.ofMinutes(10);
+    /**
+     * 校验密码的线程数, 密码哈希是CPU密集的, 默认与CPU核数相同
+     */
+    private int verifyThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * 等待校验的请求数上限, 队列满时直接返回繁忙, 不占用请求线程排队
+     */
+    private int verifyQueueCapacity = 256;
+}
@@ -2,34 +2,43 @@ package com.example.controller;
 
 import com.example.common.Result;
 import com.example.entity.User;
-import com.example.mapper.UserMapper;
+import com.example.service.CredentialService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Java学习指南
  * mybatis
  */
+@Slf4j
 @RestController
 @RequestMapping("/user")
 public class UserController {
     @Resource
-    private UserMapper userMapper;
+    private CredentialService credentialService;
 
+    /**
+     * 密码校验在单独的线程池中完成, 请求线程不等待; 返回的用户信息不含密码
+     */
     @PostMapping("/login")
-    public Result<User> login(@RequestBody User user) {
+    public CompletableFuture<Result<User>> login(@RequestBody User user) {
         if (!checkParam(user)) {
-            return Result.error("-1", "缺少必要参数");
+            return CompletableFuture.completedFuture(Result.error("-1", "缺少必要参数"));
         }
-        User dbUser = userMapper.selectByUsernameAndPassword(user.getUsername(), user.getPassword());
-        if (dbUser == null) {
-            return Result.error("-1", "账号或密码错误");
+        try {
+            return credentialService.authenticate(user.getUsername(), user.getPassword())
+                    .thenApply(dbUser -> dbUser == null ? Result.error("-1", "账号或密码错误") : Result.success(dbUser));
+        } catch (RejectedExecutionException e) {
+            log.warn("登录校验排队已满, username={}", user.getUsername());
+            return CompletableFuture.completedFuture(Result.error("-1", "系统繁忙, 请稍后重试"));
         }
-        return Result.success(dbUser);
     }
 
     private boolean checkParam(User user) {
@@ -0,0 +1,84 @@
+package com.example.controller;
+
+import com.example.entity.User;
+import com.example.service.UserStreamService;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * 用户导出
+ * <p>
+ * 以NDJSON(每行一个json对象)边查边写到响应里, 不在内存中攒结果, 不导出密码.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/user")
+public class UserExportController {
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int MAX_BATCH_SIZE = 10000;
+    /**
+     * 每行结尾自己写换行, 不使用默认的空格分隔
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().setRootValueSeparator(null);
+
+    @Resource
+    private UserStreamService userStreamService;
+
+    /**
+     * 导出所有用户
+     *
+     * @param mode      cursor: 一条查询流式读取, 导出期间占用一个连接; keyset: 按id分页, 每页一次查询
+     * @param batchSize keyset模式每页的行数
+     */
+    @GetMapping("/export")
+    public void export(@RequestParam(defaultValue = "cursor") String mode,
+                       @RequestParam(defaultValue = "1000") int batchSize,
+                       HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        long start = System.currentTimeMillis();
+        long count;
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+            Consumer<User> writer = user -> write(generator, user);
+            if ("keyset".equals(mode)) {
+                count = userStreamService.forEachByKeyset(Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE)), writer);
+            } else {
+                count = userStreamService.forEachByCursor(writer);
+            }
+        } catch (UncheckedIOException e) {
+            // 客户端中途断开
+            log.warn("用户导出中断, mode={}", mode, e.getCause());
+            return;
+        }
+        log.info("用户导出完成, mode={}, rows={}, cost={}ms", mode, count, System.currentTimeMillis() - start);
+    }
+
+    private static void write(JsonGenerator generator, User user) {
+        try {
+            generator.writeStartObject();
+            if (user.getId() != null) {
+                generator.writeNumberField("id", user.getId());
+            }
+            generator.writeStringField("username", user.getUsername());
+            generator.writeStringField("nickname", user.getNickname());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
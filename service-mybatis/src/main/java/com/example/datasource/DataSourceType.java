@@ -0,0 +1,9 @@
+package com.example.datasource;
+
+/**
+ * 语句使用的数据源
+ */
+public enum DataSourceType {
+    PRIMARY,
+    REPLICA
+}
@@ -0,0 +1,87 @@
+package com.example.datasource;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按mapper方法标记查询能否走从库, 由{@link RoutingDataSource}在取连接时读取
+ * <p>
+ * 只读的判断: 方法上有{@link DataSourceRoute}时以注解为准, 否则方法名以readPrefixes中的前缀开头即为只读.
+ * 写语句执行后记录写入时间, 同一线程随后的查询短时间内走主库.
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+        @Signature(type = Executor.class, method = "queryCursor",
+                args = {MappedStatement.class, Object.class, RowBounds.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})})
+public class ReadWriteRoutingInterceptor implements Interceptor {
+
+    private final List<String> readPrefixes;
+    private final Map<String, Boolean> readOnlyStatements = new ConcurrentHashMap<>();
+
+    public ReadWriteRoutingInterceptor(List<String> readPrefixes) {
+        this.readPrefixes = readPrefixes;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        if (ms.getSqlCommandType() != SqlCommandType.SELECT) {
+            try {
+                return invocation.proceed();
+            } finally {
+                RoutingDataSource.markWrite();
+            }
+        }
+        Boolean previous = RoutingDataSource.markReplicaRead(readOnlyStatements.computeIfAbsent(ms.getId(), this::readOnly));
+        try {
+            return invocation.proceed();
+        } finally {
+            RoutingDataSource.restoreReplicaRead(previous);
+        }
+    }
+
+    /**
+     * 语句id是mapper接口名加方法名, selectKey等内部语句带!后缀, 走主库
+     */
+    private boolean readOnly(String statementId) {
+        int dot = statementId.lastIndexOf('.');
+        String methodName = statementId.substring(dot + 1);
+        if (dot < 0 || methodName.indexOf('!') >= 0) {
+            return false;
+        }
+        try {
+            Class<?> mapper = ClassUtils.forName(statementId.substring(0, dot), null);
+            for (Method method : mapper.getMethods()) {
+                if (method.getName().equals(methodName)) {
+                    DataSourceRoute route = method.getAnnotation(DataSourceRoute.class);
+                    if (route != null) {
+                        return route.value() == DataSourceType.REPLICA;
+                    }
+                    break;
+                }
+            }
+        } catch (ClassNotFoundException | LinkageError e) {
+            // 没有对应接口的xml语句, 只按方法名判断
+        }
+        return readPrefixes.stream().anyMatch(methodName::startsWith);
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.datasource;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 读写分离的数据源
+ * <p>
+ * 获取连接时决定走主库还是从库:
+ * 在事务中时, 只读事务走从库, 读写事务整个事务都走主库, 事务内能读到自己的写入;
+ * 不在事务中时, {@link ReadWriteRoutingInterceptor}标记为只读的查询走从库, 但同一线程刚写入过的除外.
+ * 需要包在LazyConnectionDataSourceProxy里使用, 事务开始时不取物理连接, 到第一条语句执行时才能看到事务的只读标记.
+ * <p>
+ * 从库按轮询分担, 获取连接失败的从库标记为不可用并换下一个, 都不可用时回到主库; 后台定期检查, 恢复后重新加入.
+ */
+@Slf4j
+public class RoutingDataSource extends AbstractDataSource implements DisposableBean {
+
+    /**
+     * 当前线程正在执行的查询是否可以走从库
+     */
+    private static final ThreadLocal<Boolean> replicaRead = new ThreadLocal<>();
+    /**
+     * 当前线程最近一次写入的时间
+     */
+    private static final ThreadLocal<Long> lastWriteNanos = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long primaryAfterWriteNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder replicaConnections = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    /**
+     * @param primary
+     * @param replicas            从库名称到数据源
+     * @param primaryAfterWriteNanos
+     * @param healthCheckIntervalMillis
+     */
+    public RoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long primaryAfterWriteNanos,
+                             long healthCheckIntervalMillis) {
+        this.primary = primary;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        this.primaryAfterWriteNanos = primaryAfterWriteNanos;
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!this.replicas.isEmpty()) {
+            healthChecker.scheduleWithFixedDelay(this::checkReplicas, healthCheckIntervalMillis,
+                    healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 标记当前线程接下来的查询能否走从库
+     *
+     * @param read
+     * @return 原来的标记, 用于{@link #restoreReplicaRead}
+     */
+    public static Boolean markReplicaRead(boolean read) {
+        Boolean previous = replicaRead.get();
+        replicaRead.set(read);
+        return previous;
+    }
+
+    public static void restoreReplicaRead(Boolean previous) {
+        if (previous == null) {
+            replicaRead.remove();
+        } else {
+            replicaRead.set(previous);
+        }
+    }
+
+    /**
+     * 记录当前线程发生了写入
+     */
+    public static void markWrite() {
+        lastWriteNanos.set(System.nanoTime());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!routeToReplica()) {
+            primaryConnections.increment();
+            return primary.getConnection();
+        }
+        int size = replicas.size();
+        int start = next.getAndIncrement();
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, size));
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                replicaConnections.increment();
+                return connection;
+            } catch (SQLException e) {
+                replica.markDown(e);
+            }
+        }
+        failovers.increment();
+        primaryConnections.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    public Stats stats() {
+        Stats stats = new Stats();
+        stats.setPrimaryConnections(primaryConnections.sum());
+        stats.setReplicaConnections(replicaConnections.sum());
+        stats.setFailovers(failovers.sum());
+        stats.setReplicas(replicas.size());
+        stats.setHealthyReplicas((int) replicas.stream().filter(replica -> replica.healthy).count());
+        return stats;
+    }
+
+    /**
+     * 停止健康检查并关闭主从连接池
+     */
+    @Override
+    public void destroy() {
+        healthChecker.shutdownNow();
+        for (Replica replica : replicas) {
+            close(replica.name, replica.dataSource);
+        }
+        close("primary", primary);
+    }
+
+    private boolean routeToReplica() {
+        if (replicas.isEmpty()) {
+            return false;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        }
+        if (!Boolean.TRUE.equals(replicaRead.get())) {
+            return false;
+        }
+        Long writeNanos = lastWriteNanos.get();
+        return writeNanos == null || System.nanoTime() - writeNanos > primaryAfterWriteNanos;
+    }
+
+    private static void close(String name, DataSource dataSource) {
+        if (dataSource instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) dataSource).close();
+            } catch (Exception e) {
+                log.warn("关闭数据源{}失败", name, e);
+            }
+        }
+    }
+
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (connection.isValid(1)) {
+                    replica.markUp();
+                } else {
+                    replica.markDown(null);
+                }
+            } catch (SQLException e) {
+                replica.markDown(e);
+            } catch (RuntimeException e) {
+                log.error("检查从库{}失败", replica.name, e);
+            }
+        }
+    }
+
+    private static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private void markDown(SQLException e) {
+            if (healthy) {
+                healthy = false;
+                log.warn("从库{}不可用, 查询改走其他从库或主库", name, e);
+            }
+        }
+
+        private void markUp() {
+            if (!healthy) {
+                healthy = true;
+                log.info("从库{}已恢复", name);
+            }
+        }
+    }
+
+    /**
+     * 路由指标
+     */
+    @Data
+    public static class Stats {
+        private long primaryConnections;
+        private long replicaConnections;
+        private long failovers;
+        private int replicas;
+        private int healthyReplicas;
+    }
+}
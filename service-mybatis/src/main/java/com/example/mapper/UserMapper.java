@@ -1,6 +1,10 @@
 package com.example.mapper;
 
+import com.example.datasource.DataSourceRoute;
+import com.example.datasource.DataSourceType;
 import com.example.entity.User;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.util.List;
 
@@ -11,13 +15,39 @@ public interface UserMapper {
 
     int insertSelective(User record);
 
+    /**
+     * 多行VALUES插入, 不回填主键
+     */
+    int insertBatch(@Param("list") List<User> records);
+
+    /**
+     * 多行VALUES插入, 用户名已存在时更新昵称和密码
+     */
+    int upsertBatch(@Param("list") List<User> records);
+
     User selectByPrimaryKey(Integer id);
 
     List<User> selectAll();
 
+    /**
+     * 按id顺序逐行流式读取全表; 游标只在SqlSession(事务)内有效, 读完之前连接不能执行其他语句, 用完需要关闭
+     */
+    Cursor<User> selectAllCursor();
+
+    /**
+     * 按id分页读取, 从lastId之后取limit行, lastId为null时从头开始
+     */
+    List<User> selectAfterId(@Param("lastId") Integer lastId, @Param("limit") int limit);
+
     int updateByPrimaryKeySelective(User record);
 
     int updateByPrimaryKey(User record);
 
     User selectByUsernameAndPassword(String username, String password);
+
+    /**
+     * 登录缓存在用户修改后重新加载, 从库有延迟时会把旧密码重新放进缓存, 所以走主库
+     */
+    @DataSourceRoute(DataSourceType.PRIMARY)
+    User selectByUsername(String username);
 }
\ No newline at end of file
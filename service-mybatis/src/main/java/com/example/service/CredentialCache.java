@@ -0,0 +1,103 @@
+package com.example.service;
+
+import com.example.common.LoginProperties;
+import com.example.entity.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 登录用的账号缓存, 按用户名缓存数据库中的用户(含密码哈希)
+ * <p>
+ * 大小和存活时间有上限. user表按主键修改、删除或批量upsert时由{@link CredentialCacheInterceptor}失效对应条目,
+ * 不存在的用户名不缓存.
+ * <p>
+ * 按主键失效时用户名可能已经变了, 所以加载时记下id到用户名的索引, 失效时通过索引找到条目.
+ * 不遍历缓存中的值, 遍历看不到正在加载的条目, 失效后加载完成的旧数据会一直留到过期.
+ * 查库之后、写入索引之前发生的按主键失效找不到条目, 加载时发现失效计数变了就重新查一次.
+ */
+@Component
+public class CredentialCache {
+
+    private final Cache<String, User> cache;
+    /**
+     * id到用户名的索引, 加载时写入, 条目移除时在同一个锁内删除
+     */
+    private final Map<Integer, String> usernames = new ConcurrentHashMap<>();
+    /**
+     * 按主键失效的次数
+     */
+    private final AtomicLong idInvalidations = new AtomicLong();
+
+    public CredentialCache(LoginProperties properties) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheMaximumSize())
+                .expireAfterWrite(properties.getCacheTtl())
+                .writer(new CacheWriter<String, User>() {
+                    @Override
+                    public void write(String username, User user) {
+                    }
+
+                    @Override
+                    public void delete(String username, User user, RemovalCause cause) {
+                        if (user != null) {
+                            usernames.remove(user.getId(), username);
+                        }
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 读取用户, 未命中时调用loader加载; 同一用户名并发未命中时只加载一次
+     *
+     * @param username
+     * @param loader
+     * @return 用户不存在返回null
+     */
+    public User get(String username, Function<String, User> loader) {
+        return cache.get(username, name -> {
+            while (true) {
+                long invalidations = idInvalidations.get();
+                User user = loader.apply(name);
+                if (user != null) {
+                    usernames.put(user.getId(), name);
+                }
+                if (invalidations == idInvalidations.get()) {
+                    return user;
+                }
+            }
+        });
+    }
+
+    /**
+     * 按主键失效, 正在加载的条目会等加载完成后再移除
+     *
+     * @param id
+     */
+    public void invalidate(Integer id) {
+        idInvalidations.incrementAndGet();
+        String username = usernames.get(id);
+        if (username != null) {
+            cache.invalidate(username);
+        }
+    }
+
+    /**
+     * 按用户名失效
+     *
+     * @param username
+     */
+    public void invalidate(String username) {
+        if (username != null) {
+            cache.invalidate(username);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.service;
+
+import com.example.entity.User;
+import com.example.mapper.UserMapper;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * UserMapper按主键修改、删除用户或批量upsert时失效{@link CredentialCache}
+ * <p>
+ * 执行前后各失效一次; 在事务中时提交后再失效一次, 避免提交前其他请求把旧数据重新加载进缓存.
+ * BATCH执行器中语句到flush时才真正执行, 不在事务中时flush前后的脏读由缓存的存活时间兜底.
+ */
+@Component
+@Intercepts(@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}))
+public class CredentialCacheInterceptor implements Interceptor {
+
+    private static final String NAMESPACE = UserMapper.class.getName() + ".";
+
+    private final CredentialCache credentialCache;
+
+    public CredentialCacheInterceptor(CredentialCache credentialCache) {
+        this.credentialCache = credentialCache;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        Runnable invalidation = invalidation(ms.getId(), invocation.getArgs()[1]);
+        if (invalidation == null) {
+            return invocation.proceed();
+        }
+        invalidation.run();
+        try {
+            return invocation.proceed();
+        } finally {
+            invalidation.run();
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        invalidation.run();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 影响已有用户的语句返回对应的失效操作, 其他语句返回null
+     * <p>
+     * 按主键修改、删除时按id失效; 批量upsert可能改掉已有用户名的密码, 按用户名失效.
+     */
+    private Runnable invalidation(String statementId, Object parameter) {
+        if (!statementId.startsWith(NAMESPACE)) {
+            return null;
+        }
+        String method = statementId.substring(NAMESPACE.length());
+        if ("deleteByPrimaryKey".equals(method)) {
+            Integer id = (Integer) parameter;
+            return () -> credentialCache.invalidate(id);
+        }
+        if (method.startsWith("updateByPrimaryKey") && parameter instanceof User) {
+            Integer id = ((User) parameter).getId();
+            return () -> credentialCache.invalidate(id);
+        }
+        if ("upsertBatch".equals(method) && parameter instanceof Map) {
+            Collection<?> users = (Collection<?>) ((Map<?, ?>) parameter).get("list");
+            return () -> users.forEach(user -> credentialCache.invalidate(((User) user).getUsername()));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.service;
+
+import com.example.common.LoginProperties;
+import com.example.entity.User;
+import com.example.mapper.UserMapper;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 登录校验
+ * <p>
+ * 按用户名从{@link CredentialCache}取用户, 未命中时按用户名索引查一次库; 密码校验在单独的有界线程池中执行,
+ * 慢哈希(bcrypt)不占用Tomcat的请求线程, 线程池排满时直接拒绝.
+ * <p>
+ * 密码格式: 带{bcrypt}等前缀的按对应算法校验, 没有前缀的按旧数据的明文比较.
+ * 用户名不存在时也在线程池中校验一次固定的bcrypt哈希, 耗时与用户存在时相同, 不能据此判断用户名是否存在.
+ */
+@Service
+public class CredentialService {
+
+    private final UserMapper userMapper;
+    private final CredentialCache credentialCache;
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor verifyExecutor;
+    private final String dummyHash;
+
+    public CredentialService(UserMapper userMapper, CredentialCache credentialCache, LoginProperties properties) {
+        this.userMapper = userMapper;
+        this.credentialCache = credentialCache;
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put("bcrypt", new BCryptPasswordEncoder());
+        encoders.put("noop", PlainTextPasswordEncoder.INSTANCE);
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("bcrypt", encoders);
+        encoder.setDefaultPasswordEncoderForMatches(PlainTextPasswordEncoder.INSTANCE);
+        this.passwordEncoder = encoder;
+        this.dummyHash = encoder.encode(UUID.randomUUID().toString());
+        AtomicInteger index = new AtomicInteger();
+        this.verifyExecutor = new ThreadPoolExecutor(properties.getVerifyThreads(), properties.getVerifyThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getVerifyQueueCapacity()), r -> {
+            Thread thread = new Thread(r, "login-verify-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 校验账号密码
+     *
+     * @param username
+     * @param password
+     * @return 成功时为不含密码的用户信息, 账号或密码错误时为null
+     * @throws RejectedExecutionException 等待校验的请求已满
+     */
+    public CompletableFuture<User> authenticate(String username, String password) {
+        User user = credentialCache.get(username, userMapper::selectByUsername);
+        if (user == null) {
+            return CompletableFuture.supplyAsync(() -> {
+                passwordEncoder.matches(password, dummyHash);
+                return null;
+            }, verifyExecutor);
+        }
+        return CompletableFuture.supplyAsync(() -> passwordEncoder.matches(password, user.getPassword())
+                ? withoutPassword(user) : null, verifyExecutor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        verifyExecutor.shutdown();
+    }
+
+    /**
+     * 缓存中的对象是共享的, 返回给调用方的是去掉密码的副本
+     */
+    private static User withoutPassword(User user) {
+        User copy = new User();
+        copy.setId(user.getId());
+        copy.setUsername(user.getUsername());
+        copy.setNickname(user.getNickname());
+        return copy;
+    }
+
+    /**
+     * 旧数据的明文比较, 代替已废弃的NoOpPasswordEncoder
+     */
+    private static class PlainTextPasswordEncoder implements PasswordEncoder {
+
+        private static final PasswordEncoder INSTANCE = new PlainTextPasswordEncoder();
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return rawPassword.toString();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return MessageDigest.isEqual(rawPassword.toString().getBytes(StandardCharsets.UTF_8),
+                    encodedPassword.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.service;
+
+import com.example.common.UserBatchProperties;
+import com.example.entity.User;
+import com.example.mapper.UserMapper;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * 批量写入用户, 用于导入
+ * <p>
+ * 所有方法都在BATCH执行器的SqlSession中执行, 每累计flushSize行发送一次.
+ * 在spring事务中调用时整批一起提交或回滚; 不在事务中时连接是自动提交的, 每次发送单独生效, 失败时已发送的部分不会回滚.
+ * <p>
+ * MySQL的逐行批量({@link #insertByJdbcBatch}、{@link #updateById})需要开启rewriteBatchedStatements,
+ * 驱动才会把一批insert改写成多行VALUES, 见application.properties.
+ */
+@Service
+public class UserBatchService {
+
+    @Resource
+    private SqlSessionFactory sqlSessionFactory;
+    @Resource
+    private UserBatchProperties properties;
+
+    /**
+     * 多行VALUES插入, 每rowsPerStatement行一条insert
+     *
+     * @param users
+     */
+    public void insert(List<User> users) {
+        execute(users, properties.getRowsPerStatement(), UserMapper::insertBatch);
+    }
+
+    /**
+     * 多行VALUES插入, 用户名已存在时更新昵称和密码
+     *
+     * @param users
+     */
+    public void upsert(List<User> users) {
+        execute(users, properties.getRowsPerStatement(), UserMapper::upsertBatch);
+    }
+
+    /**
+     * 逐行insert, 由JDBC批量发送
+     *
+     * @param users
+     */
+    public void insertByJdbcBatch(List<User> users) {
+        execute(users, 1, (mapper, rows) -> mapper.insert(rows.get(0)));
+    }
+
+    /**
+     * 按主键逐行更新非空字段, 由JDBC批量发送
+     *
+     * @param users
+     */
+    public void updateById(List<User> users) {
+        execute(users, 1, (mapper, rows) -> mapper.updateByPrimaryKeySelective(rows.get(0)));
+    }
+
+    /**
+     * 每rowsPerStatement行调用一次statement, 累计flushSize行后发送
+     */
+    private void execute(List<User> users, int rowsPerStatement, BiConsumer<UserMapper, List<User>> statement) {
+        try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+            UserMapper mapper = sqlSession.getMapper(UserMapper.class);
+            int pending = 0;
+            for (int from = 0; from < users.size(); from += rowsPerStatement) {
+                List<User> rows = users.subList(from, Math.min(from + rowsPerStatement, users.size()));
+                statement.accept(mapper, rows);
+                pending += rows.size();
+                if (pending >= properties.getFlushSize()) {
+                    sqlSession.flushStatements();
+                    pending = 0;
+                }
+            }
+            sqlSession.commit();
+        }
+    }
+}
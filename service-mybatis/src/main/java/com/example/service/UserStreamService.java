@@ -0,0 +1,69 @@
+package com.example.service;
+
+import com.example.entity.User;
+import com.example.mapper.UserMapper;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 全表遍历, 内存占用与表大小无关, 用于导出和重建索引等批处理
+ * <p>
+ * {@link #forEachByCursor}: 一条查询逐行流式读取, 整个遍历期间占用一个连接和事务, 看到的是一致的快照.
+ * {@link #forEachByKeyset}: 按id分页, 每页一次查询, 不长时间占用连接, 遍历期间的修改可能看到也可能看不到.
+ */
+@Service
+public class UserStreamService {
+
+    @Resource
+    private UserMapper userMapper;
+
+    /**
+     * 按id顺序通过游标遍历所有用户
+     *
+     * @param action
+     * @return 遍历的行数
+     */
+    @Transactional(readOnly = true)
+    public long forEachByCursor(Consumer<User> action) {
+        long count = 0;
+        try (Cursor<User> cursor = userMapper.selectAllCursor()) {
+            for (User user : cursor) {
+                action.accept(user);
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    /**
+     * 按id顺序分页遍历所有用户, 每页batchSize行
+     *
+     * @param batchSize
+     * @param action
+     * @return 遍历的行数
+     */
+    public long forEachByKeyset(int batchSize, Consumer<User> action) {
+        long count = 0;
+        Integer lastId = null;
+        while (true) {
+            List<User> page = userMapper.selectAfterId(lastId, batchSize);
+            for (User user : page) {
+                action.accept(user);
+            }
+            count += page.size();
+            if (page.size() < batchSize) {
+                return count;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+CREATE TABLE IF NOT EXISTS `user` (
+  `id` INT NOT NULL AUTO_INCREMENT,
+  `username` VARCHAR(64) NOT NULL,
+  `nickname` VARCHAR(64),
+  `password` VARCHAR(128) NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_user_username` (`username`)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+-- 已有的表补上登录查询使用的索引
+-- ALTER TABLE `user` ADD UNIQUE KEY `uk_user_username` (`username`);
@@ -0,0 +1,145 @@
+package com.example.demo;
+
+import com.example.DemoApplication;
+import com.example.datasource.DataSourceRoutingConfig;
+import com.example.datasource.RoutingDataSource;
+import com.example.entity.User;
+import com.example.mapper.UserMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 读写分离: 主库和从库是两个内存H2, 同一个id在两边的昵称不同, 用来区分查询走了哪个库
+ */
+@SpringBootTest(classes = DemoApplication.class, properties = {
+        "spring.datasource.url=" + ReadWriteRoutingTests.PRIMARY_URL,
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "datasource.routing.enabled=true",
+        "datasource.routing.replicas[0].url=" + ReadWriteRoutingTests.REPLICA_URL,
+        "datasource.routing.replicas[0].username=sa",
+        "datasource.routing.replicas[0].password=",
+        "datasource.routing.primary-after-write=300ms",
+        "datasource.routing.health-check-interval=1h"})
+class ReadWriteRoutingTests {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    static {
+        // 在spring容器启动前建好两个库
+        createDatabase(PRIMARY_URL, "primary");
+        createDatabase(REPLICA_URL, "replica");
+    }
+
+    @Autowired
+    private UserMapper userMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void routesReadsToReplicaAndKeepsWritesOnPrimary() throws InterruptedException {
+        // 按方法名判断的查询走从库, @DataSourceRoute(PRIMARY)的走主库
+        Assertions.assertEquals("replica", userMapper.selectByPrimaryKey(1).getNickname());
+        Assertions.assertEquals("primary", userMapper.selectByUsername("alice").getNickname());
+
+        // 写入走主库, 刚写入后同一线程的查询也走主库, 能读到自己的写入
+        User bob = new User();
+        bob.setUsername("bob");
+        bob.setNickname("bob");
+        bob.setPassword("pwd");
+        userMapper.insert(bob);
+        Assertions.assertNotNull(userMapper.selectByPrimaryKey(bob.getId()));
+        Thread.sleep(400);
+        Assertions.assertNull(userMapper.selectByPrimaryKey(bob.getId()));
+
+        // 读写事务整个走主库, 只读事务走从库
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        Assertions.assertEquals("primary", readWrite.execute(status -> userMapper.selectByPrimaryKey(1).getNickname()));
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        Assertions.assertEquals("replica", readOnly.execute(status -> userMapper.selectByPrimaryKey(1).getNickname()));
+
+        RoutingDataSource.Stats stats = ((DataSourceRoutingConfig.LazyRoutingDataSource) dataSource)
+                .getRoutingDataSource().stats();
+        Assertions.assertTrue(stats.getReplicaConnections() >= 3);
+        Assertions.assertEquals(0, stats.getFailovers());
+    }
+
+    @Test
+    void unavailableReplicasFailOverToPrimary() throws SQLException {
+        DataSource broken = new AbstractDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                throw new SQLException("connection refused");
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return getConnection();
+            }
+        };
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("broken", broken);
+        replicas.put("replica", new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+        RoutingDataSource dataSource = new RoutingDataSource(new DriverManagerDataSource(PRIMARY_URL, "sa", ""),
+                replicas, 0, 3600_000);
+        RoutingDataSource primaryOnly = new RoutingDataSource(new DriverManagerDataSource(PRIMARY_URL, "sa", ""),
+                Collections.singletonMap("broken", broken), 0, 3600_000);
+        Boolean previous = RoutingDataSource.markReplicaRead(true);
+        try {
+            // 不可用的从库被跳过, 之后的查询都落在剩下的从库上
+            for (int i = 0; i < 4; i++) {
+                Assertions.assertEquals("replica", nickname(dataSource));
+            }
+            Assertions.assertEquals(1, dataSource.stats().getHealthyReplicas());
+
+            // 所有从库都不可用时回到主库
+            Assertions.assertEquals("primary", nickname(primaryOnly));
+            Assertions.assertEquals(1, primaryOnly.stats().getFailovers());
+        } finally {
+            RoutingDataSource.restoreReplicaRead(previous);
+            dataSource.destroy();
+            primaryOnly.destroy();
+        }
+    }
+
+    private static String nickname(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select nickname from `user` where id = 1")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private static void createDatabase(String url, String nickname) {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("create table if not exists `user` (`id` int not null auto_increment primary key, "
+                    + "`username` varchar(64) not null unique, `nickname` varchar(64), `password` varchar(128) not null)");
+            statement.execute("insert into `user` (username, nickname, `password`) values ('alice', '" + nickname + "', 'pwd')");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
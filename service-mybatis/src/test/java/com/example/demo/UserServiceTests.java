@@ -0,0 +1,203 @@
+package com.example.demo;
+
+import com.example.common.LoginProperties;
+import com.example.entity.User;
+import com.example.mapper.UserMapper;
+import com.example.service.CredentialCache;
+import com.example.service.CredentialCacheInterceptor;
+import com.example.service.CredentialService;
+import com.example.service.UserStreamService;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 不启动spring容器, mapper用动态代理模拟, 不依赖数据库
+ */
+class UserServiceTests {
+
+    @Test
+    void credentialServiceCachesUsersAndVerifiesHashes() throws Exception {
+        Map<String, User> users = new HashMap<>();
+        users.put("alice", user(1, "alice", "pwd"));
+        users.put("bob", user(2, "bob", "{bcrypt}" + new BCryptPasswordEncoder(4).encode("secret")));
+        AtomicInteger queries = new AtomicInteger();
+        UserMapper userMapper = (UserMapper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserMapper.class}, (proxy, method, args) -> {
+                    if ("selectByUsername".equals(method.getName())) {
+                        queries.incrementAndGet();
+                        return users.get((String) args[0]);
+                    }
+                    return null;
+                });
+        LoginProperties properties = new LoginProperties();
+        CredentialCache cache = new CredentialCache(properties);
+        CredentialService service = new CredentialService(userMapper, cache, properties);
+        try {
+            // 明文的旧数据和bcrypt哈希都能校验, 返回的用户不含密码
+            User alice = service.authenticate("alice", "pwd").get();
+            Assertions.assertEquals(1, alice.getId());
+            Assertions.assertNull(alice.getPassword());
+            Assertions.assertNull(service.authenticate("alice", "wrong").get());
+            Assertions.assertNotNull(service.authenticate("bob", "secret").get());
+            Assertions.assertNull(service.authenticate("nobody", "pwd").get());
+            Assertions.assertEquals(3, queries.get());
+
+            // 按主键修改后重新查库
+            users.put("alice", user(1, "alice", "changed"));
+            cache.invalidate(1);
+            Assertions.assertNull(service.authenticate("alice", "pwd").get());
+            Assertions.assertNotNull(service.authenticate("alice", "changed").get());
+            Assertions.assertEquals(4, queries.get());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void interceptorInvalidatesCredentialCache() throws Throwable {
+        Map<String, User> users = new HashMap<>();
+        users.put("alice", user(1, "alice", "pwd"));
+        users.put("bob", user(2, "bob", "pwd"));
+        users.put("carol", user(3, "carol", "pwd"));
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, User> loader = username -> {
+            loads.incrementAndGet();
+            return users.get(username);
+        };
+        CredentialCache cache = new CredentialCache(new LoginProperties());
+        CredentialCacheInterceptor interceptor = new CredentialCacheInterceptor(cache);
+        for (String username : users.keySet()) {
+            cache.get(username, loader);
+        }
+        Assertions.assertEquals(3, loads.get());
+
+        // 按主键修改时用户名也变了, 旧用户名的条目按id找到并失效
+        users.remove("alice");
+        users.put("alice2", user(1, "alice2", "changed"));
+        update(interceptor, "updateByPrimaryKeySelective", user(1, "alice2", null));
+        Assertions.assertNull(cache.get("alice", loader));
+        Assertions.assertEquals("changed", cache.get("alice2", loader).getPassword());
+
+        users.remove("bob");
+        update(interceptor, "deleteByPrimaryKey", 2);
+        Assertions.assertNull(cache.get("bob", loader));
+
+        users.put("carol", user(3, "carol", "upserted"));
+        Map<String, Object> parameter = new HashMap<>();
+        parameter.put("list", Collections.singletonList(user(3, "carol", "upserted")));
+        update(interceptor, "upsertBatch", parameter);
+        Assertions.assertEquals("upserted", cache.get("carol", loader).getPassword());
+
+        // 其他mapper的语句不失效
+        int before = loads.get();
+        update(interceptor, "insertSelective", user(3, "carol", "other"));
+        cache.get("carol", loader);
+        Assertions.assertEquals(before, loads.get());
+    }
+
+    @Test
+    void invalidationDuringLoadIsNotLost() throws Exception {
+        Map<String, User> users = new HashMap<>();
+        users.put("alice", user(1, "alice", "old"));
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch updated = new CountDownLatch(1);
+        CredentialCache cache = new CredentialCache(new LoginProperties());
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            // 查到旧数据之后、放进缓存之前按主键失效
+            Future<User> load = pool.submit(() -> cache.get("alice", username -> {
+                User user = users.get(username);
+                reading.countDown();
+                try {
+                    updated.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return user;
+            }));
+            Assertions.assertTrue(reading.await(5, TimeUnit.SECONDS));
+            users.put("alice", user(1, "alice", "new"));
+            cache.invalidate(1);
+            updated.countDown();
+            Assertions.assertEquals("new", load.get(5, TimeUnit.SECONDS).getPassword());
+            Assertions.assertEquals("new", cache.get("alice", users::get).getPassword());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 通过拦截器执行UserMapper的一条写语句, 执行器只返回影响行数
+     */
+    private static void update(CredentialCacheInterceptor interceptor, String method, Object parameter) throws Throwable {
+        Configuration configuration = new Configuration();
+        MappedStatement ms = new MappedStatement.Builder(configuration, UserMapper.class.getName() + "." + method,
+                parameterObject -> null, SqlCommandType.UPDATE).build();
+        Executor executor = (Executor) Proxy.newProxyInstance(UserServiceTests.class.getClassLoader(),
+                new Class<?>[]{Executor.class}, (proxy, m, args) -> 1);
+        Method update = Executor.class.getMethod("update", MappedStatement.class, Object.class);
+        Assertions.assertEquals(1, interceptor.intercept(new Invocation(executor, update, new Object[]{ms, parameter})));
+    }
+
+    @Test
+    void keysetScanVisitsEveryRowOnce() {
+        List<User> table = new ArrayList<>();
+        for (int i = 1; i <= 25; i++) {
+            // id不连续, 分页只依赖id的顺序
+            table.add(user(i * 3, "user" + i, "pwd"));
+        }
+        List<Integer> lastIds = new ArrayList<>();
+        UserMapper userMapper = (UserMapper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserMapper.class}, (proxy, method, args) -> {
+                    if ("selectAfterId".equals(method.getName())) {
+                        Integer lastId = (Integer) args[0];
+                        lastIds.add(lastId);
+                        return table.stream().filter(u -> lastId == null || u.getId() > lastId)
+                                .limit((Integer) args[1]).collect(Collectors.toList());
+                    }
+                    return null;
+                });
+        UserStreamService service = new UserStreamService();
+        ReflectionTestUtils.setField(service, "userMapper", userMapper);
+
+        List<Integer> visited = new ArrayList<>();
+        Assertions.assertEquals(25, service.forEachByKeyset(10, u -> visited.add(u.getId())));
+        Assertions.assertEquals(table.stream().map(User::getId).collect(Collectors.toList()), visited);
+        List<Integer> expectedLastIds = new ArrayList<>();
+        expectedLastIds.add(null);
+        expectedLastIds.add(30);
+        expectedLastIds.add(60);
+        Assertions.assertEquals(expectedLastIds, lastIds);
+    }
+
+    private static User user(Integer id, String username, String password) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setPassword(password);
+        return user;
+    }
+}
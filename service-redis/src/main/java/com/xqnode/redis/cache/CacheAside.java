@@ -0,0 +1,43 @@
+package com.xqnode.redis.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 方法返回值按cache-aside方式缓存在redis中, 由{@link CacheAsideAspect}处理
+ * <p>
+ * 示例:
+ * <pre>
+ * &#64;CacheAside(name = "user", key = "#id", ttl = 10, unit = TimeUnit.MINUTES)
+ * public User findById(Long id) { ... }
+ * </pre>
+ *
+ * @author xqnode
+ * @see CacheAsideService
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheAside {
+
+    /**
+     * 缓存名称, 作为redis key的前缀
+     */
+    String name();
+
+    /**
+     * 缓存key的SpEL表达式, 可以用#参数名或#p0引用参数; 为空时使用全部参数拼接
+     */
+    String key() default "";
+
+    /**
+     * 缓存时间
+     */
+    long ttl() default 300;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -0,0 +1,69 @@
+package com.xqnode.redis.cache;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 处理{@link CacheAside}注解, 把方法调用交给{@link CacheAsideService}
+ *
+ * @author xqnode
+ */
+@Aspect
+@Component
+public class CacheAsideAspect {
+
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    @Autowired
+    private CacheAsideService cacheAsideService;
+
+    @Around("@annotation(cacheAside)")
+    @SuppressWarnings("unchecked")
+    public Object around(ProceedingJoinPoint joinPoint, CacheAside cacheAside) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        String key = cacheAside.name() + ":" + key(cacheAside, method, joinPoint.getArgs());
+        Duration ttl = Duration.ofMillis(cacheAside.unit().toMillis(cacheAside.ttl()));
+        Class<Object> returnType = (Class<Object>) method.getReturnType();
+        try {
+            return cacheAsideService.get(key, returnType, ttl, () -> {
+                try {
+                    return joinPoint.proceed();
+                } catch (Exception | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new UndeclaredThrowableException(e);
+                }
+            });
+        } catch (CacheLoadException e) {
+            // 还原方法本身抛出的受检异常
+            throw e.getCause();
+        }
+    }
+
+    private String key(CacheAside cacheAside, Method method, Object[] args) {
+        if (!StringUtils.hasText(cacheAside.key())) {
+            return StringUtils.arrayToDelimitedString(args, ",");
+        }
+        Expression expression = expressions.computeIfAbsent(cacheAside.key(), parser::parseExpression);
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, args, parameterNameDiscoverer);
+        return String.valueOf(expression.getValue(context));
+    }
+}
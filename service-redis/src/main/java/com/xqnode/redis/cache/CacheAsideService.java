@@ -0,0 +1,292 @@
+package com.xqnode.redis.cache;
+
+import com.xqnode.redis.config.CacheAsideProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.NumberUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * cache-aside缓存, 注解方式见{@link CacheAside}
+ * <p>
+ * 缓存条目以hash保存: v为值(使用RedisConfig中redisTemplate的hash value序列化方式, 为null时不写),
+ * d为上次加载耗时, e为过期时间戳. 未命中时:
+ * <ul>
+ * <li>同一个JVM内同一个key只有一个线程加载, 其他线程等待它的结果(single-flight)</li>
+ * <li>各节点通过redis短锁竞争重建, 没抢到锁的节点轮询等待写入, 超过lockWait后自己加载</li>
+ * <li>null结果按nullTtl缓存, 避免穿透</li>
+ * </ul>
+ * 命中时按XFetch算法(now - d * beta * ln(rand) >= e)在过期前概率性地提前刷新, 加载越慢、越接近过期越容易触发;
+ * 刷新期间其他线程和节点继续返回旧值.
+ *
+ * @author xqnode
+ */
+@Service
+@Slf4j
+public class CacheAsideService {
+
+    private static final byte[] VALUE = "v".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DELTA = "d".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EXPIRY = "e".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private CacheAsideProperties properties;
+
+    private final RedisScript<Long> setScript = script("scripts/cache_set.lua", Long.class);
+    private final RedisScript<Long> unlockScript = script("scripts/cache_unlock.lua", Long.class);
+    private final ConcurrentMap<String, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+
+    /**
+     * 读取缓存, 未命中或需要提前刷新时调用loader加载并写入
+     *
+     * @param key    缓存key, 实际的redis key为cache:{key}
+     * @param type   值的类型, 用于数值类型的转换
+     * @param ttl    缓存时间
+     * @param loader 加载器, 受检异常包装为{@link CacheLoadException}抛出
+     * @return
+     */
+    public <T> T get(String key, Class<T> type, Duration ttl, Callable<T> loader) {
+        Entry entry = read(key);
+        if (entry == null) {
+            return convert(singleFlight(key, () -> loadOnMiss(key, ttl, loader)), type);
+        }
+        if (!shouldRefresh(entry) || inflight.containsKey(key)) {
+            return convert(entry.value, type);
+        }
+        return convert(singleFlight(key, () -> refresh(key, ttl, loader, entry.value)), type);
+    }
+
+    /**
+     * 直接写入缓存
+     *
+     * @param key
+     * @param value 为null时按nullTtl缓存
+     * @param ttl
+     */
+    public void put(String key, Object value, Duration ttl) {
+        save(key, value, ttl, 0, "");
+    }
+
+    /**
+     * 删除缓存, 下次读取时重新加载
+     *
+     * @param key
+     * @return
+     */
+    public boolean evict(String key) {
+        return Boolean.TRUE.equals(redisTemplate.delete(cacheKey(key)));
+    }
+
+    private Object loadOnMiss(String key, Duration ttl, Callable<?> loader) throws Exception {
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + properties.getLockWait().toMillis();
+        while (true) {
+            if (tryLock(key, token)) {
+                // 拿到锁之前其他节点可能刚好写入
+                Entry entry = read(key);
+                if (entry != null) {
+                    unlock(key, token);
+                    return entry.value;
+                }
+                return loadAndSave(key, ttl, loader, token);
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                log.warn("等待缓存[{}]重建超时, 直接加载", key);
+                return loadAndSave(key, ttl, loader, token);
+            }
+            Thread.sleep(properties.getLockRetryInterval().toMillis());
+            Entry entry = read(key);
+            if (entry != null) {
+                return entry.value;
+            }
+        }
+    }
+
+    /**
+     * 提前刷新, 其他节点正在刷新时返回旧值
+     */
+    private Object refresh(String key, Duration ttl, Callable<?> loader, Object stale) throws Exception {
+        String token = UUID.randomUUID().toString();
+        if (!tryLock(key, token)) {
+            return stale;
+        }
+        return loadAndSave(key, ttl, loader, token);
+    }
+
+    private Object loadAndSave(String key, Duration ttl, Callable<?> loader, String token) throws Exception {
+        long start = System.nanoTime();
+        Object value;
+        try {
+            value = loader.call();
+        } catch (Exception e) {
+            unlock(key, token);
+            throw e;
+        }
+        long delta = Math.max((System.nanoTime() - start) / 1000000, 1);
+        save(key, value, ttl, delta, token);
+        return value;
+    }
+
+    /**
+     * 同一个key同时只有一个线程执行action, 其他线程等待并共享结果
+     */
+    private Object singleFlight(String key, Callable<Object> action) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inflight.putIfAbsent(key, flight);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                throw rethrow(key, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CacheLoadException(key, e);
+            }
+        }
+        try {
+            Object value = action.call();
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw rethrow(key, e);
+        } finally {
+            inflight.remove(key, flight);
+        }
+    }
+
+    private boolean shouldRefresh(Entry entry) {
+        if (properties.getBeta() <= 0) {
+            return false;
+        }
+        double gap = -entry.delta * properties.getBeta() * Math.log(ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= entry.expiry;
+    }
+
+    private Entry read(String key) {
+        byte[] rawKey = cacheKey(key).getBytes(StandardCharsets.UTF_8);
+        Map<byte[], byte[]> hash = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection -> connection.hGetAll(rawKey));
+        if (hash == null || hash.isEmpty()) {
+            return null;
+        }
+        Entry entry = new Entry();
+        boolean complete = false;
+        for (Map.Entry<byte[], byte[]> field : hash.entrySet()) {
+            if (Arrays.equals(field.getKey(), VALUE)) {
+                entry.value = valueSerializer().deserialize(field.getValue());
+            } else if (Arrays.equals(field.getKey(), DELTA)) {
+                entry.delta = Long.parseLong(new String(field.getValue(), StandardCharsets.UTF_8));
+            } else if (Arrays.equals(field.getKey(), EXPIRY)) {
+                entry.expiry = Long.parseLong(new String(field.getValue(), StandardCharsets.UTF_8));
+                complete = true;
+            }
+        }
+        return complete ? entry : null;
+    }
+
+    /**
+     * 一次脚本调用写入条目、设置过期时间并释放自己持有的锁
+     */
+    private void save(String key, Object value, Duration ttl, long delta, String token) {
+        long ttlMillis = (value == null ? properties.getNullTtl() : ttl).toMillis();
+        List<byte[]> args = new ArrayList<>(5);
+        args.add(bytes(ttlMillis));
+        args.add(bytes(delta));
+        args.add(bytes(System.currentTimeMillis() + ttlMillis));
+        args.add(token.getBytes(StandardCharsets.UTF_8));
+        if (value != null) {
+            args.add(valueSerializer().serialize(value));
+        }
+        redisTemplate.execute(setScript, RedisSerializer.byteArray(), new GenericToStringSerializer<>(Long.class),
+                Arrays.asList(cacheKey(key), lockKey(key)), args.toArray());
+    }
+
+    private boolean tryLock(String key, String token) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey(key), token, properties.getLockTimeout()));
+    }
+
+    private void unlock(String key, String token) {
+        redisTemplate.execute(unlockScript, Collections.singletonList(lockKey(key)), token);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> valueSerializer() {
+        return (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+    }
+
+    /**
+     * json格式下Long等final的数值类型不带类型信息, 反序列化后可能是Integer, 按需要的类型转换
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T convert(Object value, Class<T> type) {
+        if (value instanceof Number && type != null) {
+            Class<?> target = ClassUtils.resolvePrimitiveIfNecessary(type);
+            if (Number.class.isAssignableFrom(target) && !target.isInstance(value)) {
+                return (T) NumberUtils.convertNumberToTargetClass((Number) value, (Class<Number>) target);
+            }
+        }
+        return (T) value;
+    }
+
+    private static RuntimeException rethrow(String key, Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new CacheLoadException(key, e);
+    }
+
+    private static String cacheKey(String key) {
+        return "cache:" + key;
+    }
+
+    private static String lockKey(String key) {
+        return "cache:" + key + ":lock";
+    }
+
+    private static byte[] bytes(long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static <T> RedisScript<T> script(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(resultType);
+        return script;
+    }
+
+    private static class Entry {
+        private Object value;
+        private long delta;
+        private long expiry;
+    }
+}
@@ -0,0 +1,13 @@
+package com.xqnode.redis.cache;
+
+/**
+ * 包装cache-aside加载时抛出的受检异常
+ *
+ * @author xqnode
+ */
+public class CacheLoadException extends RuntimeException {
+
+    public CacheLoadException(String key, Throwable cause) {
+        super("加载缓存[" + key + "]失败", cause);
+    }
+}
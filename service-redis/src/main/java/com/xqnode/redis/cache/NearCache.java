@@ -0,0 +1,355 @@
+package com.xqnode.redis.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.xqnode.redis.config.NearCacheProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RedisService读操作前的本地一级缓存(L1)
+ * <p>
+ * 基于Caffeine(W-TinyLFU淘汰), 按权重限制大小. 每个条目的存活时间取配置的ttl和redis中key剩余过期时间的较小值,
+ * 不会比redis中的数据活得更久. 本节点写入时直接失效本地条目, 并通过pub/sub通知其他节点失效,
+ * 通知丢失时脏读的时长也不会超过ttl. 批量写入的key用换行拼在一条通知里, 每批只发一次PUBLISH.
+ * <p>
+ * 读redis回填和失效可能交错: 回填的值读于失效之前, 写入本地却在失效之后, 旧值会一直留到过期.
+ * 所以失效时先递增key所在分段的版本号, 读redis前用{@link #generation(String)}取版本号, 回填时版本号变了就放弃.
+ *
+ * @author xqnode
+ */
+@Slf4j
+public class NearCache implements MessageListener {
+
+    private static final String SEPARATOR = "|";
+    private static final char KEY_SEPARATOR = '\n';
+    /**
+     * 批量失效时每条通知最多带的key数, 避免单条消息过大
+     */
+    private static final int KEYS_PER_MESSAGE = 1000;
+    /**
+     * 失效版本号按key的hash分段, 不为每个key单独保存; 同一分段其他key的失效只会让回填多放弃一次
+     */
+    private static final int GENERATION_STRIPES = 1024;
+
+    /**
+     * 区分消息来源的节点标识, 忽略自己发出的失效通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final NearCacheProperties properties;
+    private final Cache<String, Entry> cache;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public NearCache(RedisTemplate<String, String> redisTemplate, NearCacheProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaximumWeight())
+                .weigher((String key, Entry entry) -> entry.weight())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return entry.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        // 合并hash字段时沿用原有的过期时间
+                        return entry.merged ? currentDuration : entry.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * key当前的失效版本号, 在从redis读取之前获取, 回填时传回
+     *
+     * @param key
+     * @return
+     */
+    public long generation(String key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * 读取string类型的值
+     *
+     * @param key
+     * @return 未命中返回null
+     */
+    public String getString(String key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.string != null) {
+            hits.increment();
+            return entry.string;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 缓存string类型的值
+     *
+     * @param key
+     * @param value
+     * @param redisTtlMillis redis中key的剩余过期时间(PTTL)
+     * @param generation     读redis之前取的{@link #generation(String)}
+     */
+    public void putString(String key, String value, Long redisTtlMillis, long generation) {
+        long ttlNanos = ttlNanos(redisTtlMillis);
+        if (value != null && ttlNanos > 0) {
+            Entry entry = new Entry(value, null, null, ttlNanos, false);
+            cache.asMap().compute(key, (k, old) -> stale(k, generation) ? old : entry);
+        }
+    }
+
+    /**
+     * 读取hash中的一个字段
+     *
+     * @param key
+     * @param field
+     * @return 未命中返回null
+     */
+    public Object getField(String key, Object field) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null) {
+            Object value = entry.all != null ? entry.all.get(field) : entry.fields != null ? entry.fields.get(field) : null;
+            if (value != null) {
+                hits.increment();
+                return value;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 缓存hash中的一个字段
+     *
+     * @param key
+     * @param field
+     * @param value
+     * @param redisTtlMillis redis中key的剩余过期时间(PTTL)
+     * @param generation     读redis之前取的{@link #generation(String)}
+     */
+    public void putField(String key, Object field, Object value, Long redisTtlMillis, long generation) {
+        long ttlNanos = ttlNanos(redisTtlMillis);
+        if (value == null || ttlNanos <= 0) {
+            return;
+        }
+        cache.asMap().compute(key, (k, old) -> {
+            if (stale(k, generation)) {
+                return old;
+            }
+            if (old == null || old.string != null) {
+                return new Entry(null, null, Collections.singletonMap(field, value), ttlNanos, false);
+            }
+            if (old.all != null) {
+                return new Entry(null, old.all, null, old.ttlNanos, true);
+            }
+            Map<Object, Object> fields = new HashMap<>(old.fields);
+            fields.put(field, value);
+            return new Entry(null, null, fields, old.ttlNanos, true);
+        });
+    }
+
+    /**
+     * 读取整个hash
+     *
+     * @param key
+     * @return 未命中返回null
+     */
+    public Map<Object, Object> getHash(String key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.all != null) {
+            hits.increment();
+            return entry.all;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 缓存整个hash, 空hash不缓存
+     *
+     * @param key
+     * @param hash
+     * @param redisTtlMillis redis中key的剩余过期时间(PTTL)
+     * @param generation     读redis之前取的{@link #generation(String)}
+     */
+    public void putHash(String key, Map<Object, Object> hash, Long redisTtlMillis, long generation) {
+        long ttlNanos = ttlNanos(redisTtlMillis);
+        if (hash != null && !hash.isEmpty() && ttlNanos > 0) {
+            Entry entry = new Entry(null, Collections.unmodifiableMap(new HashMap<>(hash)), null, ttlNanos, false);
+            cache.asMap().compute(key, (k, old) -> stale(k, generation) ? old : entry);
+        }
+    }
+
+    /**
+     * 失效本地条目并通知其他节点
+     *
+     * @param key
+     */
+    public void invalidate(String key) {
+        invalidateAll(Collections.singletonList(key));
+    }
+
+    /**
+     * 批量失效本地条目, 每{@value #KEYS_PER_MESSAGE}个key合并成一条通知
+     *
+     * @param keys
+     */
+    public void invalidateAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        // 先递增版本号再删除, 删除之后才写入的回填也会被放弃
+        for (String key : keys) {
+            generations.incrementAndGet(stripe(key));
+        }
+        cache.invalidateAll(keys);
+        invalidations.add(keys.size());
+        StringBuilder body = new StringBuilder();
+        int count = 0;
+        for (String key : keys) {
+            if (count == 0) {
+                body.setLength(0);
+                body.append(nodeId).append(SEPARATOR);
+            } else {
+                body.append(KEY_SEPARATOR);
+            }
+            body.append(key);
+            if (++count == KEYS_PER_MESSAGE) {
+                publish(body.toString(), count);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            publish(body.toString(), count);
+        }
+    }
+
+    private void publish(String body, int keys) {
+        try {
+            redisTemplate.convertAndSend(properties.getChannel(), body);
+        } catch (Exception e) {
+            log.error("发送本地缓存失效通知失败, {}个key", keys, e);
+        }
+    }
+
+    /**
+     * 收到其他节点的失效通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(SEPARATOR);
+        if (index < 0 || body.substring(0, index).equals(nodeId)) {
+            return;
+        }
+        int from = index + 1;
+        while (from <= body.length()) {
+            int to = body.indexOf(KEY_SEPARATOR, from);
+            if (to < 0) {
+                to = body.length();
+            }
+            String key = body.substring(from, to);
+            generations.incrementAndGet(stripe(key));
+            cache.invalidate(key);
+            invalidations.increment();
+            from = to + 1;
+        }
+    }
+
+    /**
+     * 命中/未命中/淘汰等统计, 用于调整缓存大小
+     *
+     * @return
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), cache.stats().evictionCount(),
+                cache.stats().evictionWeight(), invalidations.sum(), cache.estimatedSize());
+    }
+
+    /**
+     * 读redis之后key被失效过, 回填的值可能已经过时
+     */
+    private boolean stale(String key, long generation) {
+        return generations.get(stripe(key)) != generation;
+    }
+
+    private static int stripe(String key) {
+        return key.hashCode() & (GENERATION_STRIPES - 1);
+    }
+
+    /**
+     * redis的PTTL: -2表示key不存在, -1表示没有过期时间
+     */
+    private long ttlNanos(Long redisTtlMillis) {
+        long ttl = properties.getTtl().toNanos();
+        if (redisTtlMillis == null || redisTtlMillis == -1) {
+            return ttl;
+        }
+        if (redisTtlMillis <= 0) {
+            return 0;
+        }
+        return Math.min(ttl, TimeUnit.MILLISECONDS.toNanos(redisTtlMillis));
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final String string;
+        private final Map<Object, Object> all;
+        private final Map<Object, Object> fields;
+        private final long ttlNanos;
+        private final boolean merged;
+
+        int weight() {
+            if (all != null) {
+                return 1 + all.size();
+            }
+            if (fields != null) {
+                return 1 + fields.size();
+            }
+            return 1;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+        private long hitCount;
+        private long missCount;
+        private long evictionCount;
+        private long evictionWeight;
+        private long invalidationCount;
+        private long size;
+    }
+}
@@ -0,0 +1,38 @@
+package com.xqnode.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * cache-aside缓存相关配置
+ *
+ * @author xqnode
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "redis.cache-aside")
+public class CacheAsideProperties {
+    /**
+     * 加载结果为null时的缓存时间
+     */
+    private Duration nullTtl = Duration.ofSeconds(60);
+    /**
+     * 重建锁的过期时间, 应大于加载的最长耗时
+     */
+    private Duration lockTimeout = Duration.ofSeconds(10);
+    /**
+     * 未抢到重建锁时等待其他节点写入的最长时间, 超时后自己加载
+     */
+    private Duration lockWait = Duration.ofSeconds(3);
+    /**
+     * 等待其他节点写入时检查缓存的间隔
+     */
+    private Duration lockRetryInterval = Duration.ofMillis(50);
+    /**
+     * 提前刷新(XFetch)系数, 越大越早刷新, 小于等于0表示不提前刷新
+     */
+    private double beta = 1.0;
+}
@@ -0,0 +1,43 @@
+package com.xqnode.redis.config;
+
+import com.xqnode.redis.cache.NearCache;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 本地一级缓存配置, redis.near-cache.enabled=true时生效
+ *
+ * @author xqnode
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "redis.near-cache", name = "enabled", havingValue = "true")
+public class NearCacheConfig {
+
+    @Bean
+    public NearCache nearCache(StringRedisTemplate stringRedisTemplate, NearCacheProperties properties) {
+        return new NearCache(stringRedisTemplate, properties);
+    }
+
+    /**
+     * 订阅其他节点发出的失效通知
+     *
+     * @param factory
+     * @param nearCache
+     * @param properties
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer nearCacheListenerContainer(RedisConnectionFactory factory,
+                                                                    NearCache nearCache,
+                                                                    NearCacheProperties properties) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        container.addMessageListener(nearCache, new ChannelTopic(properties.getChannel()));
+        return container;
+    }
+}
@@ -0,0 +1,34 @@
+package com.xqnode.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 本地一级缓存(L1)相关配置
+ *
+ * @author xqnode
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "redis.near-cache")
+public class NearCacheProperties {
+    /**
+     * 是否在RedisService的读操作前启用本地缓存
+     */
+    private boolean enabled = false;
+    /**
+     * 本地缓存的最大权重, string计1, hash计1+字段数
+     */
+    private long maximumWeight = 100000;
+    /**
+     * 本地缓存的最长存活时间, 实际存活时间不会超过redis中key的剩余过期时间
+     */
+    private Duration ttl = Duration.ofSeconds(60);
+    /**
+     * 跨节点失效通知使用的pub/sub频道
+     */
+    private String channel = "near-cache:invalidate";
+}
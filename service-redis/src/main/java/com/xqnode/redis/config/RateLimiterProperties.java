@@ -0,0 +1,20 @@
+package com.xqnode.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 限流器相关配置
+ *
+ * @author xqnode
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "redis.rate-limiter")
+public class RateLimiterProperties {
+    /**
+     * redis不可用时是否放行: true时限流器失效但不影响业务, false时拒绝所有请求, 适合登录等必须限流的场景
+     */
+    private boolean failOpen = true;
+}
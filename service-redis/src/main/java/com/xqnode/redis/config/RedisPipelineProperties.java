@@ -0,0 +1,20 @@
+package com.xqnode.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * pipeline批量操作相关配置
+ *
+ * @author xqnode
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "redis.pipeline")
+public class RedisPipelineProperties {
+    /**
+     * 单次pipeline发送的命令数上限, 超出后自动分多次发送
+     */
+    private int chunkSize = 1000;
+}
@@ -0,0 +1,24 @@
+package com.xqnode.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * SCAN遍历key相关配置
+ *
+ * @author xqnode
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "redis.scan")
+public class RedisScanProperties {
+    /**
+     * 每次SCAN的COUNT提示值
+     */
+    private long count = 1000;
+    /**
+     * 每批交给调用方处理(或UNLINK)的key数量上限
+     */
+    private int batchSize = 500;
+}
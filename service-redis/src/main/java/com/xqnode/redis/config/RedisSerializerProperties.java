@@ -0,0 +1,36 @@
+package com.xqnode.redis.config;
+
+import com.xqnode.redis.serializer.SerializerFormat;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * value序列化相关配置
+ *
+ * @author xqnode
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "redis.serializer")
+public class RedisSerializerProperties {
+    /**
+     * 默认的value序列化格式, json为原有的Jackson2JsonRedisSerializer
+     */
+    private SerializerFormat format = SerializerFormat.JSON;
+    /**
+     * 序列化结果超过该字节数时使用LZ4压缩, 小于等于0表示不压缩, 对json格式无效
+     */
+    private int compressThreshold = 1024;
+    /**
+     * 按template的bean名称单独指定序列化格式, 未指定的使用format
+     */
+    private Map<String, SerializerFormat> templates = new HashMap<>();
+
+    public SerializerFormat formatFor(String templateName) {
+        return templates.getOrDefault(templateName, format);
+    }
+}
@@ -0,0 +1,46 @@
+package com.xqnode.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * redis stream相关配置
+ *
+ * @author xqnode
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "redis.stream")
+public class RedisStreamProperties {
+    /**
+     * XADD时按MAXLEN ~近似裁剪的长度, 小于等于0表示不裁剪
+     */
+    private long maxLen = 100000;
+    /**
+     * 每次XREADGROUP读取/每次XADD脚本写入的消息数上限
+     */
+    private int batchSize = 100;
+    /**
+     * 没有新消息时XREADGROUP阻塞的时间
+     */
+    private Duration pollTimeout = Duration.ofSeconds(1);
+    /**
+     * 运行消费者的线程数, 每个订阅一直占用一个线程, 也是同时运行的订阅数上限
+     */
+    private int consumerThreads = 4;
+    /**
+     * 未确认超过该时间的消息会被其他消费者认领重新处理
+     */
+    private Duration claimMinIdle = Duration.ofSeconds(60);
+    /**
+     * 检查未确认消息的间隔
+     */
+    private Duration claimInterval = Duration.ofSeconds(30);
+    /**
+     * 消息投递该次数后仍未确认, 认领时移入死信stream({key}:dead)并确认, 小于等于0表示无限重试
+     */
+    private int maxDeliveries = 5;
+}
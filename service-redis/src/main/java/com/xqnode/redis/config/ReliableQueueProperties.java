@@ -0,0 +1,46 @@
+package com.xqnode.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 可靠队列相关配置
+ *
+ * @author xqnode
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "redis.queue")
+public class ReliableQueueProperties {
+    /**
+     * 每次从队列取出的消息数上限
+     */
+    private int batchSize = 100;
+    /**
+     * 每个消费者处理消息的线程数
+     */
+    private int workers = Runtime.getRuntime().availableProcessors();
+    /**
+     * 队列为空时阻塞等待的时间, 也是ack最长的攒批时间
+     */
+    private Duration pollTimeout = Duration.ofSeconds(1);
+    /**
+     * 消费者心跳间隔
+     */
+    private Duration heartbeatInterval = Duration.ofSeconds(5);
+    /**
+     * 超过该时间没有心跳的消费者视为失联, 其处理中的消息会被重新投递
+     */
+    private Duration stallTimeout = Duration.ofSeconds(30);
+    /**
+     * 检查失联消费者的间隔
+     */
+    private Duration reaperInterval = Duration.ofSeconds(10);
+    /**
+     * 同一条消息处理失败达到该次数后不再放回队列, 移入死信列表queue:{name}:dead; 小于等于0表示不限制
+     */
+    private int maxDeliveries = 5;
+}
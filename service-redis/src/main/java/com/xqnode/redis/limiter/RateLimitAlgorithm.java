@@ -0,0 +1,31 @@
+package com.xqnode.redis.limiter;
+
+/**
+ * 限流算法, 每种算法对应一个在redis端原子执行的lua脚本
+ *
+ * @author xqnode
+ */
+public enum RateLimitAlgorithm {
+    /**
+     * 固定窗口计数, 开销最小, 窗口边界处可能出现两倍突发
+     */
+    FIXED_WINDOW("scripts/fixed_window.lua"),
+    /**
+     * 滑动窗口日志, 基于zset记录每个许可, 精确但每个许可占用一条记录
+     */
+    SLIDING_WINDOW_LOG("scripts/sliding_window_log.lua"),
+    /**
+     * 令牌桶, 允许不超过桶容量的突发, 长期速率受补充速率限制
+     */
+    TOKEN_BUCKET("scripts/token_bucket.lua");
+
+    private final String script;
+
+    RateLimitAlgorithm(String script) {
+        this.script = script;
+    }
+
+    public String getScript() {
+        return script;
+    }
+}
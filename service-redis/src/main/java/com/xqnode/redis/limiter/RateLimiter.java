@@ -0,0 +1,187 @@
+package com.xqnode.redis.limiter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于redis的分布式限流器, 由{@link RateLimiterFactory}创建
+ * <p>
+ * 每次{@link #tryAcquire(String, int)}只执行一次lua脚本(一次网络往返). 被redis拒绝的key会在本地记住需要等待的时间
+ * 和被拒绝的许可数, 在此之前许可数不小于它的请求直接在本地拒绝, 不再访问redis; 更小的请求仍然访问redis,
+ * 不会被大请求的等待时间挡住. 申请的许可数超过上限的请求也直接在本地拒绝.
+ * redis不可用时按failOpen放行或拒绝, 默认放行, 避免限流器本身成为故障点.
+ *
+ * @author xqnode
+ */
+@Slf4j
+public class RateLimiter {
+
+    private final String name;
+    private final RateLimitAlgorithm algorithm;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisScript<Long> script;
+    private final long limit;
+    private final String[] args;
+    private final boolean failOpen;
+
+    /**
+     * 本地记录的被拒绝key
+     */
+    private final Cache<String, Block> blocked;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder redisCalls = new LongAdder();
+    private final LongAdder redisNanos = new LongAdder();
+    private final LongAccumulator maxRedisNanos = new LongAccumulator(Long::max, 0);
+
+    RateLimiter(String name, RateLimitAlgorithm algorithm, RedisTemplate<String, String> redisTemplate,
+                RedisScript<Long> script, long limit, String[] args, long windowMillis, boolean failOpen) {
+        this.name = name;
+        this.algorithm = algorithm;
+        this.redisTemplate = redisTemplate;
+        this.script = script;
+        this.limit = limit;
+        this.args = args;
+        this.failOpen = failOpen;
+        this.blocked = Caffeine.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(Math.max(1, windowMillis), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 申请一个许可
+     *
+     * @param key 限流维度, 如用户id、ip
+     * @return
+     */
+    public boolean tryAcquire(String key) {
+        return tryAcquire(key, 1);
+    }
+
+    /**
+     * 申请若干许可
+     *
+     * @param key     限流维度, 如用户id、ip
+     * @param permits 许可数
+     * @return 是否通过
+     */
+    public boolean tryAcquire(String key, int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits必须大于0");
+        }
+        if (permits > limit || isBlocked(key, permits)) {
+            shed.increment();
+            return false;
+        }
+        long start = System.nanoTime();
+        Long wait;
+        try {
+            wait = redisTemplate.execute(script, Collections.singletonList(redisKey(key)), scriptArgs(permits));
+        } catch (Exception e) {
+            errors.increment();
+            log.error("限流器[{}]访问redis失败, key={}", name, key, e);
+            return failOpen;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            redisCalls.increment();
+            redisNanos.add(elapsed);
+            maxRedisNanos.accumulate(elapsed);
+        }
+        if (wait == null || wait <= 0) {
+            allowed.increment();
+            return true;
+        }
+        blocked.put(key, new Block(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait), permits));
+        rejected.increment();
+        return false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public RateLimitAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * 通过/拒绝次数和redis调用耗时
+     *
+     * @return
+     */
+    public Stats stats() {
+        long calls = redisCalls.sum();
+        long avgMicros = calls == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(redisNanos.sum() / calls);
+        return new Stats(allowed.sum(), rejected.sum(), shed.sum(), errors.sum(), calls, avgMicros,
+                TimeUnit.NANOSECONDS.toMicros(maxRedisNanos.get()));
+    }
+
+    /**
+     * 申请的许可数不小于被拒绝时的许可数, 且还没到可以重试的时间
+     */
+    private boolean isBlocked(String key, int permits) {
+        Block block = blocked.getIfPresent(key);
+        if (block == null) {
+            return false;
+        }
+        if (block.untilNanos - System.nanoTime() > 0) {
+            return permits >= block.permits;
+        }
+        blocked.invalidate(key);
+        return false;
+    }
+
+    private String redisKey(String key) {
+        return "rate:" + name + ":" + key;
+    }
+
+    private Object[] scriptArgs(int permits) {
+        Object[] scriptArgs = new Object[args.length + (algorithm == RateLimitAlgorithm.SLIDING_WINDOW_LOG ? 2 : 1)];
+        System.arraycopy(args, 0, scriptArgs, 0, args.length);
+        scriptArgs[args.length] = String.valueOf(permits);
+        if (algorithm == RateLimitAlgorithm.SLIDING_WINDOW_LOG) {
+            // zset成员需要唯一, 否则同一毫秒内的多次请求会互相覆盖
+            scriptArgs[args.length + 1] = UUID.randomUUID().toString();
+        }
+        return scriptArgs;
+    }
+
+    /**
+     * 被拒绝的许可数和可以重试的时间(System.nanoTime)
+     */
+    @AllArgsConstructor
+    private static class Block {
+        private final long untilNanos;
+        private final int permits;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+        private long allowedCount;
+        private long rejectedCount;
+        /**
+         * 本地直接拒绝、没有访问redis的次数
+         */
+        private long shedCount;
+        private long errorCount;
+        private long redisCalls;
+        private long avgLatencyMicros;
+        private long maxLatencyMicros;
+    }
+}
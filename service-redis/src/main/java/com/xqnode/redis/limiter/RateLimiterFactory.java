@@ -0,0 +1,100 @@
+package com.xqnode.redis.limiter;
+
+import com.xqnode.redis.config.RateLimiterProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 创建限流器, 同一个name的限流器在各节点之间共享配额
+ * <pre>
+ * RateLimiter limiter = rateLimiterFactory.tokenBucket("login", 10, 5);
+ * if (!limiter.tryAcquire(ip, 1)) {
+ *     return Result.error("-1", "请求过于频繁");
+ * }
+ * </pre>
+ *
+ * @author xqnode
+ */
+@Component
+public class RateLimiterFactory {
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private RateLimiterProperties properties;
+
+    private final Map<RateLimitAlgorithm, RedisScript<Long>> scripts = new EnumMap<>(RateLimitAlgorithm.class);
+
+    public RateLimiterFactory() {
+        for (RateLimitAlgorithm algorithm : RateLimitAlgorithm.values()) {
+            DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+            script.setScriptSource(new ResourceScriptSource(new ClassPathResource(algorithm.getScript())));
+            script.setResultType(Long.class);
+            scripts.put(algorithm, script);
+        }
+    }
+
+    /**
+     * 固定窗口: 每个窗口内最多limit个许可
+     *
+     * @param name
+     * @param limit
+     * @param window
+     * @return
+     */
+    public RateLimiter fixedWindow(String name, long limit, Duration window) {
+        return create(name, RateLimitAlgorithm.FIXED_WINDOW, limit, window.toMillis(),
+                String.valueOf(limit), String.valueOf(window.toMillis()));
+    }
+
+    /**
+     * 滑动窗口日志: 任意长度为window的时间段内最多limit个许可
+     *
+     * @param name
+     * @param limit
+     * @param window
+     * @return
+     */
+    public RateLimiter slidingWindow(String name, long limit, Duration window) {
+        return create(name, RateLimitAlgorithm.SLIDING_WINDOW_LOG, limit, window.toMillis(),
+                String.valueOf(limit), String.valueOf(window.toMillis()));
+    }
+
+    /**
+     * 令牌桶: 桶容量capacity, 每秒补充permitsPerSecond个令牌
+     *
+     * @param name
+     * @param capacity
+     * @param permitsPerSecond
+     * @return
+     */
+    public RateLimiter tokenBucket(String name, long capacity, double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond必须大于0");
+        }
+        long refillMillis = (long) Math.ceil(capacity * 1000 / permitsPerSecond);
+        return create(name, RateLimitAlgorithm.TOKEN_BUCKET, capacity, refillMillis,
+                String.valueOf(capacity), String.valueOf(permitsPerSecond / 1000));
+    }
+
+    /**
+     * @param blockMillis 本地拒绝记录的最长保留时间
+     */
+    private RateLimiter create(String name, RateLimitAlgorithm algorithm, long limit, long blockMillis, String... args) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit必须大于0");
+        }
+        return new RateLimiter(name, algorithm, redisTemplate, scripts.get(algorithm), limit, args, blockMillis,
+                properties.isFailOpen());
+    }
+}
@@ -0,0 +1,12 @@
+package com.xqnode.redis.queue;
+
+/**
+ * 队列消息处理器, 正常返回即确认消息, 抛出异常时消息放回队列重新投递
+ *
+ * @author xqnode
+ */
+@FunctionalInterface
+public interface MessageHandler {
+
+    void handle(String message) throws Exception;
+}
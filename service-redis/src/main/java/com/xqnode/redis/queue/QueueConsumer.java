@@ -0,0 +1,265 @@
+package com.xqnode.redis.queue;
+
+import com.xqnode.redis.config.ReliableQueueProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 可靠队列的一个消费者, 由{@link ReliableQueueService#subscribe(String, MessageHandler)}创建
+ * <p>
+ * 拉取线程每次把最多batchSize条消息原子地从队列移到本消费者的处理中列表, 交给工作线程池处理;
+ * 处理完成的消息攒批后通过pipeline一次性从处理中列表删除(ack). 工作线程池满时由拉取线程自己处理, 形成背压.
+ * 心跳由单独的定时任务发送, 拉取线程被慢消息阻塞时消费者也不会被当成失联.
+ * 处理失败的消息记录失败次数后放回队列, 达到maxDeliveries次时移入死信列表, 不再无限重试.
+ * 消费者失联时, 处理中列表里的消息由{@link ReliableQueueService}的巡检任务放回队列重新投递.
+ *
+ * @author xqnode
+ */
+@Slf4j
+public class QueueConsumer {
+
+    private final String queue;
+    private final String id = UUID.randomUUID().toString();
+    private final MessageHandler handler;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ReliableQueueProperties properties;
+    private final RedisScript<List> batchPopScript;
+    private final RedisScript<Long> requeueScript;
+    private final RedisScript<Long> nackScript;
+    /**
+     * 停止后回调, 从所属服务的消费者列表中移除
+     */
+    private final Consumer<QueueConsumer> onStopped;
+
+    private final ThreadPoolExecutor workers;
+    private final Thread fetcher;
+    /**
+     * 所属服务共用的心跳线程
+     */
+    private final ScheduledExecutorService heartbeats;
+    private ScheduledFuture<?> heartbeatTask;
+    private volatile boolean running = true;
+
+    /**
+     * 处理成功待确认的消息
+     */
+    private final Queue<String> acks = new ConcurrentLinkedQueue<>();
+    /**
+     * 处理失败待放回队列的消息
+     */
+    private final Queue<String> nacks = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+
+    QueueConsumer(String queue, MessageHandler handler, RedisTemplate<String, String> redisTemplate,
+                  ReliableQueueProperties properties, RedisScript<List> batchPopScript, RedisScript<Long> requeueScript,
+                  RedisScript<Long> nackScript, ScheduledExecutorService heartbeats, Consumer<QueueConsumer> onStopped) {
+        this.queue = queue;
+        this.handler = handler;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.batchPopScript = batchPopScript;
+        this.requeueScript = requeueScript;
+        this.nackScript = nackScript;
+        this.heartbeats = heartbeats;
+        this.onStopped = onStopped;
+        AtomicInteger index = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getBatchSize() * 2),
+                r -> new Thread(r, "queue-" + queue + "-worker-" + index.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.fetcher = new Thread(this::fetchLoop, "queue-" + queue + "-fetcher");
+    }
+
+    void start() {
+        heartbeat();
+        long interval = properties.getHeartbeatInterval().toMillis();
+        heartbeatTask = heartbeats.scheduleWithFixedDelay(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+        fetcher.start();
+    }
+
+    /**
+     * 停止拉取, 等待处理中的消息完成并确认, 未处理的消息放回队列
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // 不中断拉取线程: 中断只会放弃客户端的等待, 服务端的BRPOPLPUSH仍然阻塞, 之后到达的消息会被移进
+        // 已经停止的消费者的处理中列表; 等阻塞拉取在pollTimeout内自然返回
+        try {
+            fetcher.join(properties.getPollTimeout().toMillis() * 2);
+            workers.shutdown();
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        redisTemplate.execute(requeueScript, Arrays.asList(processingKey(), ReliableQueueService.queueKey(queue)));
+        heartbeatTask.cancel(false);
+        synchronized (this) {
+            redisTemplate.opsForZSet().remove(ReliableQueueService.consumersKey(queue), id);
+        }
+        onStopped.accept(this);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * 本消费者移入死信列表的消息数
+     */
+    public long getDeadLetteredCount() {
+        return deadLettered.sum();
+    }
+
+    String processingKey() {
+        return ReliableQueueService.processingKey(queue, id);
+    }
+
+    private void fetchLoop() {
+        while (running) {
+            try {
+                List<String> batch = fetch();
+                for (String message : batch) {
+                    workers.execute(() -> process(message));
+                }
+                flush();
+            } catch (Exception e) {
+                if (running) {
+                    log.error("队列[{}]拉取消息失败", queue, e);
+                    sleepQuietly(properties.getPollTimeout().toMillis());
+                }
+            }
+        }
+    }
+
+    /**
+     * 先非阻塞地批量取; 队列为空时阻塞等待一条, 避免空转
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> fetch() {
+        List<String> batch = redisTemplate.execute(batchPopScript,
+                Arrays.asList(ReliableQueueService.queueKey(queue), processingKey()),
+                String.valueOf(properties.getBatchSize()));
+        if (batch != null && !batch.isEmpty()) {
+            return batch;
+        }
+        String message = redisTemplate.opsForList().rightPopAndLeftPush(ReliableQueueService.queueKey(queue),
+                processingKey(), properties.getPollTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        return message == null ? Collections.emptyList() : Collections.singletonList(message);
+    }
+
+    private void process(String message) {
+        try {
+            handler.handle(message);
+            processed.increment();
+            acks.add(message);
+        } catch (Exception e) {
+            failed.increment();
+            log.error("队列[{}]处理消息失败: {}", queue, message, e);
+            nacks.add(message);
+        }
+    }
+
+    /**
+     * 通过一次pipeline确认已处理的消息并清除其失败次数; 失败的消息逐条放回队列或移入死信列表
+     */
+    @SuppressWarnings("unchecked")
+    private void flush() {
+        if (acks.isEmpty() && nacks.isEmpty()) {
+            return;
+        }
+        List<String> acked = drain(acks);
+        List<String> nacked = drain(nacks);
+        if (!acked.isEmpty()) {
+            RedisSerializer<String> serializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+            byte[] processing = serializer.serialize(processingKey());
+            byte[] deliveries = serializer.serialize(ReliableQueueService.deliveriesKey(queue));
+            boolean countDeliveries = properties.getMaxDeliveries() > 0;
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String message : acked) {
+                    byte[] raw = serializer.serialize(message);
+                    connection.lRem(processing, 1, raw);
+                    if (countDeliveries) {
+                        // 之前失败过的消息处理成功后清除失败次数
+                        connection.hDel(deliveries, raw);
+                    }
+                }
+                return null;
+            });
+        }
+        // 失败是少数情况, 每条一次脚本调用
+        List<String> keys = Arrays.asList(processingKey(), ReliableQueueService.queueKey(queue),
+                ReliableQueueService.deliveriesKey(queue), ReliableQueueService.deadKey(queue));
+        for (String message : nacked) {
+            Long dead = redisTemplate.execute(nackScript, keys, message, String.valueOf(properties.getMaxDeliveries()));
+            if (dead != null && dead == 1) {
+                deadLettered.increment();
+                log.warn("队列[{}]的消息处理失败{}次, 移入死信列表: {}", queue, properties.getMaxDeliveries(), message);
+            }
+        }
+    }
+
+    /**
+     * 在心跳线程中执行, 和stop互斥, 停止后不会再把自己加回消费者列表
+     */
+    private synchronized void heartbeat() {
+        if (!running) {
+            return;
+        }
+        try {
+            redisTemplate.opsForZSet().add(ReliableQueueService.consumersKey(queue), id, System.currentTimeMillis());
+        } catch (Exception e) {
+            log.error("队列[{}]的消费者{}发送心跳失败", queue, id, e);
+        }
+    }
+
+    private List<String> drain(Queue<String> source) {
+        List<String> drained = new ArrayList<>();
+        String message;
+        while ((message = source.poll()) != null) {
+            drained.add(message);
+        }
+        return drained;
+    }
+
+    private void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
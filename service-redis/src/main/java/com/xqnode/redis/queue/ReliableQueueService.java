@@ -0,0 +1,188 @@
+package com.xqnode.redis.queue;
+
+import com.xqnode.redis.config.ReliableQueueProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于list的可靠队列
+ * <p>
+ * 生产者LPUSH到队列, 消费者通过{@link #subscribe(String, MessageHandler)}批量消费, 消息在确认前一直保存在
+ * 消费者自己的处理中列表里. 巡检任务定期把失联消费者(心跳超时)的处理中消息放回队列, 保证至少投递一次.
+ * 多个节点可以同时订阅同一个队列. 处理失败的消息放回队列重试, 失败maxDeliveries次后移入死信列表.
+ *
+ * @author xqnode
+ */
+@Service
+@Slf4j
+public class ReliableQueueService {
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private ReliableQueueProperties properties;
+
+    private final RedisScript<List> batchPopScript = script("scripts/queue_batch_pop.lua", List.class);
+    private final RedisScript<Long> requeueScript = script("scripts/queue_requeue.lua", Long.class);
+    private final RedisScript<Long> nackScript = script("scripts/queue_nack.lua", Long.class);
+
+    private final List<QueueConsumer> consumers = new CopyOnWriteArrayList<>();
+    private final Set<String> reapedQueues = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "queue-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * 所有消费者共用的心跳线程, 和巡检分开, 巡检慢时不会耽误心跳
+     */
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "queue-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 发送一条消息
+     *
+     * @param queue
+     * @param message
+     * @return 队列长度
+     */
+    public Long push(String queue, String message) {
+        return redisTemplate.opsForList().leftPush(queueKey(queue), message);
+    }
+
+    /**
+     * 批量发送消息, 一条LPUSH命令
+     *
+     * @param queue
+     * @param messages
+     * @return 队列长度
+     */
+    public Long pushAll(String queue, Collection<String> messages) {
+        return redisTemplate.opsForList().leftPushAll(queueKey(queue), messages);
+    }
+
+    /**
+     * 队列中等待消费的消息数
+     *
+     * @param queue
+     * @return
+     */
+    public Long size(String queue) {
+        return redisTemplate.opsForList().size(queueKey(queue));
+    }
+
+    /**
+     * 死信列表中的消息数
+     *
+     * @param queue
+     * @return
+     */
+    public Long deadLetterSize(String queue) {
+        return redisTemplate.opsForList().size(deadKey(queue));
+    }
+
+    /**
+     * 订阅队列, 立即开始消费
+     *
+     * @param queue
+     * @param handler
+     * @return 消费者, 可以单独停止
+     */
+    public QueueConsumer subscribe(String queue, MessageHandler handler) {
+        QueueConsumer consumer = new QueueConsumer(queue, handler, redisTemplate, properties, batchPopScript,
+                requeueScript, nackScript, heartbeats, consumers::remove);
+        consumers.add(consumer);
+        consumer.start();
+        if (reapedQueues.add(queue)) {
+            long interval = properties.getReaperInterval().toMillis();
+            reaper.scheduleWithFixedDelay(() -> reap(queue), interval, interval, TimeUnit.MILLISECONDS);
+        }
+        return consumer;
+    }
+
+    /**
+     * 把心跳超时的消费者的处理中消息放回队列
+     *
+     * @param queue
+     * @return 重新投递的消息数
+     */
+    public long reap(String queue) {
+        long redelivered = 0;
+        try {
+            long deadline = System.currentTimeMillis() - properties.getStallTimeout().toMillis();
+            Set<String> stalled = redisTemplate.opsForZSet().rangeByScore(consumersKey(queue), 0, deadline);
+            if (stalled == null) {
+                return 0;
+            }
+            for (String consumerId : stalled) {
+                Long count = redisTemplate.execute(requeueScript, Arrays.asList(processingKey(queue, consumerId), queueKey(queue)));
+                redisTemplate.opsForZSet().remove(consumersKey(queue), consumerId);
+                if (count != null && count > 0) {
+                    redelivered += count;
+                    log.warn("队列[{}]的消费者{}已失联, 重新投递{}条消息", queue, consumerId, count);
+                }
+            }
+        } catch (Exception e) {
+            log.error("队列[{}]巡检失联消费者失败", queue, e);
+        }
+        return redelivered;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+        for (QueueConsumer consumer : consumers) {
+            consumer.stop();
+        }
+        consumers.clear();
+        heartbeats.shutdownNow();
+    }
+
+    static String queueKey(String queue) {
+        return "queue:{" + queue + "}";
+    }
+
+    static String processingKey(String queue, String consumerId) {
+        return "queue:{" + queue + "}:processing:" + consumerId;
+    }
+
+    static String consumersKey(String queue) {
+        return "queue:{" + queue + "}:consumers";
+    }
+
+    static String deliveriesKey(String queue) {
+        return "queue:{" + queue + "}:deliveries";
+    }
+
+    static String deadKey(String queue) {
+        return "queue:{" + queue + "}:dead";
+    }
+
+    private static <T> RedisScript<T> script(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(resultType);
+        return script;
+    }
+}
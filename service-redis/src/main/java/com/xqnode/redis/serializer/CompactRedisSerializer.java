@@ -0,0 +1,113 @@
+package com.xqnode.redis.serializer;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 二进制value序列化器
+ * <p>
+ * 使用Smile/CBOR等二进制格式的ObjectMapper序列化, 结果超过压缩阈值时使用LZ4压缩.
+ * 每个value的第一个字节是格式头: 0表示未压缩, 1表示LZ4压缩, 后面跟4字节原始长度.
+ *
+ * @author xqnode
+ */
+public class CompactRedisSerializer<T> implements RedisSerializer<T> {
+
+    private static final byte RAW = 0;
+    private static final byte LZ4 = 1;
+    private static final int LZ4_HEADER_LENGTH = 5;
+
+    private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+
+    private final ObjectMapper mapper;
+    private final JavaType type;
+    private final int compressThreshold;
+    private final LZ4Compressor compressor = LZ4_FACTORY.fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4_FACTORY.fastDecompressor();
+
+    /**
+     * @param mapper            二进制格式的ObjectMapper
+     * @param type              value的类型
+     * @param compressThreshold 超过该字节数时压缩, 小于等于0表示不压缩
+     */
+    public CompactRedisSerializer(ObjectMapper mapper, Class<T> type, int compressThreshold) {
+        this.mapper = mapper;
+        this.type = mapper.getTypeFactory().constructType(type);
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        Buffer buffer = new Buffer();
+        buffer.write(RAW);
+        try {
+            mapper.writeValue(buffer, value);
+        } catch (IOException e) {
+            throw new SerializationException("序列化失败: " + e.getMessage(), e);
+        }
+        int length = buffer.size() - 1;
+        if (compressThreshold <= 0 || length < compressThreshold) {
+            return buffer.toByteArray();
+        }
+        int maxLength = compressor.maxCompressedLength(length);
+        byte[] compressed = new byte[LZ4_HEADER_LENGTH + maxLength];
+        int compressedLength = compressor.compress(buffer.array(), 1, length, compressed, LZ4_HEADER_LENGTH, maxLength);
+        if (compressedLength >= length) {
+            // 压缩没有收益时保留原文
+            return buffer.toByteArray();
+        }
+        compressed[0] = LZ4;
+        compressed[1] = (byte) (length >>> 24);
+        compressed[2] = (byte) (length >>> 16);
+        compressed[3] = (byte) (length >>> 8);
+        compressed[4] = (byte) length;
+        return Arrays.copyOf(compressed, LZ4_HEADER_LENGTH + compressedLength);
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            if (bytes[0] == RAW) {
+                return mapper.readValue(bytes, 1, bytes.length - 1, type);
+            }
+            if (bytes[0] == LZ4 && bytes.length >= LZ4_HEADER_LENGTH) {
+                int length = ((bytes[1] & 0xff) << 24) | ((bytes[2] & 0xff) << 16)
+                        | ((bytes[3] & 0xff) << 8) | (bytes[4] & 0xff);
+                byte[] restored = new byte[length];
+                decompressor.decompress(bytes, LZ4_HEADER_LENGTH, restored, 0, length);
+                return mapper.readValue(restored, type);
+            }
+        } catch (Exception e) {
+            throw new SerializationException("反序列化失败: " + e.getMessage(), e);
+        }
+        throw new SerializationException("无法识别的格式头: " + bytes[0]);
+    }
+
+    /**
+     * 可以直接访问内部数组的输出流, 压缩时省去一次拷贝
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(256);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
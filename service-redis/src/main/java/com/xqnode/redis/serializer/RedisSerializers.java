@@ -0,0 +1,60 @@
+package com.xqnode.redis.serializer;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * 按配置创建value序列化器
+ *
+ * @author xqnode
+ */
+public final class RedisSerializers {
+
+    private RedisSerializers() {
+    }
+
+    /**
+     * 创建value序列化器
+     * <p>
+     * type为Object时无法预知value的类型, 只能写入类名(default typing); Smile格式会把重复出现的类名和字段名
+     * 写成回引用, 开销比json小得多. type为具体类时不写类名, 只保留字段.
+     *
+     * @param format            序列化格式
+     * @param type              value的类型
+     * @param compressThreshold 超过该字节数时LZ4压缩, 小于等于0表示不压缩, 对json格式无效
+     * @return
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <T> RedisSerializer<T> valueSerializer(SerializerFormat format, Class<T> type, int compressThreshold) {
+        switch (format) {
+            case SMILE:
+                SmileFactory smileFactory = new SmileFactory();
+                smileFactory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+                return new CompactRedisSerializer<>(objectMapper(new ObjectMapper(smileFactory), type), type, compressThreshold);
+            case CBOR:
+                return new CompactRedisSerializer<>(objectMapper(new ObjectMapper(new CBORFactory()), type), type, compressThreshold);
+            case JSON:
+            default:
+                Jackson2JsonRedisSerializer serializer = new Jackson2JsonRedisSerializer(type);
+                serializer.setObjectMapper(objectMapper(new ObjectMapper(), type));
+                return serializer;
+        }
+    }
+
+    private static ObjectMapper objectMapper(ObjectMapper om, Class<?> type) {
+        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        if (type == Object.class) {
+            om.activateDefaultTyping(LaissezFaireSubTypeValidator.instance,
+                    ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        }
+        return om;
+    }
+}
@@ -0,0 +1,21 @@
+package com.xqnode.redis.serializer;
+
+/**
+ * value序列化格式
+ *
+ * @author xqnode
+ */
+public enum SerializerFormat {
+    /**
+     * 文本json, 与原有数据兼容
+     */
+    JSON,
+    /**
+     * Jackson Smile二进制json, 重复的字段名和类名只写一次
+     */
+    SMILE,
+    /**
+     * CBOR二进制格式
+     */
+    CBOR
+}
@@ -0,0 +1,269 @@
+package com.xqnode.redis.service;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 基于pipeline的批量操作
+ * <p>
+ * 先排队若干String/Hash/List/Set/ZSet命令, 调用{@link #execute()}时一次性通过pipeline发送,
+ * 命令数超过chunkSize时自动拆成多次pipeline. 每个排队方法返回一个{@link Response},
+ * execute之后可以从中取出对应命令的结果. 只提供有返回值的命令(HMSET/LTRIM这类状态回复在pipeline中不产生结果,
+ * 会导致结果错位). 非线程安全, 每次批量操作新建一个实例:
+ * <pre>
+ * RedisBatch batch = redisService.batch();
+ * RedisBatch.Response&lt;String&gt; name = batch.get("name");
+ * batch.hPut("hash", "field", "value");
+ * batch.execute();
+ * name.get();
+ * </pre>
+ *
+ * @author xqnode
+ */
+public class RedisBatch {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final int chunkSize;
+    /**
+     * 执行后对写过的string/hash key回调一次, 用于失效本地缓存, 可以为null
+     */
+    private final Consumer<Collection<String>> invalidator;
+    private final List<Command<?>> commands = new ArrayList<>();
+    private final Set<String> writtenKeys = new LinkedHashSet<>();
+
+    RedisBatch(RedisTemplate<String, String> redisTemplate, int chunkSize, Consumer<Collection<String>> invalidator) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize必须大于0");
+        }
+        this.redisTemplate = redisTemplate;
+        this.chunkSize = chunkSize;
+        this.invalidator = invalidator;
+    }
+
+    /**
+     * 已排队的命令数
+     *
+     * @return
+     */
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * 发送所有排队的命令, 按排队顺序返回结果并填充各个{@link Response}
+     *
+     * @return 每条命令的结果
+     */
+    public List<Object> execute() {
+        List<Object> results = new ArrayList<>(commands.size());
+        for (int from = 0; from < commands.size(); from += chunkSize) {
+            List<Command<?>> chunk = commands.subList(from, Math.min(from + chunkSize, commands.size()));
+            List<Object> chunkResults = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    for (Command<?> command : chunk) {
+                        command.action.accept(ops);
+                    }
+                    return null;
+                }
+            });
+            for (int i = 0; i < chunk.size(); i++) {
+                Object result = i < chunkResults.size() ? chunkResults.get(i) : null;
+                chunk.get(i).response.complete(result);
+                results.add(result);
+            }
+        }
+        commands.clear();
+        if (invalidator != null && !writtenKeys.isEmpty()) {
+            invalidator.accept(writtenKeys);
+        }
+        writtenKeys.clear();
+        return results;
+    }
+
+    /** --------------------key相关操作-------------------------- */
+
+    public Response<Long> delete(String key) {
+        return write(key, ops -> ops.delete(key));
+    }
+
+    public Response<Long> unlink(String key) {
+        return write(key, ops -> ops.unlink(key));
+    }
+
+    public Response<Boolean> expire(String key, long timeout, TimeUnit unit) {
+        return write(key, ops -> ops.expire(key, timeout, unit));
+    }
+
+    public Response<Long> getExpire(String key, TimeUnit unit) {
+        return queue(ops -> ops.getExpire(key, unit));
+    }
+
+    /** --------------------string相关操作-------------------------- */
+
+    public Response<Boolean> set(String key, String value) {
+        return write(key, ops -> ops.opsForValue().set(key, value));
+    }
+
+    public Response<Boolean> setEx(String key, String value, long timeout, TimeUnit unit) {
+        return write(key, ops -> ops.opsForValue().set(key, value, timeout, unit));
+    }
+
+    public Response<Boolean> setIfAbsent(String key, String value) {
+        return write(key, ops -> ops.opsForValue().setIfAbsent(key, value));
+    }
+
+    public Response<String> get(String key) {
+        return queue(ops -> ops.opsForValue().get(key));
+    }
+
+    public Response<Long> incrBy(String key, long increment) {
+        return write(key, ops -> ops.opsForValue().increment(key, increment));
+    }
+
+    /** --------------------hash相关操作-------------------------- */
+
+    public Response<Boolean> hPut(String key, Object hashKey, Object value) {
+        return write(key, ops -> ops.opsForHash().put(key, hashKey, value));
+    }
+
+    public Response<Object> hGet(String key, Object hashKey) {
+        return queue(ops -> ops.opsForHash().get(key, hashKey));
+    }
+
+    public Response<Map<Object, Object>> hGetAll(String key) {
+        return queue(ops -> ops.opsForHash().entries(key));
+    }
+
+    public Response<Long> hDelete(String key, Object... fields) {
+        return write(key, ops -> ops.opsForHash().delete(key, fields));
+    }
+
+    public Response<Long> hIncrBy(String key, Object field, long increment) {
+        return write(key, ops -> ops.opsForHash().increment(key, field, increment));
+    }
+
+    /** --------------------list相关操作-------------------------- */
+
+    public Response<Long> lLeftPush(String key, String value) {
+        return queue(ops -> ops.opsForList().leftPush(key, value));
+    }
+
+    public Response<Long> lRightPush(String key, String value) {
+        return queue(ops -> ops.opsForList().rightPush(key, value));
+    }
+
+    public Response<Long> lRightPushAll(String key, Collection<String> values) {
+        return queue(ops -> ops.opsForList().rightPushAll(key, values));
+    }
+
+    public Response<List<String>> lRange(String key, long start, long end) {
+        return queue(ops -> ops.opsForList().range(key, start, end));
+    }
+
+    public Response<Long> lRemove(String key, long index, String value) {
+        return queue(ops -> ops.opsForList().remove(key, index, value));
+    }
+
+    /** --------------------set相关操作-------------------------- */
+
+    public Response<Long> sAdd(String key, String... values) {
+        return queue(ops -> ops.opsForSet().add(key, values));
+    }
+
+    public Response<Long> sRemove(String key, Object... values) {
+        return queue(ops -> ops.opsForSet().remove(key, values));
+    }
+
+    public Response<Boolean> sIsMember(String key, Object value) {
+        return queue(ops -> ops.opsForSet().isMember(key, value));
+    }
+
+    public Response<Set<String>> setMembers(String key) {
+        return queue(ops -> ops.opsForSet().members(key));
+    }
+
+    /** ------------------zSet相关操作--------------------------------*/
+
+    public Response<Boolean> zAdd(String key, String value, double score) {
+        return queue(ops -> ops.opsForZSet().add(key, value, score));
+    }
+
+    public Response<Long> zAdd(String key, Set<ZSetOperations.TypedTuple<String>> values) {
+        return queue(ops -> ops.opsForZSet().add(key, values));
+    }
+
+    public Response<Long> zRemove(String key, Object... values) {
+        return queue(ops -> ops.opsForZSet().remove(key, values));
+    }
+
+    public Response<Double> zIncrementScore(String key, String value, double delta) {
+        return queue(ops -> ops.opsForZSet().incrementScore(key, value, delta));
+    }
+
+    public Response<Double> zScore(String key, Object value) {
+        return queue(ops -> ops.opsForZSet().score(key, value));
+    }
+
+    public Response<Set<String>> zRange(String key, long start, long end) {
+        return queue(ops -> ops.opsForZSet().range(key, start, end));
+    }
+
+    private <T> Response<T> write(String key, Consumer<RedisOperations<String, String>> action) {
+        writtenKeys.add(key);
+        return queue(action);
+    }
+
+    private <T> Response<T> queue(Consumer<RedisOperations<String, String>> action) {
+        Response<T> response = new Response<>();
+        commands.add(new Command<>(action, response));
+        return response;
+    }
+
+    private static class Command<T> {
+        private final Consumer<RedisOperations<String, String>> action;
+        private final Response<T> response;
+
+        Command(Consumer<RedisOperations<String, String>> action, Response<T> response) {
+            this.action = action;
+            this.response = response;
+        }
+    }
+
+    /**
+     * 批量操作中单条命令的结果, 在{@link RedisBatch#execute()}之后可用
+     *
+     * @param <T>
+     */
+    public static class Response<T> {
+        private T value;
+        private boolean done;
+
+        @SuppressWarnings("unchecked")
+        void complete(Object value) {
+            this.value = (T) value;
+            this.done = true;
+        }
+
+        public T get() {
+            if (!done) {
+                throw new IllegalStateException("批量操作尚未执行");
+            }
+            return value;
+        }
+    }
+}
@@ -1,27 +1,98 @@
 package com.xqnode.redis.service;
 
+import com.xqnode.redis.cache.NearCache;
+import com.xqnode.redis.config.RedisPipelineProperties;
+import com.xqnode.redis.config.RedisScanProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.ConvertingCursor;
 import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 public class RedisService {
 
+    /**
+     * 单条UNLINK命令携带的key数量上限
+     */
+    private static final int UNLINK_CHUNK_SIZE = 100;
+
     @Autowired
     private RedisTemplate<String, String> redisTemplate;
 
+    @Autowired
+    private RedisScanProperties scanProperties;
+
+    @Autowired
+    private RedisPipelineProperties pipelineProperties;
+
+    /**
+     * 本地一级缓存, redis.near-cache.enabled=true时才存在
+     */
+    @Autowired(required = false)
+    private NearCache nearCache;
+
+    /**
+     * 创建一个批量操作, 排队的命令在execute时通过pipeline一次性发送
+     *
+     * @return
+     */
+    public RedisBatch batch() {
+        return new RedisBatch(redisTemplate, pipelineProperties.getChunkSize(), nearCache == null ? null : this::invalidateAll);
+    }
+
+    /**
+     * 本地一级缓存的命中/未命中/淘汰统计
+     *
+     * @return 未启用本地缓存时返回null
+     */
+    public NearCache.Stats nearCacheStats() {
+        return nearCache == null ? null : nearCache.stats();
+    }
+
+    /**
+     * 写操作之后失效本地缓存, 并通知其他节点
+     *
+     * @param key
+     */
+    private void invalidate(String key) {
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 批量写操作之后失效本地缓存, 所有key合并在一条通知里
+     *
+     * @param keys
+     */
+    private void invalidateAll(Collection<String> keys) {
+        if (nearCache != null) {
+            nearCache.invalidateAll(keys);
+        }
+    }
+
     /**
      * 判断缓存中是否有对应的value
      *
@@ -33,7 +104,7 @@ public class RedisService {
     }
 
     /**
-     * 设置过期时间
+     * 设置过期时间, key不存在时返回false
      *
      * @param key
      * @param timeout
@@ -41,22 +112,119 @@ public class RedisService {
      * @return
      */
     public Boolean expire(String key, long timeout, TimeUnit unit) {
-        if (exists(key)) {
-            return Boolean.TRUE.equals(redisTemplate.expire(key, timeout, unit));
+        boolean result = Boolean.TRUE.equals(redisTemplate.expire(key, timeout, unit));
+        invalidate(key);
+        return result;
+    }
+
+    /**
+     * 批量设置过期时间, 所有EXPIRE通过一次pipeline发送
+     *
+     * @param keys
+     * @param timeout
+     * @param unit
+     * @return 成功设置过期时间的key数量
+     */
+    public long expireAll(Collection<String> keys, long timeout, TimeUnit unit) {
+        RedisBatch batch = batch();
+        for (String key : keys) {
+            batch.expire(key, timeout, unit);
+        }
+        long count = 0;
+        for (Object result : batch.execute()) {
+            if (Boolean.TRUE.equals(result)) {
+                count++;
+            }
         }
-        return false;
+        return count;
     }
 
     /**
      * 查找匹配的key
+     * <p>
+     * 底层是KEYS命令, key数量多时会长时间阻塞redis, 请改用{@link #scan(String, Consumer)}或{@link #scanKeys(String)}
      *
      * @param pattern
      * @return
      */
+    @Deprecated
     public Set<String> keys(String pattern) {
         return redisTemplate.keys(pattern);
     }
 
+    /**
+     * 使用SCAN游标遍历匹配的key, 不会阻塞redis
+     * <p>
+     * 游标占用一个连接, 使用完毕后必须关闭
+     *
+     * @param pattern
+     * @param count   每次SCAN的COUNT提示值
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public Cursor<String> scan(String pattern, long count) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(count).build();
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        return redisTemplate.executeWithStickyConnection(
+                connection -> new ConvertingCursor<>(connection.scan(options), keySerializer::deserialize));
+    }
+
+    /**
+     * 使用SCAN游标分批遍历匹配的key, 每攒够batchSize个key回调一次, 内存占用与key总数无关
+     *
+     * @param pattern
+     * @param count     每次SCAN的COUNT提示值
+     * @param batchSize 每批回调的key数量上限
+     * @param consumer  批处理回调, 回调结束后批次列表不再被使用
+     * @return 遍历到的key总数
+     */
+    public long scan(String pattern, long count, int batchSize, Consumer<List<String>> consumer) {
+        long total = 0;
+        List<String> batch = new ArrayList<>(batchSize);
+        try (Cursor<String> cursor = scan(pattern, count)) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= batchSize) {
+                    consumer.accept(batch);
+                    total += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+            total += batch.size();
+        }
+        return total;
+    }
+
+    /**
+     * 使用默认的COUNT和批大小分批遍历匹配的key
+     *
+     * @param pattern
+     * @param consumer
+     * @return 遍历到的key总数
+     */
+    public long scan(String pattern, Consumer<List<String>> consumer) {
+        return scan(pattern, scanProperties.getCount(), scanProperties.getBatchSize(), consumer);
+    }
+
+    /**
+     * 使用SCAN查找匹配的key, 结果与{@link #keys(String)}一致但不会阻塞redis
+     * <p>
+     * 结果会全部放入内存, 数据量大时请使用{@link #scan(String, Consumer)}
+     *
+     * @param pattern
+     * @return
+     */
+    public Set<String> scanKeys(String pattern) {
+        Set<String> keys = new HashSet<>();
+        scan(pattern, keys::addAll);
+        return keys;
+    }
+
     /**
      * 返回 key 的剩余的过期时间
      *
@@ -99,6 +267,7 @@ public class RedisService {
         boolean result = false;
         try {
             redisTemplate.opsForValue().set(key, value);
+            invalidate(key);
             result = true;
         } catch (Exception e) {
             log.error("写入redis失败", e);
@@ -107,17 +276,24 @@ public class RedisService {
     }
 
     /**
-     * 写入缓存设置时效时间
+     * 写入缓存设置时效时间, 使用一条带EX/PX参数的SET命令原子地写入值和过期时间
      *
      * @param key
      * @param value
      * @return
      */
+    @SuppressWarnings("unchecked")
     public boolean set(final String key, String value, Long expireTime, TimeUnit timeUnit) {
         boolean result = false;
         try {
-            redisTemplate.opsForValue().set(key, value);
-            redisTemplate.expire(key, expireTime, timeUnit);
+            // opsForValue().set(k, v, timeout, unit)发送的是SETEX/PSETEX, 这里直接发送SET key value EX/PX
+            RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+            RedisSerializer<String> valueSerializer = (RedisSerializer<String>) redisTemplate.getValueSerializer();
+            byte[] rawKey = keySerializer.serialize(key);
+            byte[] rawValue = valueSerializer.serialize(value);
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(rawKey, rawValue,
+                    Expiration.from(expireTime, timeUnit), RedisStringCommands.SetOption.upsert()));
+            invalidate(key);
             result = true;
         } catch (Exception e) {
             log.error("写入redis失败", e);
@@ -136,6 +312,7 @@ public class RedisService {
      */
     public void setEx(String key, String value, long timeout, TimeUnit unit) {
         redisTemplate.opsForValue().set(key, value, timeout, unit);
+        invalidate(key);
     }
 
     /**
@@ -146,7 +323,11 @@ public class RedisService {
      * @return 之前已经存在返回false, 不存在返回true
      */
     public boolean setIfAbsent(String key, String value) {
-        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, value));
+        boolean result = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, value));
+        if (result) {
+            invalidate(key);
+        }
+        return result;
     }
 
     /**
@@ -156,7 +337,9 @@ public class RedisService {
      * @return
      */
     public Long incrBy(String key, long increment) {
-        return redisTemplate.opsForValue().increment(key, increment);
+        Long result = redisTemplate.opsForValue().increment(key, increment);
+        invalidate(key);
+        return result;
     }
 
     /**
@@ -164,7 +347,9 @@ public class RedisService {
      * @return
      */
     public Double incrByFloat(String key, double increment) {
-        return redisTemplate.opsForValue().increment(key, increment);
+        Double result = redisTemplate.opsForValue().increment(key, increment);
+        invalidate(key);
+        return result;
     }
 
     /**
@@ -175,17 +360,33 @@ public class RedisService {
      * @return
      */
     public Integer append(String key, String value) {
-        return redisTemplate.opsForValue().append(key, value);
+        Integer result = redisTemplate.opsForValue().append(key, value);
+        invalidate(key);
+        return result;
     }
 
     /**
-     * 读取缓存
+     * 读取缓存, 启用本地缓存时优先读本地
      *
      * @param key
      * @return
      */
     public String get(final String key) {
-        return redisTemplate.opsForValue().get(key);
+        if (nearCache == null) {
+            return redisTemplate.opsForValue().get(key);
+        }
+        String value = nearCache.getString(key);
+        if (value != null) {
+            return value;
+        }
+        long generation = nearCache.generation(key);
+        // 值和剩余过期时间一起取回, 本地缓存不会比redis活得更久
+        RedisBatch batch = batch();
+        RedisBatch.Response<String> response = batch.get(key);
+        RedisBatch.Response<Long> ttl = batch.getExpire(key, TimeUnit.MILLISECONDS);
+        batch.execute();
+        nearCache.putString(key, response.get(), ttl.get(), generation);
+        return response.get();
     }
 
 
@@ -193,23 +394,71 @@ public class RedisService {
      * 删除对应的value
      *
      * @param key
+     * @return key存在并被删除时返回true
      */
-    public void delete(final String key) {
-        if (exists(key)) {
-            redisTemplate.delete(key);
+    public boolean delete(final String key) {
+        boolean result = Boolean.TRUE.equals(redisTemplate.delete(key));
+        invalidate(key);
+        return result;
+    }
+
+    /**
+     * 批量删除key, 使用一条UNLINK命令, 由redis后台线程回收内存
+     *
+     * @param keys
+     * @return 删除的key数量
+     */
+    public long deleteAll(final Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return 0;
         }
+        Long count = redisTemplate.unlink(keys);
+        invalidateAll(keys);
+        return count == null ? 0 : count;
     }
 
     /**
-     * 批量删除key
+     * 批量删除匹配的key
+     * <p>
+     * 使用SCAN分批遍历, 每批通过pipeline发送UNLINK, 由redis后台线程回收内存
      *
      * @param pattern
-     */
-    public void deletePattern(final String pattern) {
-        Set<String> keys = redisTemplate.keys(pattern);
-        if (keys != null && keys.size() > 0) {
-            redisTemplate.delete(keys);
+     * @return 删除的key数量
+     */
+    public long deletePattern(final String pattern) {
+        AtomicLong deleted = new AtomicLong();
+        scan(pattern, batch -> deleted.addAndGet(unlinkPipelined(batch)));
+        return deleted.get();
+    }
+
+    /**
+     * 以pipeline方式分组发送UNLINK
+     *
+     * @param keys
+     * @return 删除的key数量
+     */
+    @SuppressWarnings("unchecked")
+    private long unlinkPipelined(List<String> keys) {
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int from = 0; from < keys.size(); from += UNLINK_CHUNK_SIZE) {
+                List<String> chunk = keys.subList(from, Math.min(from + UNLINK_CHUNK_SIZE, keys.size()));
+                byte[][] rawKeys = new byte[chunk.size()][];
+                for (int i = 0; i < rawKeys.length; i++) {
+                    rawKeys[i] = keySerializer.serialize(chunk.get(i));
+                }
+                connection.unlink(rawKeys);
+            }
+            return null;
+        });
+        invalidateAll(keys);
+        long deleted = 0;
+        for (Object result : results) {
+            if (result instanceof Long) {
+                deleted += (Long) result;
+            }
         }
+        return deleted;
     }
 
     /**
@@ -221,31 +470,59 @@ public class RedisService {
      */
     public void hPut(String key, Object hashKey, Object value) {
         redisTemplate.opsForHash().put(key, hashKey, value);
+        invalidate(key);
     }
 
     public void hPutAll(String key, Map<String, String> maps) {
         redisTemplate.opsForHash().putAll(key, maps);
+        invalidate(key);
     }
 
     /**
-     * 哈希获取数据
+     * 哈希获取数据, 启用本地缓存时优先读本地
      *
      * @param key
      * @param hashKey
      * @return
      */
     public Object hGet(String key, Object hashKey) {
-        return redisTemplate.opsForHash().get(key, hashKey);
+        if (nearCache == null) {
+            return redisTemplate.opsForHash().get(key, hashKey);
+        }
+        Object value = nearCache.getField(key, hashKey);
+        if (value != null) {
+            return value;
+        }
+        long generation = nearCache.generation(key);
+        RedisBatch batch = batch();
+        RedisBatch.Response<Object> response = batch.hGet(key, hashKey);
+        RedisBatch.Response<Long> ttl = batch.getExpire(key, TimeUnit.MILLISECONDS);
+        batch.execute();
+        nearCache.putField(key, hashKey, response.get(), ttl.get(), generation);
+        return response.get();
     }
 
     /**
-     * 获取所有给定字段的值
+     * 获取所有给定字段的值, 启用本地缓存时优先读本地
      *
      * @param key
      * @return
      */
     public Map<Object, Object> hGetAll(String key) {
-        return redisTemplate.opsForHash().entries(key);
+        if (nearCache == null) {
+            return redisTemplate.opsForHash().entries(key);
+        }
+        Map<Object, Object> value = nearCache.getHash(key);
+        if (value != null) {
+            return value;
+        }
+        long generation = nearCache.generation(key);
+        RedisBatch batch = batch();
+        RedisBatch.Response<Map<Object, Object>> response = batch.hGetAll(key);
+        RedisBatch.Response<Long> ttl = batch.getExpire(key, TimeUnit.MILLISECONDS);
+        batch.execute();
+        nearCache.putHash(key, response.get(), ttl.get(), generation);
+        return response.get();
     }
 
     /**
@@ -256,7 +533,9 @@ public class RedisService {
      * @return
      */
     public Long hDelete(String key, Object... fields) {
-        return redisTemplate.opsForHash().delete(key, fields);
+        Long result = redisTemplate.opsForHash().delete(key, fields);
+        invalidate(key);
+        return result;
     }
 
     /**
@@ -268,7 +547,9 @@ public class RedisService {
      * @return
      */
     public Long hIncrBy(String key, Object field, long increment) {
-        return redisTemplate.opsForHash().increment(key, field, increment);
+        Long result = redisTemplate.opsForHash().increment(key, field, increment);
+        invalidate(key);
+        return result;
     }
 
     /**
@@ -280,7 +561,9 @@ public class RedisService {
      * @return
      */
     public Double hIncrByFloat(String key, Object field, double delta) {
-        return redisTemplate.opsForHash().increment(key, field, delta);
+        Double result = redisTemplate.opsForHash().increment(key, field, delta);
+        invalidate(key);
+        return result;
     }
 
     /**
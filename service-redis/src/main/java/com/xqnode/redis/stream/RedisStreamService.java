@@ -0,0 +1,305 @@
+package com.xqnode.redis.stream;
+
+import com.xqnode.redis.config.RedisStreamProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * redis stream操作和消费者组订阅
+ * <p>
+ * 写入使用lua脚本批量XADD并近似裁剪(MAXLEN ~), 消费使用XREADGROUP批量读取, 确认时多条XACK通过pipeline发送.
+ * 长时间未确认的消息通过XPENDING + XCLAIM认领后重新处理, 投递maxDeliveries次仍未确认的消息移入死信stream并确认,
+ * 不再无限重试.
+ *
+ * @author xqnode
+ */
+@Service
+@Slf4j
+public class RedisStreamService {
+
+    private static final StringRedisSerializer SERIALIZER = StringRedisSerializer.UTF_8;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private RedisStreamProperties properties;
+
+    private final RedisScript<List> addScript = script("scripts/stream_add.lua", List.class);
+    private final List<StreamSubscription> subscriptions = new ArrayList<>();
+    private ExecutorService executor;
+
+    /**
+     * 写入一条消息
+     *
+     * @param key
+     * @param fields
+     * @return 消息id
+     */
+    public String add(String key, Map<String, String> fields) {
+        return addAll(key, Collections.singletonList(fields)).get(0);
+    }
+
+    /**
+     * 批量写入消息, 每batchSize条一次脚本调用, 写入时按maxLen近似裁剪
+     *
+     * @param key
+     * @param records
+     * @return 消息id, 与records顺序一致
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> addAll(String key, List<Map<String, String>> records) {
+        List<String> ids = new ArrayList<>(records.size());
+        for (int from = 0; from < records.size(); from += properties.getBatchSize()) {
+            List<Map<String, String>> chunk = records.subList(from, Math.min(from + properties.getBatchSize(), records.size()));
+            List<String> args = new ArrayList<>();
+            args.add(String.valueOf(properties.getMaxLen()));
+            for (Map<String, String> fields : chunk) {
+                args.add(String.valueOf(fields.size()));
+                for (Map.Entry<String, String> entry : fields.entrySet()) {
+                    args.add(entry.getKey());
+                    args.add(entry.getValue());
+                }
+            }
+            List<String> chunkIds = redisTemplate.execute(addScript, Collections.singletonList(key), args.toArray());
+            if (chunkIds != null) {
+                ids.addAll(chunkIds);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 创建消费者组, stream不存在时一并创建, 组已存在时忽略
+     *
+     * @param key
+     * @param group
+     */
+    public void createGroup(String key, String group) {
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("XGROUP",
+                    SERIALIZER.serialize("CREATE"), SERIALIZER.serialize(key), SERIALIZER.serialize(group),
+                    SERIALIZER.serialize("0"), SERIALIZER.serialize("MKSTREAM")));
+        } catch (Exception e) {
+            if (!String.valueOf(e.getMessage()).contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 以消费者组方式批量读取新消息
+     *
+     * @param key
+     * @param group
+     * @param consumer
+     * @param count    最多读取的消息数
+     * @param block    没有消息时阻塞的时间, null表示不阻塞
+     * @return
+     */
+    public List<MapRecord<String, String, String>> readGroup(String key, String group, String consumer,
+                                                             int count, Duration block) {
+        StreamReadOptions options = StreamReadOptions.empty().count(count);
+        if (block != null) {
+            options = options.block(block);
+        }
+        StreamReadOptions readOptions = options;
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.xReadGroup(Consumer.from(group, consumer), readOptions,
+                        StreamOffset.create(SERIALIZER.serialize(key), ReadOffset.lastConsumed())));
+        return deserialize(records);
+    }
+
+    /**
+     * 确认消息, 每batchSize个id一条XACK, 所有XACK通过一次pipeline发送
+     *
+     * @param key
+     * @param group
+     * @param ids
+     * @return 确认的消息数
+     */
+    public long ack(String key, String group, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<String> idList = new ArrayList<>(ids);
+        byte[] rawKey = SERIALIZER.serialize(key);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int from = 0; from < idList.size(); from += properties.getBatchSize()) {
+                List<String> chunk = idList.subList(from, Math.min(from + properties.getBatchSize(), idList.size()));
+                connection.xAck(rawKey, group, chunk.toArray(new String[0]));
+            }
+            return null;
+        });
+        long acked = 0;
+        for (Object result : results) {
+            if (result instanceof Long) {
+                acked += (Long) result;
+            }
+        }
+        return acked;
+    }
+
+    /**
+     * 死信stream中的消息数
+     *
+     * @param key
+     * @return
+     */
+    public Long deadLetterSize(String key) {
+        return redisTemplate.opsForStream().size(deadKey(key));
+    }
+
+    /**
+     * 认领组内超过minIdle未确认的消息, 由consumer重新处理
+     * <p>
+     * 相当于XAUTOCLAIM, 为兼容6.2以下的redis使用XPENDING + XCLAIM实现.
+     * 已经投递了maxDeliveries次的消息认领后写入死信stream {key}:dead 并确认, 不再返回.
+     *
+     * @param key
+     * @param group
+     * @param consumer
+     * @param minIdle
+     * @param count    最多认领的消息数
+     * @return 认领到的消息
+     */
+    public List<MapRecord<String, String, String>> claimIdle(String key, String group, String consumer,
+                                                             Duration minIdle, int count) {
+        byte[] rawKey = SERIALIZER.serialize(key);
+        int maxDeliveries = properties.getMaxDeliveries();
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection -> {
+            PendingMessages pending = connection.xPending(rawKey, group, Range.unbounded(), (long) count);
+            List<RecordId> idle = new ArrayList<>();
+            Set<String> exhausted = new HashSet<>();
+            for (PendingMessage message : pending) {
+                if (message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+                    idle.add(message.getId());
+                    if (maxDeliveries > 0 && message.getTotalDeliveryCount() >= maxDeliveries) {
+                        exhausted.add(message.getIdAsString());
+                    }
+                }
+            }
+            if (idle.isEmpty()) {
+                return Collections.emptyList();
+            }
+            // 先认领再移入死信, 多个消费者同时巡检时只有认领成功的一方处理
+            List<ByteRecord> claimed = connection.xClaim(rawKey, group, consumer,
+                    RedisStreamCommands.XClaimOptions.minIdle(minIdle).ids(idle.toArray(new RecordId[0])));
+            if (exhausted.isEmpty()) {
+                return claimed;
+            }
+            byte[] rawDeadKey = SERIALIZER.serialize(deadKey(key));
+            List<ByteRecord> retry = new ArrayList<>(claimed.size());
+            List<String> dead = new ArrayList<>();
+            for (ByteRecord record : claimed) {
+                if (exhausted.contains(record.getId().getValue())) {
+                    connection.xAdd(rawDeadKey, record.getValue());
+                    dead.add(record.getId().getValue());
+                } else {
+                    retry.add(record);
+                }
+            }
+            if (!dead.isEmpty()) {
+                connection.xAck(rawKey, group, dead.toArray(new String[0]));
+                log.warn("stream[{}]组[{}]有{}条消息投递{}次仍未确认, 移入死信stream: {}", key, group, dead.size(),
+                        maxDeliveries, dead);
+            }
+            return retry;
+        });
+        return deserialize(records);
+    }
+
+    /**
+     * 以消费者组方式订阅stream, 在消费者线程池中运行
+     * <p>
+     * 每个订阅一直占用一个消费者线程, 超出consumerThreads的订阅排在线程池队列里永远不会运行, 因此直接拒绝;
+     * 取消的订阅在当前一次读取返回(最多pollTimeout)后才释放线程.
+     *
+     * @param key
+     * @param group
+     * @param consumer 消费者名称, 同一组内唯一
+     * @param handler
+     * @return 订阅, 可以单独取消
+     * @throws IllegalStateException 运行中的订阅数已达consumerThreads
+     */
+    public synchronized StreamSubscription subscribe(String key, String group, String consumer, StreamHandler handler) {
+        subscriptions.removeIf(StreamSubscription::isFinished);
+        if (subscriptions.size() >= properties.getConsumerThreads()) {
+            throw new IllegalStateException("运行中的stream订阅数已达consumerThreads=" + properties.getConsumerThreads()
+                    + ", 请增大redis.stream.consumer-threads或先取消其他订阅");
+        }
+        if (executor == null) {
+            AtomicInteger index = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(properties.getConsumerThreads(),
+                    r -> new Thread(r, "stream-consumer-" + index.incrementAndGet()));
+        }
+        createGroup(key, group);
+        StreamSubscription subscription = new StreamSubscription(this, properties, key, group, consumer, handler);
+        subscriptions.add(subscription);
+        executor.execute(subscription);
+        return subscription;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        subscriptions.forEach(StreamSubscription::cancel);
+        subscriptions.clear();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    static String deadKey(String key) {
+        return key + ":dead";
+    }
+
+    private List<MapRecord<String, String, String>> deserialize(List<ByteRecord> records) {
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<MapRecord<String, String, String>> result = new ArrayList<>(records.size());
+        for (ByteRecord record : records) {
+            result.add(record.deserialize(SERIALIZER, SERIALIZER, SERIALIZER));
+        }
+        return result;
+    }
+
+    private static <T> RedisScript<T> script(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(resultType);
+        return script;
+    }
+}
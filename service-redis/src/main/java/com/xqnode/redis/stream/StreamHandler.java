@@ -0,0 +1,16 @@
+package com.xqnode.redis.stream;
+
+import org.springframework.data.redis.connection.stream.MapRecord;
+
+import java.util.List;
+
+/**
+ * stream消息批处理器, 正常返回即确认整批消息, 抛出异常时整批不确认, 超时后被重新认领处理
+ *
+ * @author xqnode
+ */
+@FunctionalInterface
+public interface StreamHandler {
+
+    void handle(List<MapRecord<String, String, String>> records) throws Exception;
+}
@@ -0,0 +1,136 @@
+package com.xqnode.redis.stream;
+
+import com.xqnode.redis.config.RedisStreamProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.MapRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * stream消费者组的一个订阅, 由{@link RedisStreamService#subscribe(String, String, String, StreamHandler)}创建
+ * <p>
+ * 循环以XREADGROUP批量阻塞读取新消息交给handler, 处理成功后一次XACK确认整批; 处理失败的消息不确认,
+ * 留在pending列表里. 每隔claimInterval把组内空闲超过claimMinIdle的pending消息认领过来重新处理,
+ * 包括其他已经下线的消费者遗留的消息; 投递maxDeliveries次仍未确认的消息移入死信stream, 不再重试.
+ *
+ * @author xqnode
+ */
+@Slf4j
+public class StreamSubscription implements Runnable {
+
+    private final RedisStreamService streamService;
+    private final RedisStreamProperties properties;
+    private final String key;
+    private final String group;
+    private final String consumer;
+    private final StreamHandler handler;
+
+    private volatile boolean running = true;
+    private volatile boolean finished;
+    private long lastClaim = System.currentTimeMillis();
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder claimed = new LongAdder();
+
+    StreamSubscription(RedisStreamService streamService, RedisStreamProperties properties,
+                       String key, String group, String consumer, StreamHandler handler) {
+        this.streamService = streamService;
+        this.properties = properties;
+        this.key = key;
+        this.group = group;
+        this.consumer = consumer;
+        this.handler = handler;
+    }
+
+    @Override
+    public void run() {
+        try {
+            poll();
+        } finally {
+            finished = true;
+        }
+    }
+
+    private void poll() {
+        while (running) {
+            try {
+                if (System.currentTimeMillis() - lastClaim >= properties.getClaimInterval().toMillis()) {
+                    lastClaim = System.currentTimeMillis();
+                    List<MapRecord<String, String, String>> idle = streamService.claimIdle(key, group, consumer,
+                            properties.getClaimMinIdle(), properties.getBatchSize());
+                    if (!idle.isEmpty()) {
+                        claimed.add(idle.size());
+                        log.warn("stream[{}]组[{}]的消费者{}认领了{}条空闲消息", key, group, consumer, idle.size());
+                        process(idle);
+                    }
+                }
+                process(streamService.readGroup(key, group, consumer, properties.getBatchSize(), properties.getPollTimeout()));
+            } catch (Exception e) {
+                if (running) {
+                    log.error("stream[{}]组[{}]的消费者{}读取消息失败", key, group, consumer, e);
+                    sleepQuietly(properties.getPollTimeout().toMillis());
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止读取, 当前批次处理完后退出, 未确认的消息保留在pending列表中
+     */
+    public void cancel() {
+        running = false;
+    }
+
+    /**
+     * 循环已经退出, 占用的消费者线程已释放
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    public String getConsumer() {
+        return consumer;
+    }
+
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getClaimedCount() {
+        return claimed.sum();
+    }
+
+    private void process(List<MapRecord<String, String, String>> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        try {
+            handler.handle(records);
+        } catch (Exception e) {
+            failed.add(records.size());
+            log.error("stream[{}]组[{}]处理{}条消息失败, 等待重新认领", key, group, records.size(), e);
+            return;
+        }
+        List<String> ids = new ArrayList<>(records.size());
+        for (MapRecord<String, String, String> record : records) {
+            ids.add(record.getId().getValue());
+        }
+        streamService.ack(key, group, ids);
+        processed.add(records.size());
+    }
+
+    private void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
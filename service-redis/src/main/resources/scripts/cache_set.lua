@@ -0,0 +1,14 @@
+-- 写入cache-aside缓存条目并释放重建锁
+-- KEYS[1] 缓存key, KEYS[2] 锁key
+-- ARGV[1] 过期毫秒数, ARGV[2] 加载耗时毫秒数, ARGV[3] 过期时间戳毫秒, ARGV[4] 锁token, ARGV[5] 序列化后的值, 缺省表示null
+redis.call('DEL', KEYS[1])
+if #ARGV >= 5 then
+    redis.call('HMSET', KEYS[1], 'd', ARGV[2], 'e', ARGV[3], 'v', ARGV[5])
+else
+    redis.call('HMSET', KEYS[1], 'd', ARGV[2], 'e', ARGV[3])
+end
+redis.call('PEXPIRE', KEYS[1], ARGV[1])
+if redis.call('GET', KEYS[2]) == ARGV[4] then
+    redis.call('DEL', KEYS[2])
+end
+return 1
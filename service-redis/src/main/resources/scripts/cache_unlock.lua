@@ -0,0 +1,6 @@
+-- 只释放自己持有的重建锁
+-- KEYS[1] 锁key, ARGV[1] 锁token
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
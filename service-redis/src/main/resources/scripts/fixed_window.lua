@@ -0,0 +1,19 @@
+-- 固定窗口限流
+-- KEYS[1] 计数key
+-- ARGV[1] 窗口内允许的许可数, ARGV[2] 窗口长度(毫秒), ARGV[3] 本次申请的许可数
+-- 返回0表示通过, 大于0表示被拒绝且需要等待的毫秒数
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local permits = tonumber(ARGV[3])
+local current = tonumber(redis.call('GET', KEYS[1]) or '0')
+if current + permits > limit then
+    local ttl = redis.call('PTTL', KEYS[1])
+    if ttl < 0 then
+        ttl = window
+    end
+    return ttl
+end
+if redis.call('INCRBY', KEYS[1], permits) == permits then
+    redis.call('PEXPIRE', KEYS[1], window)
+end
+return 0
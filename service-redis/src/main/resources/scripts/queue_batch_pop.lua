@@ -0,0 +1,12 @@
+-- 从队列尾部批量取出消息, 同时放入消费者的处理中列表
+-- KEYS[1] 队列, KEYS[2] 处理中列表
+-- ARGV[1] 最多取出的消息数
+local items = {}
+for i = 1, tonumber(ARGV[1]) do
+    local item = redis.call('RPOPLPUSH', KEYS[1], KEYS[2])
+    if not item then
+        break
+    end
+    items[#items + 1] = item
+end
+return items
@@ -0,0 +1,13 @@
+-- 处理失败的消息: 从处理中列表删除, 失败次数加1, 未达上限时放回队列, 达到上限时移入死信列表
+-- KEYS[1] 处理中列表, KEYS[2] 队列, KEYS[3] 失败次数hash, KEYS[4] 死信列表
+-- ARGV[1] 消息, ARGV[2] 最多处理次数, 小于等于0表示不限制
+-- 返回1表示移入死信列表, 0表示放回队列
+redis.call('LREM', KEYS[1], 1, ARGV[1])
+local max = tonumber(ARGV[2])
+if max > 0 and redis.call('HINCRBY', KEYS[3], ARGV[1], 1) >= max then
+    redis.call('HDEL', KEYS[3], ARGV[1])
+    redis.call('LPUSH', KEYS[4], ARGV[1])
+    return 1
+end
+redis.call('LPUSH', KEYS[2], ARGV[1])
+return 0
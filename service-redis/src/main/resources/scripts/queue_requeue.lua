@@ -0,0 +1,8 @@
+-- 把处理中列表的消息全部放回队列, 用于消费者停止或失联后的重新投递
+-- KEYS[1] 处理中列表, KEYS[2] 队列
+-- 返回放回的消息数
+local count = 0
+while redis.call('RPOPLPUSH', KEYS[1], KEYS[2]) do
+    count = count + 1
+end
+return count
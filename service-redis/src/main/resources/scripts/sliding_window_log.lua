@@ -0,0 +1,24 @@
+-- 滑动窗口日志限流, 每个许可在zset中记录一条, score为服务端时间
+-- KEYS[1] zset key
+-- ARGV[1] 窗口内允许的许可数, ARGV[2] 窗口长度(毫秒), ARGV[3] 本次申请的许可数, ARGV[4] 本次请求的唯一标识
+-- 返回0表示通过, 大于0表示被拒绝且需要等待的毫秒数
+redis.replicate_commands()
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local permits = tonumber(ARGV[3])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - window)
+local count = redis.call('ZCARD', KEYS[1])
+if count + permits > limit then
+    local oldest = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES')
+    if oldest[2] then
+        return math.max(1, tonumber(oldest[2]) + window - now)
+    end
+    return window
+end
+for i = 1, permits do
+    redis.call('ZADD', KEYS[1], now, ARGV[4] .. ':' .. i)
+end
+redis.call('PEXPIRE', KEYS[1], window)
+return 0
@@ -0,0 +1,23 @@
+-- 批量XADD并按MAXLEN ~近似裁剪
+-- KEYS[1] stream
+-- ARGV[1] 最大长度, 小于等于0表示不裁剪
+-- ARGV[2..] 依次为每条消息的字段数n, 然后是n组field/value
+-- 返回每条消息的id
+redis.replicate_commands()
+local maxLen = tonumber(ARGV[1])
+local ids = {}
+local i = 2
+while i <= #ARGV do
+    local n = tonumber(ARGV[i])
+    local args = {}
+    if maxLen > 0 then
+        args = {'MAXLEN', '~', maxLen}
+    end
+    args[#args + 1] = '*'
+    for j = 1, n * 2 do
+        args[#args + 1] = ARGV[i + j]
+    end
+    ids[#ids + 1] = redis.call('XADD', KEYS[1], unpack(args))
+    i = i + 1 + n * 2
+end
+return ids
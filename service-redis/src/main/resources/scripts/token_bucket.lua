@@ -0,0 +1,23 @@
+-- 令牌桶限流, 桶状态保存在hash中: tokens剩余令牌, ts上次补充时间(服务端毫秒)
+-- KEYS[1] hash key
+-- ARGV[1] 桶容量, ARGV[2] 每毫秒补充的令牌数, ARGV[3] 本次申请的许可数
+-- 返回0表示通过, 大于0表示被拒绝且需要等待的毫秒数
+redis.replicate_commands()
+local capacity = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2])
+local permits = tonumber(ARGV[3])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(bucket[1]) or capacity
+local ts = tonumber(bucket[2]) or now
+tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate)
+local wait = 0
+if tokens >= permits then
+    tokens = tokens - permits
+else
+    wait = math.max(1, math.ceil((permits - tokens) / rate))
+end
+redis.call('HMSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now))
+redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate) + 1000)
+return wait
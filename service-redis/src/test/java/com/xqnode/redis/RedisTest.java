@@ -1,17 +1,54 @@
 package com.xqnode.redis;
 
 
+import com.xqnode.redis.cache.CacheAside;
+import com.xqnode.redis.cache.CacheAsideService;
+import com.xqnode.redis.cache.NearCache;
+import com.xqnode.redis.config.NearCacheProperties;
+import com.xqnode.redis.config.RedisStreamProperties;
+import com.xqnode.redis.config.ReliableQueueProperties;
+import com.xqnode.redis.service.RedisBatch;
+import com.xqnode.redis.limiter.RateLimiter;
+import com.xqnode.redis.limiter.RateLimiterFactory;
+import com.xqnode.redis.queue.QueueConsumer;
+import com.xqnode.redis.queue.ReliableQueueService;
+import com.xqnode.redis.serializer.RedisSerializers;
+import com.xqnode.redis.serializer.SerializerFormat;
 import com.xqnode.redis.service.RedisService;
+import com.xqnode.redis.stream.RedisStreamService;
+import com.xqnode.redis.stream.StreamSubscription;
 import org.assertj.core.util.Maps;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @RunWith(SpringRunner.class)
@@ -21,6 +58,30 @@ public class RedisTest {
     @Autowired
     private RedisService redisService;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RateLimiterFactory rateLimiterFactory;
+
+    @Autowired
+    private ReliableQueueService reliableQueueService;
+
+    @Autowired
+    private ReliableQueueProperties reliableQueueProperties;
+
+    @Autowired
+    private RedisStreamService redisStreamService;
+
+    @Autowired
+    private RedisStreamProperties redisStreamProperties;
+
+    @Autowired
+    private CacheAsideService cacheAsideService;
+
+    @Autowired
+    private SlowRepository slowRepository;
+
     @Test
     public void testRedis() {
         redisService.delete("name:wx_public");
@@ -42,4 +103,443 @@ public class RedisTest {
         System.out.println(redisService.hGetAll("hash"));
 
     }
+
+    @Test
+    public void testScan() {
+        redisService.deletePattern("scan:test:*");
+        for (int i = 0; i < 2000; i++) {
+            redisService.set("scan:test:" + i, String.valueOf(i));
+        }
+
+        // SCAN的结果应当与KEYS一致
+        Set<String> keys = redisService.keys("scan:test:*");
+        Set<String> scanKeys = redisService.scanKeys("scan:test:*");
+        Assert.assertEquals(2000, keys.size());
+        Assert.assertEquals(keys, scanKeys);
+
+        // 分批回调的批大小不超过batchSize
+        long total = redisService.scan("scan:test:*", 100, 300, batch -> Assert.assertTrue(batch.size() <= 300));
+        Assert.assertEquals(2000, total);
+
+        Assert.assertEquals(2000, redisService.deletePattern("scan:test:*"));
+        Assert.assertTrue(redisService.scanKeys("scan:test:*").isEmpty());
+    }
+
+    @Test
+    public void testBatch() {
+        RedisBatch batch = redisService.batch();
+        RedisBatch.Response<Boolean> set = batch.set("batch:string", "Java学习指南");
+        RedisBatch.Response<String> get = batch.get("batch:string");
+        batch.delete("batch:hash");
+        batch.hPut("batch:hash", "name", "tom");
+        RedisBatch.Response<Object> hGet = batch.hGet("batch:hash", "name");
+        batch.delete("batch:zset");
+        RedisBatch.Response<Boolean> zAdd = batch.zAdd("batch:zset", "tom", 1.5);
+        RedisBatch.Response<Double> zScore = batch.zScore("batch:zset", "tom");
+        List<Object> results = batch.execute();
+
+        Assert.assertEquals(8, results.size());
+        Assert.assertEquals(Boolean.TRUE, set.get());
+        Assert.assertEquals("Java学习指南", get.get());
+        Assert.assertEquals("tom", hGet.get());
+        Assert.assertEquals(Boolean.TRUE, zAdd.get());
+        Assert.assertEquals(1.5, zScore.get(), 0.0001);
+    }
+
+    @Test
+    public void testBatchVsSingle() {
+        int size = 10000;
+        redisService.deletePattern("bench:*");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            redisService.set("bench:single:" + i, String.valueOf(i));
+        }
+        long single = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        RedisBatch batch = redisService.batch();
+        List<RedisBatch.Response<Boolean>> responses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            responses.add(batch.set("bench:batch:" + i, String.valueOf(i)));
+        }
+        batch.execute();
+        long pipelined = System.nanoTime() - start;
+
+        for (RedisBatch.Response<Boolean> response : responses) {
+            Assert.assertEquals(Boolean.TRUE, response.get());
+        }
+        System.out.println("逐条写入" + size + "条耗时: " + TimeUnit.NANOSECONDS.toMillis(single) + "ms");
+        System.out.println("pipeline写入" + size + "条耗时: " + TimeUnit.NANOSECONDS.toMillis(pipelined) + "ms");
+        redisService.deletePattern("bench:*");
+    }
+
+    @Test
+    public void testWriteRoundTrips() {
+        redisService.deleteAll(Arrays.asList("rt:a", "rt:b", "rt:c"));
+
+        // 带过期时间的写入只发送一条SET
+        long set = calls("set");
+        long expire = calls("expire") + calls("pexpire");
+        long exists = calls("exists");
+        Assert.assertTrue(redisService.set("rt:a", "1", 10L, TimeUnit.SECONDS));
+        Assert.assertEquals(set + 1, calls("set"));
+        Assert.assertEquals(expire, calls("expire") + calls("pexpire"));
+        Assert.assertTrue(redisService.getExpire("rt:a") > 0);
+
+        // expire和delete不再先发送EXISTS
+        Assert.assertTrue(redisService.expire("rt:a", 20, TimeUnit.SECONDS));
+        Assert.assertFalse(redisService.expire("rt:missing", 20, TimeUnit.SECONDS));
+        Assert.assertTrue(redisService.delete("rt:a"));
+        Assert.assertFalse(redisService.delete("rt:a"));
+        Assert.assertEquals(exists, calls("exists"));
+
+        // 批量操作各自只占用一次往返
+        redisService.set("rt:b", "2");
+        redisService.set("rt:c", "3");
+        long unlink = calls("unlink");
+        Assert.assertEquals(2, redisService.expireAll(Arrays.asList("rt:b", "rt:c", "rt:missing"), 10, TimeUnit.SECONDS));
+        Assert.assertEquals(2, redisService.deleteAll(Arrays.asList("rt:b", "rt:c", "rt:missing")));
+        Assert.assertEquals(unlink + 1, calls("unlink"));
+    }
+
+    /**
+     * 从INFO commandstats中读取某个命令的累计调用次数
+     */
+    private long calls(String command) {
+        RedisConnection connection = stringRedisTemplate.getRequiredConnectionFactory().getConnection();
+        try {
+            Properties info = connection.info("commandstats");
+            String stat = info == null ? null : info.getProperty("cmdstat_" + command);
+            if (stat == null) {
+                return 0;
+            }
+            // calls=1,usec=2,usec_per_call=2.00
+            return Long.parseLong(stat.substring("calls=".length(), stat.indexOf(',')));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testCompactSerializer() {
+        Map<String, Object> value = new HashMap<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("Java学习指南");
+        }
+        value.put("name", "tom");
+        value.put("text", text.toString());
+
+        RedisSerializer<Object> json = RedisSerializers.valueSerializer(SerializerFormat.JSON, Object.class, 0);
+        for (SerializerFormat format : SerializerFormat.values()) {
+            RedisSerializer<Object> serializer = RedisSerializers.valueSerializer(format, Object.class, 256);
+            byte[] bytes = serializer.serialize(value);
+            Assert.assertEquals(value, serializer.deserialize(bytes));
+            System.out.println(format + ": " + bytes.length + " bytes, json: " + json.serialize(value).length + " bytes");
+        }
+    }
+
+    @Test
+    public void testRateLimiter() {
+        redisService.deletePattern("rate:test-*");
+        RateLimiter[] limiters = {
+                rateLimiterFactory.fixedWindow("test-fixed", 5, Duration.ofSeconds(10)),
+                rateLimiterFactory.slidingWindow("test-sliding", 5, Duration.ofSeconds(10)),
+                rateLimiterFactory.tokenBucket("test-bucket", 5, 0.1)
+        };
+        for (RateLimiter limiter : limiters) {
+            Assert.assertTrue(limiter.tryAcquire("user1", 3));
+            Assert.assertTrue(limiter.tryAcquire("user1", 2));
+            Assert.assertFalse(limiter.tryAcquire("user1"));
+            // 已被拒绝的key在等待时间内直接在本地拒绝
+            Assert.assertFalse(limiter.tryAcquire("user1"));
+            // 超过上限的申请不访问redis
+            Assert.assertFalse(limiter.tryAcquire("user2", 6));
+            Assert.assertTrue(limiter.tryAcquire("user2"));
+
+            RateLimiter.Stats stats = limiter.stats();
+            System.out.println(limiter.getAlgorithm() + ": " + stats);
+            Assert.assertEquals(3, stats.getAllowedCount());
+            Assert.assertEquals(1, stats.getRejectedCount());
+            Assert.assertEquals(2, stats.getShedCount());
+            Assert.assertEquals(4, stats.getRedisCalls());
+        }
+        redisService.deletePattern("rate:test-*");
+    }
+
+    @Test
+    public void testReliableQueue() throws InterruptedException {
+        redisService.deletePattern("queue:{test}*");
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            messages.add("job-" + i);
+        }
+        reliableQueueService.pushAll("test", messages);
+
+        AtomicInteger handled = new AtomicInteger();
+        QueueConsumer consumer = reliableQueueService.subscribe("test", message -> handled.incrementAndGet());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (handled.get() < 1000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        consumer.stop();
+        Assert.assertEquals(1000, handled.get());
+        Assert.assertEquals(Long.valueOf(0), reliableQueueService.size("test"));
+        Assert.assertTrue(redisService.scanKeys("queue:{test}:processing:*").isEmpty());
+
+        // 失联消费者处理中的消息被重新投递
+        redisService.lLeftPushAll("queue:{test}:processing:dead", "job-a", "job-b");
+        redisService.zAdd("queue:{test}:consumers", "dead", 0);
+        Assert.assertEquals(2, reliableQueueService.reap("test"));
+        Assert.assertEquals(Long.valueOf(2), reliableQueueService.size("test"));
+        redisService.deletePattern("queue:{test}*");
+    }
+
+    @Test
+    public void testQueueHeartbeat() throws InterruptedException {
+        redisService.deletePattern("queue:{slow}*");
+        Duration heartbeatInterval = reliableQueueProperties.getHeartbeatInterval();
+        Duration stallTimeout = reliableQueueProperties.getStallTimeout();
+        int batchSize = reliableQueueProperties.getBatchSize();
+        int workers = reliableQueueProperties.getWorkers();
+        reliableQueueProperties.setHeartbeatInterval(Duration.ofMillis(200));
+        reliableQueueProperties.setStallTimeout(Duration.ofSeconds(1));
+        reliableQueueProperties.setBatchSize(2);
+        reliableQueueProperties.setWorkers(1);
+        AtomicBoolean blocking = new AtomicBoolean(true);
+        QueueConsumer consumer = null;
+        try {
+            for (int i = 0; i < 10; i++) {
+                reliableQueueService.push("slow", "job-" + i);
+            }
+            // 工作线程池满后拉取线程自己处理消息, 被阻塞的时间超过失联超时
+            consumer = reliableQueueService.subscribe("slow", message -> {
+                while (blocking.get()) {
+                    Thread.sleep(20);
+                }
+            });
+            Thread.sleep(2500);
+            Double lastHeartbeat = stringRedisTemplate.opsForZSet().score("queue:{slow}:consumers", consumer.getId());
+            Assert.assertNotNull(lastHeartbeat);
+            Assert.assertTrue(System.currentTimeMillis() - lastHeartbeat.longValue() < 1000);
+            Assert.assertEquals(0, reliableQueueService.reap("slow"));
+        } finally {
+            blocking.set(false);
+            if (consumer != null) {
+                consumer.stop();
+            }
+            reliableQueueProperties.setHeartbeatInterval(heartbeatInterval);
+            reliableQueueProperties.setStallTimeout(stallTimeout);
+            reliableQueueProperties.setBatchSize(batchSize);
+            reliableQueueProperties.setWorkers(workers);
+        }
+        Assert.assertNull(stringRedisTemplate.opsForZSet().score("queue:{slow}:consumers", consumer.getId()));
+        redisService.deletePattern("queue:{slow}*");
+    }
+
+    @Test
+    public void testStream() throws InterruptedException {
+        redisService.delete("stream:test");
+        int size = 10000;
+        List<Map<String, String>> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Map<String, String> fields = new HashMap<>();
+            fields.put("seq", String.valueOf(i));
+            fields.put("text", "hello-" + i);
+            records.add(fields);
+        }
+        long start = System.currentTimeMillis();
+        List<String> ids = redisStreamService.addAll("stream:test", records);
+        long addCost = Math.max(System.currentTimeMillis() - start, 1);
+        Assert.assertEquals(size, ids.size());
+        System.out.println("XADD " + size + "条耗时" + addCost + "ms, " + size * 1000L / addCost + "条/s");
+
+        AtomicInteger handled = new AtomicInteger();
+        start = System.currentTimeMillis();
+        StreamSubscription subscription = redisStreamService.subscribe("stream:test", "test-group", "consumer-1",
+                batch -> handled.addAndGet(batch.size()));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (subscription.getProcessedCount() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        long readCost = Math.max(System.currentTimeMillis() - start, 1);
+        subscription.cancel();
+        Assert.assertEquals(size, handled.get());
+        Assert.assertEquals(size, subscription.getProcessedCount());
+        System.out.println("XREADGROUP + XACK " + size + "条耗时" + readCost + "ms, " + size * 1000L / readCost + "条/s");
+        Assert.assertEquals(0, stringRedisTemplate.opsForStream().pending("stream:test", "test-group").getTotalPendingMessages());
+
+        // 读取后未确认的消息被其他消费者认领
+        redisStreamService.add("stream:test", Maps.newHashMap("seq", "pending"));
+        List<MapRecord<String, String, String>> read = redisStreamService.readGroup("stream:test", "test-group",
+                "consumer-dead", 10, null);
+        Assert.assertEquals(1, read.size());
+        List<MapRecord<String, String, String>> claimed = redisStreamService.claimIdle("stream:test", "test-group",
+                "consumer-2", Duration.ZERO, 10);
+        Assert.assertEquals(1, claimed.size());
+        Assert.assertEquals("pending", claimed.get(0).getValue().get("seq"));
+        Assert.assertEquals(1, redisStreamService.ack("stream:test", "test-group",
+                Arrays.asList(claimed.get(0).getId().getValue())));
+
+        // 一直处理失败的消息投递maxDeliveries次后移入死信stream并确认
+        redisStreamService.add("stream:test", Maps.newHashMap("seq", "poison"));
+        Assert.assertEquals(1, redisStreamService.readGroup("stream:test", "test-group", "consumer-dead", 10, null).size());
+        for (int i = 1; i < redisStreamProperties.getMaxDeliveries(); i++) {
+            Assert.assertEquals(1, redisStreamService.claimIdle("stream:test", "test-group", "consumer-2", Duration.ZERO, 10).size());
+        }
+        Assert.assertTrue(redisStreamService.claimIdle("stream:test", "test-group", "consumer-2", Duration.ZERO, 10).isEmpty());
+        Assert.assertEquals(0, stringRedisTemplate.opsForStream().pending("stream:test", "test-group").getTotalPendingMessages());
+        Assert.assertEquals(Long.valueOf(1), redisStreamService.deadLetterSize("stream:test"));
+        redisService.deleteAll(Arrays.asList("stream:test", "stream:test:dead"));
+    }
+
+    @Test
+    public void testCacheAside() throws InterruptedException {
+        redisService.deletePattern("cache:test:*");
+        AtomicInteger loads = new AtomicInteger();
+        int threads = 50;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        List<Long> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    results.add(cacheAsideService.get("test:hot", Long.class, Duration.ofMinutes(1), () -> {
+                        loads.incrementAndGet();
+                        Thread.sleep(200);
+                        return 42L;
+                    }));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+        // 50个线程并发未命中, 只加载一次
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(threads, results.size());
+        Assert.assertTrue(results.stream().allMatch(v -> v == 42L));
+
+        // null结果也会缓存
+        AtomicInteger nullLoads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertNull(cacheAsideService.get("test:missing", String.class, Duration.ofMinutes(1), () -> {
+                nullLoads.incrementAndGet();
+                return null;
+            }));
+        }
+        Assert.assertEquals(1, nullLoads.get());
+
+        // 注解方式
+        Assert.assertEquals("user-1", slowRepository.find(1L));
+        Assert.assertEquals("user-1", slowRepository.find(1L));
+        Assert.assertEquals("user-2", slowRepository.find(2L));
+        Assert.assertEquals(2, slowRepository.getLoads());
+        redisService.deletePattern("cache:test:*");
+    }
+
+    @Test
+    public void testNearCache() {
+        stringRedisTemplate.delete(Arrays.asList("nc:str", "nc:hash"));
+        NearCache nearCache = new NearCache(stringRedisTemplate, new NearCacheProperties());
+        ReflectionTestUtils.setField(redisService, "nearCache", nearCache);
+        try {
+            redisService.set("nc:str", "1");
+            // 第一次读redis回填, 第二次命中本地
+            Assert.assertEquals("1", redisService.get("nc:str"));
+            Assert.assertEquals("1", redisService.get("nc:str"));
+            NearCache.Stats stats = nearCache.stats();
+            Assert.assertEquals(1, stats.getMissCount());
+            Assert.assertEquals(1, stats.getHitCount());
+
+            // 本节点写入后失效, 下次读到新值
+            long invalidations = stats.getInvalidationCount();
+            redisService.set("nc:str", "2");
+            Assert.assertEquals(invalidations + 1, nearCache.stats().getInvalidationCount());
+            Assert.assertEquals("2", redisService.get("nc:str"));
+
+            redisService.hPut("nc:hash", "f", "1");
+            Assert.assertEquals(Maps.newHashMap("f", "1"), redisService.hGetAll("nc:hash"));
+            Assert.assertEquals("1", redisService.hGet("nc:hash", "f"));
+            Assert.assertEquals(2, nearCache.stats().getHitCount());
+            redisService.hPut("nc:hash", "f", "2");
+            Assert.assertEquals("2", redisService.hGet("nc:hash", "f"));
+            Assert.assertEquals(Maps.newHashMap("f", "2"), redisService.hGetAll("nc:hash"));
+        } finally {
+            ReflectionTestUtils.setField(redisService, "nearCache", null);
+            stringRedisTemplate.delete(Arrays.asList("nc:str", "nc:hash"));
+        }
+    }
+
+    @Test
+    public void testNearCacheInvalidation() throws Exception {
+        stringRedisTemplate.delete("nc:remote");
+        NearCacheProperties properties = new NearCacheProperties();
+        properties.setChannel("near-cache:test");
+        NearCache local = new NearCache(stringRedisTemplate, properties);
+        NearCache remote = new NearCache(stringRedisTemplate, properties);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(stringRedisTemplate.getRequiredConnectionFactory());
+        container.addMessageListener((message, pattern) -> {
+            remote.onMessage(message, pattern);
+            invalidated.countDown();
+        }, new ChannelTopic(properties.getChannel()));
+        container.afterPropertiesSet();
+        container.start();
+        try {
+            // 另一个节点缓存了旧值, 本节点写入后通过pub/sub失效
+            stringRedisTemplate.opsForValue().set("nc:remote", "1");
+            remote.putString("nc:remote", "1", -1L, remote.generation("nc:remote"));
+            Assert.assertEquals("1", remote.getString("nc:remote"));
+            long generation = remote.generation("nc:remote");
+            stringRedisTemplate.opsForValue().set("nc:remote", "2");
+            local.invalidate("nc:remote");
+            Assert.assertTrue(invalidated.await(5, TimeUnit.SECONDS));
+            Assert.assertNull(remote.getString("nc:remote"));
+            Assert.assertEquals(1, remote.stats().getInvalidationCount());
+
+            // 失效之前读到的旧值在失效之后回填, 被丢弃
+            remote.putString("nc:remote", "1", -1L, generation);
+            Assert.assertNull(remote.getString("nc:remote"));
+            remote.putString("nc:remote", "2", -1L, remote.generation("nc:remote"));
+            Assert.assertEquals("2", remote.getString("nc:remote"));
+        } finally {
+            container.stop();
+            container.destroy();
+            stringRedisTemplate.delete("nc:remote");
+        }
+    }
+
+    public static class SlowRepository {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @CacheAside(name = "test:user", key = "#id", ttl = 1, unit = TimeUnit.MINUTES)
+        public String find(Long id) throws InterruptedException {
+            loads.incrementAndGet();
+            Thread.sleep(50);
+            return "user-" + id;
+        }
+
+        public int getLoads() {
+            return loads.get();
+        }
+    }
+
+    @TestConfiguration
+    static class CacheAsideTestConfig {
+
+        @Bean
+        public SlowRepository slowRepository() {
+            return new SlowRepository();
+        }
+    }
 }
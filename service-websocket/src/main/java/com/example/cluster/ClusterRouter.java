@@ -0,0 +1,214 @@
+package com.example.cluster;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.example.common.WebSocketClusterProperties;
+import com.example.service.WebSocketServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 集群路由
+ * <p>
+ * redis中im:presence:{userId}记录用户连接所在的节点, 带过期时间, 由各节点定时续期, 节点宕机后自动过期.
+ * 收件人不在本节点时, 把消息发布到收件人所在节点的频道im:node:{nodeId}, 由该节点投递给本地连接.
+ * 房间成员关系只保存在成员连接的节点上, 房间消息发布到公共频道im:room, 每个节点扇出给自己的成员.
+ * pub/sub不保证送达, 目标节点宕机但在线状态还没过期时没有订阅者收到, 转发失败, 由发送方存入离线信箱.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "websocket.cluster", name = "enabled", havingValue = "true")
+public class ClusterRouter implements MessageListener {
+
+    private static final String PRESENCE_PREFIX = "im:presence:";
+    private static final String CHANNEL_PREFIX = "im:node:";
+    /**
+     * 房间消息发布到所有节点共用的频道, 各节点扇出给本地成员
+     */
+    public static final String ROOM_CHANNEL = "im:room";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private WebSocketClusterProperties properties;
+
+    private final RedisScript<Long> refreshScript = script("scripts/presence_refresh.lua");
+    private final RedisScript<Long> removeScript = script("scripts/presence_remove.lua");
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cluster-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private String nodeId;
+
+    @PostConstruct
+    public void init() {
+        nodeId = StringUtils.hasText(properties.getNodeId()) ? properties.getNodeId() : UUID.randomUUID().toString();
+        long interval = properties.getHeartbeatInterval().toMillis();
+        heartbeat.scheduleWithFixedDelay(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("集群路由已启用, nodeId={}", nodeId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 本节点接收转发消息的频道
+     */
+    public String channel() {
+        return CHANNEL_PREFIX + nodeId;
+    }
+
+    /**
+     * 用户连接到本节点
+     */
+    public void register(String userId) {
+        redisTemplate.opsForValue().set(PRESENCE_PREFIX + userId, nodeId,
+                properties.getPresenceTtl().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 用户从本节点断开, 已经在其他节点重连的不受影响
+     */
+    public void unregister(String userId) {
+        redisTemplate.execute(removeScript, Collections.singletonList(PRESENCE_PREFIX + userId), nodeId);
+    }
+
+    /**
+     * 用户所在的节点
+     *
+     * @param userId
+     * @return 不在线时返回null
+     */
+    public String locate(String userId) {
+        return redisTemplate.opsForValue().get(PRESENCE_PREFIX + userId);
+    }
+
+    /**
+     * 把消息转发到收件人所在的节点
+     *
+     * @param toUserId
+     * @param message
+     * @return 收件人在其他节点在线且该节点收到了消息时返回true
+     */
+    public boolean forward(String toUserId, String message) {
+        String node = locate(toUserId);
+        if (node == null || node.equals(nodeId)) {
+            return false;
+        }
+        String envelope = JSONUtil.createObj().set("toUserId", toUserId).set("message", message).toString();
+        // convertAndSend不返回接收数, 直接PUBLISH; 为0说明目标节点已经不在订阅, 在线状态还没过期
+        byte[] channel = (CHANNEL_PREFIX + node).getBytes(StandardCharsets.UTF_8);
+        byte[] body = envelope.getBytes(StandardCharsets.UTF_8);
+        Long receivers = redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, body));
+        if (receivers == null || receivers == 0) {
+            log.info("节点{}没有订阅转发频道, 用户id={}的消息转发失败", node, toUserId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 把房间消息发布给其他节点
+     *
+     * @param roomId
+     * @param frame      已经序列化好的消息
+     * @param fromUserId 发送者, 不再投递给他
+     */
+    public void broadcast(String roomId, String frame, String fromUserId) {
+        String envelope = JSONUtil.createObj().set("nodeId", nodeId).set("roomId", roomId)
+                .set("fromUserId", fromUserId).set("message", frame).toString();
+        redisTemplate.convertAndSend(ROOM_CHANNEL, envelope);
+    }
+
+    /**
+     * 收到房间消息, 忽略本节点自己发布的
+     */
+    public void onRoomMessage(Message message, byte[] pattern) {
+        try {
+            JSONObject envelope = JSONUtil.parseObj(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (nodeId.equals(envelope.getStr("nodeId"))) {
+                return;
+            }
+            WebSocketServer.broadcastLocal(envelope.getStr("roomId"), envelope.getStr("message"), envelope.getStr("fromUserId"));
+        } catch (Exception e) {
+            log.error("处理房间消息失败", e);
+        }
+    }
+
+    /**
+     * 收到其他节点转发的消息, 投递失败时存入离线信箱
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            JSONObject envelope = JSONUtil.parseObj(new String(message.getBody(), StandardCharsets.UTF_8));
+            String toUserId = envelope.getStr("toUserId");
+            String body = envelope.getStr("message");
+            if (!WebSocketServer.deliverLocal(toUserId, body)) {
+                // 用户已经离开本节点或通道已满, 和本节点找不到收件人时一样存入离线信箱
+                log.info("转发的消息投递失败，用户id={}已不在本节点，存入离线信箱", toUserId);
+                WebSocketServer.storeOffline(toUserId, body);
+            }
+        } catch (Exception e) {
+            log.error("处理转发消息失败", e);
+        }
+    }
+
+    /**
+     * 续期本节点所有用户的在线状态
+     */
+    public void heartbeat() {
+        try {
+            List<String> keys = WebSocketServer.localUserIds().stream()
+                    .map(userId -> PRESENCE_PREFIX + userId).collect(Collectors.toList());
+            String ttl = String.valueOf(properties.getPresenceTtl().toMillis());
+            for (int from = 0; from < keys.size(); from += properties.getHeartbeatBatchSize()) {
+                List<String> chunk = new ArrayList<>(keys.subList(from, Math.min(from + properties.getHeartbeatBatchSize(), keys.size())));
+                redisTemplate.execute(refreshScript, chunk, nodeId, ttl);
+            }
+        } catch (Exception e) {
+            log.error("续期在线状态失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        for (String userId : WebSocketServer.localUserIds()) {
+            unregister(userId);
+        }
+    }
+
+    private static RedisScript<Long> script(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(Long.class);
+        return script;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 二进制帧编解码, 客户端连接时带参数format=binary启用
+ * <p>
+ * 第一个字节为帧类型:
+ * <ul>
+ * <li>{@link #TYPE_JSON}: 之后是UTF-8编码的json, 用于join/leave/ack等控制消息和房间、离线消息</li>
+ * <li>{@link #TYPE_CHAT}: 一对一消息, 之后依次是2字节长度+用户id, 4字节长度+text, 均为UTF-8;
+ * 客户端发送时用户id为toUserId, 服务端推送时为fromUserId</li>
+ * </ul>
+ * 编码使用池化的ByteBuffer, 发送完成后调用{@link #release(ByteBuffer)}归还.
+ */
+public final class BinaryMessageCodec {
+
+    public static final byte TYPE_JSON = 0;
+    public static final byte TYPE_CHAT = 1;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final BlockingQueue<ByteBuffer> POOL = new ArrayBlockingQueue<>(1024);
+    private static final ThreadLocal<CharsetEncoder> ENCODERS = ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+    private BinaryMessageCodec() {
+    }
+
+    /**
+     * 解码客户端发来的二进制帧
+     *
+     * @param frame
+     * @param target 解码结果, 会先清空
+     * @throws IllegalArgumentException 帧格式错误
+     */
+    public static void decode(ByteBuffer frame, ChatMessage target) {
+        if (!frame.hasRemaining()) {
+            throw new IllegalArgumentException("空的二进制帧");
+        }
+        byte type = frame.get();
+        if (type == TYPE_JSON) {
+            JsonMessageCodec.decode(readString(frame, frame.remaining()), target);
+            return;
+        }
+        if (type != TYPE_CHAT || frame.remaining() < 2) {
+            throw new IllegalArgumentException("未知的二进制帧类型: " + type);
+        }
+        target.reset();
+        target.setToUserId(readString(frame, frame.getShort() & 0xFFFF));
+        if (frame.remaining() < 4) {
+            throw new IllegalArgumentException("二进制帧缺少text");
+        }
+        target.setText(readString(frame, frame.getInt()));
+    }
+
+    /**
+     * 编码一对一消息
+     */
+    public static ByteBuffer encodeChat(String fromUserId, String text) {
+        ByteBuffer buffer = acquire();
+        buffer.put(TYPE_CHAT);
+        if (putPrefixed(buffer, fromUserId, 2) && putPrefixed(buffer, text, 4)) {
+            buffer.flip();
+            return buffer;
+        }
+        // 超过池化缓冲区大小的消息单独分配
+        release(buffer);
+        byte[] from = fromUserId.getBytes(StandardCharsets.UTF_8);
+        byte[] body = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer large = ByteBuffer.allocate(1 + 2 + from.length + 4 + body.length);
+        large.put(TYPE_CHAT).putShort((short) from.length).put(from).putInt(body.length).put(body);
+        large.flip();
+        return large;
+    }
+
+    /**
+     * 把已经编码好的json消息包装成二进制帧
+     */
+    public static ByteBuffer wrapJson(String json) {
+        ByteBuffer buffer = acquire();
+        buffer.put(TYPE_JSON);
+        if (encode(buffer, json)) {
+            buffer.flip();
+            return buffer;
+        }
+        release(buffer);
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer large = ByteBuffer.allocate(1 + bytes.length);
+        large.put(TYPE_JSON).put(bytes);
+        large.flip();
+        return large;
+    }
+
+    /**
+     * 归还缓冲区, 单独分配的大缓冲区直接丢弃
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer.capacity() == BUFFER_SIZE && !buffer.isReadOnly()) {
+            buffer.clear();
+            POOL.offer(buffer);
+        }
+    }
+
+    private static ByteBuffer acquire() {
+        ByteBuffer buffer = POOL.poll();
+        return buffer == null ? ByteBuffer.allocate(BUFFER_SIZE) : buffer;
+    }
+
+    /**
+     * 写入长度前缀和UTF-8内容, 先占位再回填长度
+     */
+    private static boolean putPrefixed(ByteBuffer buffer, String value, int prefixBytes) {
+        if (buffer.remaining() < prefixBytes) {
+            return false;
+        }
+        int lengthPosition = buffer.position();
+        buffer.position(lengthPosition + prefixBytes);
+        if (value != null && !encode(buffer, value)) {
+            return false;
+        }
+        int length = buffer.position() - lengthPosition - prefixBytes;
+        if (prefixBytes == 2) {
+            if (length > 0xFFFF) {
+                return false;
+            }
+            buffer.putShort(lengthPosition, (short) length);
+        } else {
+            buffer.putInt(lengthPosition, length);
+        }
+        return true;
+    }
+
+    private static boolean encode(ByteBuffer buffer, String value) {
+        CharsetEncoder encoder = ENCODERS.get().reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(value), buffer, true);
+        if (result.isOverflow()) {
+            return false;
+        }
+        return !encoder.flush(buffer).isOverflow();
+    }
+
+    private static String readString(ByteBuffer frame, int length) {
+        if (length < 0 || length > frame.remaining()) {
+            throw new IllegalArgumentException("二进制帧长度错误: " + length);
+        }
+        String value;
+        if (frame.hasArray()) {
+            value = new String(frame.array(), frame.arrayOffset() + frame.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            frame.duplicate().get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        frame.position(frame.position() + length);
+        return value;
+    }
+}
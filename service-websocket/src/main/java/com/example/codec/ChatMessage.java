@@ -0,0 +1,31 @@
+package com.example.codec;
+
+import lombok.Data;
+
+/**
+ * 客户端发来的消息, 解码时只取下面几个字段, 其他字段跳过
+ * <p>
+ * 同一个线程里重复使用, 每次解码前会清空
+ */
+@Data
+public class ChatMessage {
+    /**
+     * 消息类型: join/leave/ack, 普通消息为null
+     */
+    private String type;
+    private String toUserId;
+    private String roomId;
+    private String text;
+    /**
+     * ack确认的离线消息序号
+     */
+    private long seq;
+
+    public void reset() {
+        type = null;
+        toUserId = null;
+        roomId = null;
+        text = null;
+        seq = 0;
+    }
+}
@@ -0,0 +1,374 @@
+package com.example.codec;
+
+/**
+ * 文本消息的json编解码
+ * <p>
+ * 解码是单遍的流式解析, 不构建JSONObject, 只为关心的字段创建字符串, 其他字段(包括嵌套的对象和数组)直接跳过.
+ * 编码写入线程内复用的StringBuilder, 字符串按json规范转义.
+ */
+public final class JsonMessageCodec {
+
+    private static final int FIELD_UNKNOWN = 0;
+    private static final int FIELD_TYPE = 1;
+    private static final int FIELD_TO_USER_ID = 2;
+    private static final int FIELD_ROOM_ID = 3;
+    private static final int FIELD_TEXT = 4;
+    private static final int FIELD_SEQ = 5;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFERS = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private JsonMessageCodec() {
+    }
+
+    /**
+     * 解码客户端消息
+     *
+     * @param json   客户端发来的json对象
+     * @param target 解码结果, 会先清空
+     * @throws IllegalArgumentException json格式错误
+     */
+    public static void decode(CharSequence json, ChatMessage target) {
+        target.reset();
+        int length = json.length();
+        int i = expect(json, skipWhitespace(json, 0), '{');
+        i = skipWhitespace(json, i);
+        if (i < length && json.charAt(i) == '}') {
+            return;
+        }
+        while (true) {
+            if (i >= length || json.charAt(i) != '"') {
+                throw error(json, i);
+            }
+            int keyStart = i + 1;
+            int keyEnd = skipString(json, i) - 1;
+            int field = field(json, keyStart, keyEnd);
+            i = skipWhitespace(json, expect(json, skipWhitespace(json, keyEnd + 1), ':'));
+            if (i >= length) {
+                throw error(json, i);
+            }
+            switch (field) {
+                case FIELD_TYPE:
+                    target.setType(readString(json, i));
+                    break;
+                case FIELD_TO_USER_ID:
+                    target.setToUserId(readString(json, i));
+                    break;
+                case FIELD_ROOM_ID:
+                    target.setRoomId(readString(json, i));
+                    break;
+                case FIELD_TEXT:
+                    target.setText(readString(json, i));
+                    break;
+                case FIELD_SEQ:
+                    target.setSeq(readLong(json, i));
+                    break;
+                default:
+                    break;
+            }
+            i = skipWhitespace(json, skipValue(json, i));
+            if (i >= length) {
+                throw error(json, i);
+            }
+            char c = json.charAt(i);
+            if (c == '}') {
+                return;
+            }
+            if (c != ',') {
+                throw error(json, i);
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+    }
+
+    /**
+     * 一对一消息: {"fromUserId":"..","text":".."}
+     */
+    public static String encodeChat(String fromUserId, String text) {
+        StringBuilder sb = buffer();
+        sb.append("{\"fromUserId\":");
+        appendString(sb, fromUserId);
+        sb.append(",\"text\":");
+        appendString(sb, text);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * 房间消息: {"fromUserId":"..","roomId":"..","text":".."}
+     */
+    public static String encodeRoom(String fromUserId, String roomId, String text) {
+        StringBuilder sb = buffer();
+        sb.append("{\"fromUserId\":");
+        appendString(sb, fromUserId);
+        sb.append(",\"roomId\":");
+        appendString(sb, roomId);
+        sb.append(",\"text\":");
+        appendString(sb, text);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * 写入转义后的json字符串, null写为null
+     */
+    public static void appendString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            sb.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    break;
+            }
+        }
+        sb.append(value, start, length).append('"');
+    }
+
+    private static StringBuilder buffer() {
+        StringBuilder sb = BUFFERS.get();
+        if (sb.capacity() > MAX_POOLED_CAPACITY) {
+            // 偶尔的大消息不要一直占着内存
+            sb = new StringBuilder(256);
+            BUFFERS.set(sb);
+        }
+        sb.setLength(0);
+        return sb;
+    }
+
+    private static int field(CharSequence json, int start, int end) {
+        switch (end - start) {
+            case 3:
+                return regionEquals(json, start, "seq") ? FIELD_SEQ : FIELD_UNKNOWN;
+            case 4:
+                if (regionEquals(json, start, "type")) {
+                    return FIELD_TYPE;
+                }
+                return regionEquals(json, start, "text") ? FIELD_TEXT : FIELD_UNKNOWN;
+            case 6:
+                return regionEquals(json, start, "roomId") ? FIELD_ROOM_ID : FIELD_UNKNOWN;
+            case 8:
+                return regionEquals(json, start, "toUserId") ? FIELD_TO_USER_ID : FIELD_UNKNOWN;
+            default:
+                return FIELD_UNKNOWN;
+        }
+    }
+
+    private static boolean regionEquals(CharSequence json, int start, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (json.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取字符串值; 数字和布尔值按原样转成字符串, null返回null
+     */
+    private static String readString(CharSequence json, int i) {
+        char c = json.charAt(i);
+        if (c != '"') {
+            int end = skipLiteral(json, i);
+            String literal = json.subSequence(i, end).toString();
+            return "null".equals(literal) ? null : literal;
+        }
+        int start = i + 1;
+        int j = start;
+        while (j < json.length()) {
+            c = json.charAt(j);
+            if (c == '"') {
+                return json.subSequence(start, j).toString();
+            }
+            if (c == '\\') {
+                return readEscapedString(json, start, j);
+            }
+            j++;
+        }
+        throw error(json, j);
+    }
+
+    private static String readEscapedString(CharSequence json, int start, int firstEscape) {
+        StringBuilder sb = new StringBuilder(firstEscape - start + 16);
+        sb.append(json, start, firstEscape);
+        int i = firstEscape;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            if (i + 1 >= json.length()) {
+                break;
+            }
+            char escaped = json.charAt(i + 1);
+            switch (escaped) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (i + 5 >= json.length()) {
+                        throw error(json, i);
+                    }
+                    sb.append((char) Integer.parseInt(json.subSequence(i + 2, i + 6).toString(), 16));
+                    i += 4;
+                    break;
+                default:
+                    sb.append(escaped);
+                    break;
+            }
+            i += 2;
+        }
+        throw error(json, i);
+    }
+
+    private static long readLong(CharSequence json, int i) {
+        boolean quoted = json.charAt(i) == '"';
+        int j = quoted ? i + 1 : i;
+        boolean negative = j < json.length() && json.charAt(j) == '-';
+        if (negative) {
+            j++;
+        }
+        long value = 0;
+        while (j < json.length()) {
+            char c = json.charAt(j);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            j++;
+        }
+        return negative ? -value : value;
+    }
+
+    private static int skipValue(CharSequence json, int i) {
+        char c = json.charAt(i);
+        if (c == '"') {
+            return skipString(json, i);
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (i < json.length()) {
+                c = json.charAt(i);
+                if (c == '"') {
+                    i = skipString(json, i);
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return i + 1;
+                    }
+                }
+                i++;
+            }
+            throw error(json, i);
+        }
+        return skipLiteral(json, i);
+    }
+
+    /**
+     * @param i 开始的引号
+     * @return 结束引号的下一个位置
+     */
+    private static int skipString(CharSequence json, int i) {
+        int j = i + 1;
+        while (j < json.length()) {
+            char c = json.charAt(j);
+            if (c == '\\') {
+                j += 2;
+                continue;
+            }
+            if (c == '"') {
+                return j + 1;
+            }
+            j++;
+        }
+        throw error(json, j);
+    }
+
+    private static int skipLiteral(CharSequence json, int i) {
+        int j = i;
+        while (j < json.length()) {
+            char c = json.charAt(j);
+            if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                break;
+            }
+            j++;
+        }
+        if (j == i) {
+            throw error(json, i);
+        }
+        return j;
+    }
+
+    private static int skipWhitespace(CharSequence json, int i) {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int expect(CharSequence json, int i, char expected) {
+        if (i >= json.length() || json.charAt(i) != expected) {
+            throw error(json, i);
+        }
+        return i + 1;
+    }
+
+    private static IllegalArgumentException error(CharSequence json, int position) {
+        return new IllegalArgumentException("消息不是合法的json对象, 位置" + position + ": " + json);
+    }
+}
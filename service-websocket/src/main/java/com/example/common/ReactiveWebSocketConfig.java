@@ -0,0 +1,52 @@
+package com.example.common;
+
+import com.example.reactive.ReactiveWebSocketHandler;
+import com.example.service.WebSocketServer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService;
+import org.springframework.web.reactive.socket.server.support.WebSocketHandlerAdapter;
+import org.springframework.web.reactive.socket.server.upgrade.ReactorNettyRequestUpgradeStrategy;
+
+import java.util.Collections;
+
+/**
+ * reactive模式的WebSocket支持, spring.main.web-application-type=reactive时生效
+ * <p>
+ * 运行在Reactor Netty上, /imserver/{userId}的协议和路由与servlet模式相同
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebSocketConfig {
+
+    /**
+     * 同时引入了starter-web, 不声明时reactive模式的自动配置优先选择Tomcat
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public ReactiveWebSocketHandler reactiveWebSocketHandler(WebSocketServer webSocketServer) {
+        return new ReactiveWebSocketHandler(webSocketServer);
+    }
+
+    @Bean
+    public HandlerMapping webSocketHandlerMapping(ReactiveWebSocketHandler reactiveWebSocketHandler) {
+        // 优先于静态资源和controller的映射
+        return new SimpleUrlHandlerMapping(Collections.singletonMap("/imserver/*", reactiveWebSocketHandler), -1);
+    }
+
+    /**
+     * 握手策略同样按classpath探测会选中Tomcat, 这里固定为Reactor Netty
+     */
+    @Bean
+    public WebSocketHandlerAdapter webSocketHandlerAdapter() {
+        return new WebSocketHandlerAdapter(new HandshakeWebSocketService(new ReactorNettyRequestUpgradeStrategy()));
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.common;
+
+import com.example.cluster.ClusterRouter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 集群路由: 订阅本节点的转发频道和房间频道
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "websocket.cluster", name = "enabled", havingValue = "true")
+public class WebSocketClusterConfig {
+
+    @Bean
+    public RedisMessageListenerContainer clusterListenerContainer(RedisConnectionFactory factory, ClusterRouter clusterRouter) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        container.addMessageListener(clusterRouter, new ChannelTopic(clusterRouter.channel()));
+        container.addMessageListener(clusterRouter::onRoomMessage, new ChannelTopic(ClusterRouter.ROOM_CHANNEL));
+        return container;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.common;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 多实例部署时的集群路由配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "websocket.cluster")
+public class WebSocketClusterProperties {
+    /**
+     * 是否启用集群路由, 启用后需要redis
+     */
+    private boolean enabled = false;
+    /**
+     * 本节点id, 为空时启动时随机生成
+     */
+    private String nodeId;
+    /**
+     * 在线状态的过期时间, 节点宕机后其用户最多在这段时间后变为离线
+     */
+    private Duration presenceTtl = Duration.ofSeconds(30);
+    /**
+     * 续期在线状态的间隔, 应明显小于presenceTtl
+     */
+    private Duration heartbeatInterval = Duration.ofSeconds(10);
+    /**
+     * 每次续期脚本处理的用户数
+     */
+    private int heartbeatBatchSize = 500;
+}
@@ -0,0 +1,25 @@
+package com.example.common;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * permessage-deflate压缩配置, servlet模式生效
+ * <p>
+ * 协商成功后容器压缩该连接的每一帧, 小帧压缩效果差, 建议同时开启websocket.outbound.batch-window把小消息合并成大帧.
+ * reactive模式由Reactor Netty决定, server.compression.enabled=true时协商压缩.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "websocket.compression")
+public class WebSocketCompressionProperties {
+    /**
+     * 客户端请求时是否同意permessage-deflate, 关闭后所有连接都不压缩
+     */
+    private boolean enabled = true;
+    /**
+     * 是否要求服务端每条消息独立压缩(server_no_context_takeover), 不在消息之间保留压缩字典, 压缩率下降但每条消息可以独立解压
+     */
+    private boolean serverNoContextTakeover = false;
+}
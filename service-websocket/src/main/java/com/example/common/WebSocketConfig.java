@@ -1,5 +1,6 @@
 package com.example.common;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.server.standard.ServerEndpointExporter;
@@ -8,8 +9,11 @@ import org.springframework.web.socket.server.standard.ServerEndpointExporter;
  * 开启WebSocket支持
  * 青戈
  * 公众号：Java学习指南
+ * <p>
+ * 运行在servlet容器上时生效, reactive模式见{@link ReactiveWebSocketConfig}
  */
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class WebSocketConfig {
 
     @Bean
@@ -0,0 +1,28 @@
+package com.example.common;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 投递通道配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "websocket.delivery")
+public class WebSocketDeliveryProperties {
+    /**
+     * 通道数, 每个通道一个线程, 收件人按用户id哈希到固定的通道
+     */
+    private int lanes = Runtime.getRuntime().availableProcessors();
+    /**
+     * 每个通道等待执行的投递任务数上限
+     */
+    private int queueCapacity = 4096;
+    /**
+     * 通道队列满时发送方最多等待的时间, 超时后丢弃该投递
+     */
+    private Duration offerTimeout = Duration.ofMillis(100);
+}
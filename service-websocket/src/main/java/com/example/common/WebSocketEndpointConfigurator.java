@@ -0,0 +1,70 @@
+package com.example.common;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.websocket.Extension;
+import javax.websocket.server.ServerEndpointConfig;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * /imserver握手时的扩展协商, 按{@link WebSocketCompressionProperties}决定是否同意客户端请求的permessage-deflate
+ * <p>
+ * 容器按类名创建该对象, 不经过spring注入, 配置放在静态字段里
+ */
+@Component
+public class WebSocketEndpointConfigurator extends ServerEndpointConfig.Configurator {
+
+    public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+
+    private static WebSocketCompressionProperties compressionProperties = new WebSocketCompressionProperties();
+
+    @Autowired
+    public void setCompressionProperties(WebSocketCompressionProperties compressionProperties) {
+        WebSocketEndpointConfigurator.compressionProperties = compressionProperties;
+    }
+
+    @Override
+    public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+        List<Extension> negotiated = new ArrayList<>();
+        for (Extension extension : super.getNegotiatedExtensions(installed, requested)) {
+            if (!PERMESSAGE_DEFLATE.equals(extension.getName())) {
+                negotiated.add(extension);
+            } else if (compressionProperties.isEnabled()) {
+                negotiated.add(compressionProperties.isServerNoContextTakeover()
+                        ? withParameter(extension, SERVER_NO_CONTEXT_TAKEOVER) : extension);
+            }
+        }
+        return negotiated;
+    }
+
+    private static Extension withParameter(Extension extension, String name) {
+        List<Extension.Parameter> parameters = new ArrayList<>(extension.getParameters());
+        if (parameters.stream().noneMatch(parameter -> name.equals(parameter.getName()))) {
+            parameters.add(new Extension.Parameter() {
+                @Override
+                public String getName() {
+                    return name;
+                }
+
+                @Override
+                public String getValue() {
+                    return null;
+                }
+            });
+        }
+        return new Extension() {
+            @Override
+            public String getName() {
+                return extension.getName();
+            }
+
+            @Override
+            public List<Parameter> getParameters() {
+                return parameters;
+            }
+        };
+    }
+}
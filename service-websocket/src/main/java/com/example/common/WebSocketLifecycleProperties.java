@@ -0,0 +1,40 @@
+package com.example.common;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 连接心跳和空闲超时配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "websocket.lifecycle")
+public class WebSocketLifecycleProperties {
+    /**
+     * 是否开启心跳检测
+     */
+    private boolean enabled = true;
+    /**
+     * 连接在这段时间内没有收到任何消息时发送ping
+     */
+    private Duration pingInterval = Duration.ofSeconds(30);
+    /**
+     * 超过这段时间没有收到任何消息(包括pong)的连接会被关闭, 应大于pingInterval
+     */
+    private Duration idleTimeout = Duration.ofSeconds(90);
+    /**
+     * 时间轮每格的时长, 即超时检测的精度
+     */
+    private Duration tickDuration = Duration.ofSeconds(1);
+    /**
+     * 时间轮格子数
+     */
+    private int wheelSize = 512;
+    /**
+     * 发送ping和关闭连接的线程数, 不占用时间轮线程
+     */
+    private int workers = 2;
+}
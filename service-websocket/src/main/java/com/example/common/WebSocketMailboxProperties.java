@@ -0,0 +1,36 @@
+package com.example.common;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 离线信箱配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "websocket.mailbox")
+public class WebSocketMailboxProperties {
+    /**
+     * 存储方式: local为本节点内存, redis为redis有序集合(多实例部署时使用)
+     */
+    private String store = "local";
+    /**
+     * 每个用户最多保存的离线消息数, 超出后丢弃最早的
+     */
+    private int capacity = 1000;
+    /**
+     * 上线后每批推送的离线消息数, 客户端确认后再推送下一批
+     */
+    private int batchSize = 100;
+    /**
+     * redis中离线消息的保存时间
+     */
+    private Duration retention = Duration.ofDays(7);
+    /**
+     * 读写信箱的线程数, 不占用容器线程; 同一用户的操作固定在其中一个线程中
+     */
+    private int workers = 2;
+}
@@ -0,0 +1,42 @@
+package com.example.common;
+
+import com.example.service.OverflowPolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 服务端推送消息的发送队列配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "websocket.outbound")
+public class WebSocketOutboundProperties {
+    /**
+     * 每个连接待发送消息的队列长度
+     */
+    private int queueCapacity = 1024;
+    /**
+     * 连续的小消息合并成一帧发送, 用换行分隔, 合并后的帧不超过该字符数; 小于等于0表示不合并
+     */
+    private int coalesceMaxSize = 4096;
+    /**
+     * 队列满时的处理方式
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    /**
+     * overflowPolicy为BLOCK时点对点消息的发送方最长等待时间, 超时后丢弃新消息
+     */
+    private Duration blockTimeout = Duration.ofMillis(100);
+    /**
+     * 批量发送窗口: 没有帧在发送时, 新消息最多等待这段时间, 和窗口内到达的消息合并成一帧;
+     * 0表示不等待, 只合并发送期间排队的消息. 开启后减少帧数和系统调用, 配合permessage-deflate压缩率更高, 代价是增加延迟
+     */
+    private Duration batchWindow = Duration.ZERO;
+    /**
+     * 窗口内排队的消息达到该条数时不再等待, 立即发送
+     */
+    private int batchMaxMessages = 64;
+}
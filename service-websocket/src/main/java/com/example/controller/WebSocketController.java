@@ -0,0 +1,44 @@
+package com.example.controller;
+
+import com.example.common.Result;
+import com.example.service.ConnectionStats;
+import com.example.service.DeliveryLanes;
+import com.example.service.OutboundQueue;
+import com.example.service.WebSocketServer;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * websocket连接的运行指标
+ */
+@RestController
+@RequestMapping("/websocket")
+public class WebSocketController {
+
+    /**
+     * 每个连接的发送队列深度和发送延迟
+     */
+    @GetMapping("/outbound")
+    public Result<List<OutboundQueue.Stats>> outbound() {
+        return Result.success(WebSocketServer.outboundStats());
+    }
+
+    /**
+     * 每个投递通道的队列深度和累计执行、丢弃的任务数
+     */
+    @GetMapping("/lanes")
+    public Result<List<DeliveryLanes.Stats>> lanes() {
+        return Result.success(WebSocketServer.deliveryStats());
+    }
+
+    /**
+     * 在线数, 连接建立、关闭、替换、空闲驱逐的累计次数和心跳情况
+     */
+    @GetMapping("/connections")
+    public Result<ConnectionStats> connections() {
+        return Result.success(WebSocketServer.connectionStats());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.mailbox;
+
+import com.example.common.WebSocketMailboxProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 保存在本节点内存中的离线信箱, 重启后丢失, 适合单实例部署
+ */
+@Component
+@ConditionalOnProperty(prefix = "websocket.mailbox", name = "store", havingValue = "local", matchIfMissing = true)
+public class LocalMailboxStore implements MailboxStore {
+
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final WebSocketMailboxProperties properties;
+
+    public LocalMailboxStore(WebSocketMailboxProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public long append(String userId, String message) {
+        long[] seq = new long[1];
+        mailboxes.compute(userId, (k, mailbox) -> {
+            Mailbox result = mailbox == null ? new Mailbox() : mailbox;
+            seq[0] = ++result.lastSeq;
+            result.messages.addLast(new MailboxMessage(seq[0], message));
+            while (result.messages.size() > properties.getCapacity()) {
+                result.messages.pollFirst();
+            }
+            return result;
+        });
+        return seq[0];
+    }
+
+    @Override
+    public List<MailboxMessage> fetch(String userId, long afterSeq, int limit) {
+        List<MailboxMessage> result = new ArrayList<>();
+        mailboxes.computeIfPresent(userId, (k, mailbox) -> {
+            for (MailboxMessage message : mailbox.messages) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                if (message.getSeq() > afterSeq) {
+                    result.add(message);
+                }
+            }
+            return mailbox;
+        });
+        return result;
+    }
+
+    @Override
+    public void ack(String userId, long seq) {
+        mailboxes.computeIfPresent(userId, (k, mailbox) -> {
+            while (!mailbox.messages.isEmpty() && mailbox.messages.peekFirst().getSeq() <= seq) {
+                mailbox.messages.pollFirst();
+            }
+            // 保留序号, 继续递增
+            return mailbox;
+        });
+    }
+
+    @Override
+    public long lastSeq(String userId) {
+        Mailbox mailbox = mailboxes.get(userId);
+        return mailbox == null ? 0 : mailbox.lastSeq;
+    }
+
+    private static class Mailbox {
+        private volatile long lastSeq;
+        private final Deque<MailboxMessage> messages = new ArrayDeque<>();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.mailbox;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 离线消息
+ */
+@Data
+@AllArgsConstructor
+public class MailboxMessage {
+    /**
+     * 用户信箱内递增的序号
+     */
+    private long seq;
+    /**
+     * 原本要推送的消息
+     */
+    private String message;
+}
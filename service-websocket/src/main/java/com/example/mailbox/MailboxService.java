@@ -0,0 +1,139 @@
+package com.example.mailbox;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONUtil;
+import com.example.common.WebSocketMailboxProperties;
+import com.example.service.WebSocketServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 离线信箱
+ * <p>
+ * 收件人不在线的消息存入信箱. 用户上线时带上客户端已经收到的最大序号(/imserver/{userId}?lastSeq=N),
+ * 服务端删除不超过该序号的消息, 然后分批推送{"type":"mailbox","messages":[{"seq":..,"message":..}]};
+ * 客户端处理完一批后回复{"type":"ack","seq":本批最大序号}, 服务端删除这批并推送下一批.
+ * 没有待确认的批次时, 在线用户新存入的消息立即推送.
+ * <p>
+ * 序号重置后(本地信箱重启、redis中的序号过期)客户端带来的旧序号可能大于当前最大序号, 这时忽略它, 不删除新消息;
+ * ack也只接受不超过已推送批次的序号.
+ * <p>
+ * 读写信箱都在单独的线程中执行, 不阻塞容器线程; 同一用户的操作按用户id固定在同一个线程中, 依次执行.
+ */
+@Slf4j
+@Component
+public class MailboxService {
+
+    private final MailboxStore store;
+    private final WebSocketMailboxProperties properties;
+    private final ThreadPoolExecutor[] workers;
+    /**
+     * 已推送、等待客户端确认的批次中的最大序号
+     */
+    private final Map<String, Long> unacked = new ConcurrentHashMap<>();
+
+    public MailboxService(MailboxStore store, WebSocketMailboxProperties properties) {
+        this.store = store;
+        this.properties = properties;
+        this.workers = new ThreadPoolExecutor[properties.getWorkers()];
+        for (int i = 0; i < workers.length; i++) {
+            String name = "mailbox-" + (i + 1);
+            workers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    r -> new Thread(r, name));
+        }
+    }
+
+    /**
+     * 存入离线消息, 用户在本节点在线且没有待确认的批次时立即推送
+     *
+     * @return 消息序号
+     */
+    public long store(String userId, String message) {
+        long seq = store.append(userId, message);
+        if (WebSocketServer.localUserIds().contains(userId)) {
+            execute(userId, () -> {
+                if (!unacked.containsKey(userId)) {
+                    push(userId);
+                }
+            });
+        }
+        return seq;
+    }
+
+    /**
+     * 用户上线, 删除lastSeq及之前的消息后开始推送
+     */
+    public void resume(String userId, long lastSeq) {
+        execute(userId, () -> {
+            unacked.remove(userId);
+            if (lastSeq > 0) {
+                if (lastSeq <= store.lastSeq(userId)) {
+                    store.ack(userId, lastSeq);
+                } else {
+                    log.info("用户userId={}的lastSeq={}超过信箱当前序号, 忽略", userId, lastSeq);
+                }
+            }
+            push(userId);
+        });
+    }
+
+    /**
+     * 客户端确认收到seq及之前的消息, 推送下一批
+     */
+    public void ack(String userId, long seq) {
+        execute(userId, () -> {
+            Long pushedSeq = unacked.get(userId);
+            if (pushedSeq == null || seq > pushedSeq) {
+                log.info("用户userId={}确认的seq={}不在已推送的批次内, 忽略", userId, seq);
+                return;
+            }
+            store.ack(userId, seq);
+            unacked.remove(userId);
+            push(userId);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    private void execute(String userId, Runnable task) {
+        workers[Math.floorMod(userId.hashCode(), workers.length)].execute(task);
+    }
+
+    /**
+     * 推送下一批, 已确认的消息都已删除, 总是从信箱中最早的消息开始
+     */
+    private void push(String userId) {
+        try {
+            List<MailboxMessage> batch = store.fetch(userId, 0, properties.getBatchSize());
+            if (batch.isEmpty()) {
+                return;
+            }
+            JSONArray messages = JSONUtil.createArray();
+            for (MailboxMessage message : batch) {
+                messages.add(JSONUtil.createObj().set("seq", message.getSeq()).set("message", message.getMessage()));
+            }
+            String frame = JSONUtil.createObj().set("type", "mailbox").set("messages", messages).toString();
+            unacked.put(userId, batch.get(batch.size() - 1).getSeq());
+            if (!WebSocketServer.deliverLocal(userId, frame)) {
+                unacked.remove(userId);
+                log.info("用户userId={}已下线，离线消息保留到下次上线", userId);
+            }
+        } catch (Exception e) {
+            unacked.remove(userId);
+            log.error("推送用户userId={}的离线消息失败", userId, e);
+        }
+    }
+}
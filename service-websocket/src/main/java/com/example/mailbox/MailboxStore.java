@@ -0,0 +1,31 @@
+package com.example.mailbox;
+
+import java.util.List;
+
+/**
+ * 离线消息存储, 每个用户一个有界信箱
+ */
+public interface MailboxStore {
+
+    /**
+     * 追加一条消息, 超出容量时丢弃最早的
+     *
+     * @return 消息序号
+     */
+    long append(String userId, String message);
+
+    /**
+     * 按序号顺序读取afterSeq之后的消息
+     */
+    List<MailboxMessage> fetch(String userId, long afterSeq, int limit);
+
+    /**
+     * 确认并删除序号不超过seq的消息
+     */
+    void ack(String userId, long seq);
+
+    /**
+     * 最近分配的序号, 信箱不存在时为0; 本地信箱重启或redis序号过期后会从头开始
+     */
+    long lastSeq(String userId);
+}
@@ -0,0 +1,78 @@
+package com.example.mailbox;
+
+import com.example.common.WebSocketMailboxProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 保存在redis中的离线信箱, 多实例共享
+ * <p>
+ * 每个用户一个有序集合im:mailbox:{userId}, score为序号, 成员为"序号:消息"(加序号保证相同内容的消息不会合并)
+ */
+@Component
+@ConditionalOnProperty(prefix = "websocket.mailbox", name = "store", havingValue = "redis")
+public class RedisMailboxStore implements MailboxStore {
+
+    private final StringRedisTemplate redisTemplate;
+    private final WebSocketMailboxProperties properties;
+    private final RedisScript<Long> appendScript;
+
+    public RedisMailboxStore(StringRedisTemplate redisTemplate, WebSocketMailboxProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/mailbox_append.lua")));
+        script.setResultType(Long.class);
+        this.appendScript = script;
+    }
+
+    @Override
+    public long append(String userId, String message) {
+        Long seq = redisTemplate.execute(appendScript, Arrays.asList(mailboxKey(userId), seqKey(userId)), message,
+                String.valueOf(properties.getCapacity()), String.valueOf(properties.getRetention().toMillis()));
+        return seq == null ? 0 : seq;
+    }
+
+    @Override
+    public List<MailboxMessage> fetch(String userId, long afterSeq, int limit) {
+        Set<String> members = redisTemplate.opsForZSet().rangeByScore(mailboxKey(userId), afterSeq + 1, Double.POSITIVE_INFINITY, 0, limit);
+        List<MailboxMessage> result = new ArrayList<>();
+        if (members == null) {
+            return result;
+        }
+        for (String member : members) {
+            int separator = member.indexOf(':');
+            result.add(new MailboxMessage(Long.parseLong(member.substring(0, separator)), member.substring(separator + 1)));
+        }
+        return result;
+    }
+
+    @Override
+    public void ack(String userId, long seq) {
+        redisTemplate.opsForZSet().removeRangeByScore(mailboxKey(userId), Double.NEGATIVE_INFINITY, seq);
+    }
+
+    @Override
+    public long lastSeq(String userId) {
+        String seq = redisTemplate.opsForValue().get(seqKey(userId));
+        return seq == null ? 0 : Long.parseLong(seq);
+    }
+
+    private static String mailboxKey(String userId) {
+        return "im:mailbox:{" + userId + "}";
+    }
+
+    private static String seqKey(String userId) {
+        return "im:mailbox:{" + userId + "}:seq";
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.reactive;
+
+import com.example.service.WebSocketConnection;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.UnicastProcessor;
+
+import javax.websocket.CloseReason;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * reactive模式的连接, 包装WebFlux的{@link WebSocketSession}
+ * <p>
+ * WebFlux的一个连接只能调用一次send, 所有要发送的帧先进入一个{@link UnicastProcessor}, 由处理器订阅{@link #send()}
+ * 做唯一的一次send. netty取走一帧时完成该帧的future; 通道不可写时netty不再取帧, future不完成,
+ * 发送队列随之停下, 积压留在发送队列里按溢出策略处理.
+ */
+@Slf4j
+public class ReactiveConnection implements WebSocketConnection {
+
+    private static final IllegalStateException CLOSED = new IllegalStateException("connection closed");
+
+    private final WebSocketSession session;
+    private final MultiValueMap<String, String> requestParameters;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final UnicastProcessor<Outgoing> outgoing = UnicastProcessor.create();
+    private final FluxSink<Outgoing> sink = outgoing.sink();
+    private volatile boolean open = true;
+
+    public ReactiveConnection(WebSocketSession session) {
+        this.session = session;
+        this.requestParameters = UriComponentsBuilder.fromUri(session.getHandshakeInfo().getUri()).build()
+                .getQueryParams();
+    }
+
+    /**
+     * 连接唯一的一次send, 连接关闭后未取走的帧以异常完成
+     */
+    Mono<Void> send() {
+        return session.send(outgoing
+                .doOnDiscard(Outgoing.class, frame -> frame.future.completeExceptionally(CLOSED))
+                .map(this::toMessage));
+    }
+
+    /**
+     * 接收流结束或主动关闭后不再接受新的帧, 已排队的帧发完后send结束
+     */
+    void closed() {
+        open = false;
+        sink.complete();
+    }
+
+    @Override
+    public String getId() {
+        return session.getId();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public String getRequestParameter(String name) {
+        String value = requestParameters.getFirst(name);
+        return value == null ? null : UriUtils.decode(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendText(String text) {
+        return enqueue(new Outgoing(WebSocketMessage.Type.TEXT, text, null));
+    }
+
+    /**
+     * 发送队列在future完成后就回收缓冲区, 这时netty还没有写出, 入队前复制一份
+     */
+    @Override
+    public CompletableFuture<Void> sendBinary(ByteBuffer data) {
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data.duplicate()).flip();
+        return enqueue(new Outgoing(WebSocketMessage.Type.BINARY, null, copy));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendPing() {
+        return enqueue(new Outgoing(WebSocketMessage.Type.PING, null, ByteBuffer.allocate(0)));
+    }
+
+    @Override
+    public void close(CloseReason reason) {
+        closed();
+        session.close(new CloseStatus(reason.getCloseCode().getCode(), reason.getReasonPhrase()))
+                .subscribe(null, e -> log.debug("关闭连接[{}]失败: {}", getId(), e.getMessage()));
+    }
+
+    private CompletableFuture<Void> enqueue(Outgoing frame) {
+        if (!open) {
+            frame.future.completeExceptionally(CLOSED);
+        } else {
+            sink.next(frame);
+        }
+        return frame.future;
+    }
+
+    /**
+     * 在netty取帧时调用, 此时才创建netty的缓冲区, 丢弃的帧不占用直接内存
+     */
+    private WebSocketMessage toMessage(Outgoing frame) {
+        WebSocketMessage message;
+        switch (frame.type) {
+            case TEXT:
+                message = session.textMessage(frame.text);
+                break;
+            case BINARY:
+                message = session.binaryMessage(factory -> factory.wrap(frame.data));
+                break;
+            default:
+                message = session.pingMessage(factory -> factory.wrap(frame.data));
+                break;
+        }
+        frame.future.complete(null);
+        return message;
+    }
+
+    private static class Outgoing {
+        private final WebSocketMessage.Type type;
+        private final String text;
+        private final ByteBuffer data;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Outgoing(WebSocketMessage.Type type, String text, ByteBuffer data) {
+            this.type = type;
+            this.text = text;
+            this.data = data;
+        }
+    }
+}
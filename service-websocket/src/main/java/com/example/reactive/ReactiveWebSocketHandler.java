@@ -0,0 +1,87 @@
+package com.example.reactive;
+
+import com.example.service.WebSocketServer;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * reactive模式下/imserver/{userId}的处理器
+ * <p>
+ * 连接包装成{@link ReactiveConnection}后交给{@link WebSocketServer}的onOpen/onMessage/onClose,
+ * 路由、投递通道、心跳、离线信箱和集群转发与servlet模式共用同一套逻辑.
+ * 收到的消息在netty线程中只复制出内容, 解码、路由、信箱和集群转发可能阻塞, 用publishOn换到boundedElastic执行,
+ * 同一连接的消息仍按到达顺序处理; onOpen和onClose同样不在netty线程中执行.
+ * 接收流和连接唯一的发送流都结束后处理结束.
+ */
+public class ReactiveWebSocketHandler implements WebSocketHandler {
+
+    private final WebSocketServer webSocketServer;
+
+    public ReactiveWebSocketHandler(WebSocketServer webSocketServer) {
+        this.webSocketServer = webSocketServer;
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        String userId = userId(session.getHandshakeInfo().getUri());
+        ReactiveConnection connection = new ReactiveConnection(session);
+        Mono<Void> receive = Mono.fromRunnable(() -> webSocketServer.onOpen(connection, userId))
+                .thenMany(session.receive().map(message -> inbound(message, connection, userId)))
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(Runnable::run)
+                .doOnError(error -> webSocketServer.onError(connection, error, userId))
+                .doFinally(signal -> Schedulers.boundedElastic().schedule(() -> {
+                    connection.closed();
+                    webSocketServer.onClose(connection, userId);
+                }))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+        return receive.and(connection.send());
+    }
+
+    /**
+     * 在netty线程中只取出消息内容, 处理放到返回的任务里; 和servlet容器一样, 单条消息处理失败只回调onError, 不断开连接
+     */
+    private Runnable inbound(WebSocketMessage message, ReactiveConnection connection, String userId) {
+        Runnable task;
+        switch (message.getType()) {
+            case TEXT:
+                String text = message.getPayloadAsText();
+                task = () -> webSocketServer.onMessage(text, connection, userId);
+                break;
+            case BINARY:
+                // 取出后netty会释放缓冲区, 复制一份
+                ByteBuffer payload = message.getPayload().asByteBuffer();
+                ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+                copy.put(payload).flip();
+                task = () -> webSocketServer.onBinaryMessage(copy, connection, userId);
+                break;
+            case PONG:
+                task = () -> webSocketServer.onPong(connection);
+                break;
+            default:
+                return () -> {
+                };
+        }
+        return () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                webSocketServer.onError(connection, e, userId);
+            }
+        };
+    }
+
+    private static String userId(URI uri) {
+        String path = uri.getRawPath();
+        return UriUtils.decode(path.substring(path.lastIndexOf('/') + 1), StandardCharsets.UTF_8);
+    }
+}
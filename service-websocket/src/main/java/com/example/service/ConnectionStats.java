@@ -0,0 +1,31 @@
+package com.example.service;
+
+import lombok.Data;
+
+/**
+ * 连接生命周期指标, 除online外均为启动以来的累计值
+ */
+@Data
+public class ConnectionStats {
+    /**
+     * 当前在线用户数
+     */
+    private int online;
+    private long opened;
+    private long closed;
+    /**
+     * 同一用户重连时被替换的旧连接
+     */
+    private long replaced;
+    /**
+     * 空闲超时被关闭的连接
+     */
+    private long evicted;
+    private long errors;
+    private long pings;
+    private long pingFailures;
+    /**
+     * 时间轮中的定时任务数
+     */
+    private int scheduledTimers;
+}
@@ -0,0 +1,159 @@
+package com.example.service;
+
+import com.example.common.WebSocketDeliveryProperties;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按收件人分片的投递通道
+ * <p>
+ * 每个通道是一个单线程和一个有界队列, 收件人按用户id哈希到固定的通道, 投给同一个用户的消息都在同一个线程里按提交顺序执行,
+ * 不需要按用户加锁就能保证顺序; 不同用户分散在各个通道上并行, 通道数默认等于CPU核数.
+ * <p>
+ * 队列满时不能像CallerRunsPolicy那样由发送方执行, 否则会插队打乱顺序; 发送方最多等待offerTimeout, 超时后丢弃并计数.
+ */
+@Slf4j
+@Component
+public class DeliveryLanes {
+
+    private final Lane[] lanes;
+    private final long offerTimeoutNanos;
+
+    public DeliveryLanes(WebSocketDeliveryProperties properties) {
+        this.lanes = new Lane[Math.max(1, properties.getLanes())];
+        this.offerTimeoutNanos = properties.getOfferTimeout().toNanos();
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i, properties.getQueueCapacity());
+        }
+    }
+
+    /**
+     * 用户所在的通道
+     */
+    public int laneOf(String userId) {
+        int h = userId.hashCode();
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    public int size() {
+        return lanes.length;
+    }
+
+    /**
+     * 在收件人的通道中执行
+     *
+     * @return 通道已满或已关闭时返回false
+     */
+    public boolean execute(String userId, Runnable task) {
+        return execute(laneOf(userId), task);
+    }
+
+    /**
+     * 在指定的通道中执行
+     *
+     * @return 通道已满或已关闭时返回false
+     */
+    public boolean execute(int lane, Runnable task) {
+        return lanes[lane].offer(task, offerTimeoutNanos);
+    }
+
+    /**
+     * 每个通道的队列深度和累计执行、丢弃的任务数
+     */
+    public List<Stats> stats() {
+        List<Stats> stats = new ArrayList<>(lanes.length);
+        for (Lane lane : lanes) {
+            stats.add(lane.stats());
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Lane lane : lanes) {
+            lane.stop();
+        }
+    }
+
+    private static class Lane implements Runnable {
+        private final int index;
+        private final BlockingQueue<Runnable> queue;
+        private final Thread thread;
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private volatile boolean running = true;
+
+        private Lane(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, "delivery-lane-" + index);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        private boolean offer(Runnable task, long timeoutNanos) {
+            try {
+                if (running && queue.offer(task, timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            rejected.increment();
+            return false;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("投递通道{}执行任务失败", index, e);
+                }
+                completed.increment();
+            }
+        }
+
+        private void stop() {
+            running = false;
+            thread.interrupt();
+        }
+
+        private Stats stats() {
+            Stats stats = new Stats();
+            stats.setLane(index);
+            stats.setQueueDepth(queue.size());
+            stats.setCompleted(completed.sum());
+            stats.setRejected(rejected.sum());
+            return stats;
+        }
+    }
+
+    /**
+     * 投递通道指标
+     */
+    @Data
+    public static class Stats {
+        private int lane;
+        private int queueDepth;
+        private long completed;
+        private long rejected;
+    }
+}
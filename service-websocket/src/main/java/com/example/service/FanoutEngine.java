@@ -0,0 +1,91 @@
+package com.example.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 群聊消息扇出
+ * <p>
+ * 消息只序列化一次, 同一个不可变的字符串放入所有收件人的发送队列; 收件人按所在的{@link DeliveryLanes}通道分组,
+ * 各组在自己的通道线程中并行入队, 入队后由各连接的发送队列异步写出.
+ * 同一个收件人的房间消息和一对一消息走同一个通道, 相互之间保持发送顺序.
+ */
+@Component
+public class FanoutEngine {
+
+    private final DeliveryLanes lanes;
+
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+
+    public FanoutEngine(DeliveryLanes lanes) {
+        this.lanes = lanes;
+    }
+
+    /**
+     * 把同一帧消息投递给本节点的多个用户
+     *
+     * @param userIds 收件人
+     * @param frame   已经序列化好的消息
+     * @return 全部入队后完成, 结果为成功入队的收件人数
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Integer> broadcast(List<String> userIds, String frame) {
+        broadcasts.increment();
+        List<String>[] groups = new List[lanes.size()];
+        for (String userId : userIds) {
+            int lane = lanes.laneOf(userId);
+            if (groups[lane] == null) {
+                groups[lane] = new ArrayList<>();
+            }
+            groups[lane].add(userId);
+        }
+        List<CompletableFuture<Integer>> partitions = new ArrayList<>();
+        for (int lane = 0; lane < groups.length; lane++) {
+            List<String> group = groups[lane];
+            if (group == null) {
+                continue;
+            }
+            CompletableFuture<Integer> partition = new CompletableFuture<>();
+            boolean accepted = lanes.execute(lane, () -> {
+                try {
+                    partition.complete(deliver(group, frame));
+                } catch (Exception e) {
+                    partition.completeExceptionally(e);
+                }
+            });
+            if (!accepted) {
+                partition.complete(0);
+            }
+            partitions.add(partition);
+        }
+        if (partitions.size() == 1) {
+            return partitions.get(0);
+        }
+        return CompletableFuture.allOf(partitions.toArray(new CompletableFuture[0]))
+                .thenApply(v -> partitions.stream().mapToInt(CompletableFuture::join).sum());
+    }
+
+    public long getBroadcastCount() {
+        return broadcasts.sum();
+    }
+
+    public long getDeliveryCount() {
+        return deliveries.sum();
+    }
+
+    private int deliver(List<String> userIds, String frame) {
+        int delivered = 0;
+        for (String userId : userIds) {
+            if (WebSocketServer.offerLocal(userId, frame)) {
+                delivered++;
+            }
+        }
+        deliveries.add(delivered);
+        return delivered;
+    }
+}
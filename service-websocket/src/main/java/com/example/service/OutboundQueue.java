@@ -0,0 +1,364 @@
+package com.example.service;
+
+import com.example.codec.BinaryMessageCodec;
+import com.example.common.WebSocketOutboundProperties;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.CloseReason;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个连接的发送队列
+ * <p>
+ * 消息先进入有界队列, 再通过{@link WebSocketConnection}逐帧异步发送, 发送方线程不会被慢客户端阻塞.
+ * 同一时刻只有一帧在发送, 上一帧完成的回调里继续发送下一帧; 排队的连续小消息用换行拼成一帧.
+ * 队列满时按{@link OverflowPolicy}处理. 入队都在投递通道线程中执行, 通道由多个用户共用, 所以BLOCK不在入队时等待:
+ * 发送方在提交到通道之前调用{@link #awaitCapacity()}, 在自己的线程里等待空位, 入队时仍然满就直接丢弃.
+ * <p>
+ * 二进制模式的连接所有消息都以二进制帧发送, 文本消息发送前包装成{@link BinaryMessageCodec#TYPE_JSON}帧, 不合并.
+ * <p>
+ * 配置了batchWindow时, 空闲连接收到的第一条文本消息不立即发送, 等待一个窗口把期间到达的消息合并成一帧,
+ * 排队达到batchMaxMessages条时提前发送. 发送期间排队的消息在上一帧完成后立即发送, 不再等待.
+ */
+@Slf4j
+public class OutboundQueue {
+
+    /**
+     * 所有连接共用的批量窗口定时器, 到期后只触发异步发送, 一个线程足够
+     */
+    private static final ScheduledExecutorService BATCH_TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "outbound-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String userId;
+    private final WebSocketConnection connection;
+    private final WebSocketOutboundProperties properties;
+    private final boolean binary;
+    private final BlockingQueue<Frame> queue;
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /**
+     * BLOCK策略下发送方等待空位的监视器, 取出消息后唤醒
+     */
+    private final Object capacity = new Object();
+    private volatile boolean closed;
+
+    private final LongAdder sentMessages = new LongAdder();
+    private final LongAdder sentFrames = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    public OutboundQueue(String userId, WebSocketConnection connection, WebSocketOutboundProperties properties) {
+        this(userId, connection, properties, false);
+    }
+
+    public OutboundQueue(String userId, WebSocketConnection connection, WebSocketOutboundProperties properties,
+                         boolean binary) {
+        this.userId = userId;
+        this.connection = connection;
+        this.properties = properties;
+        this.binary = binary;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+    }
+
+    /**
+     * 消息入队并尝试发送
+     *
+     * @param text
+     * @return 是否入队, 按溢出策略丢弃或连接已关闭时返回false
+     */
+    public boolean offer(String text) {
+        return offer(new Frame(text, null, System.nanoTime()));
+    }
+
+    /**
+     * 已编码的二进制帧入队, 只用于二进制模式的连接; 发送完成或被丢弃后缓冲区归还池中
+     *
+     * @param buffer
+     * @return 是否入队
+     */
+    public boolean offerBinary(ByteBuffer buffer) {
+        boolean offered = offer(new Frame(null, buffer, System.nanoTime()));
+        if (!offered) {
+            BinaryMessageCodec.release(buffer);
+        }
+        return offered;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * BLOCK策略下在发送方线程等待队列有空位, 最多等待blockTimeout; 其他策略立即返回
+     * <p>
+     * 不能在投递通道线程中调用, 否则会阻塞同一通道上的其他用户
+     *
+     * @return 有空位时返回true, 超时或连接已关闭时返回false
+     */
+    public boolean awaitCapacity() {
+        if (properties.getOverflowPolicy() != OverflowPolicy.BLOCK || queue.remainingCapacity() > 0) {
+            return !closed;
+        }
+        long deadline = System.nanoTime() + properties.getBlockTimeout().toNanos();
+        synchronized (capacity) {
+            while (!closed && queue.remainingCapacity() == 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(capacity, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return !closed;
+    }
+
+    /**
+     * 连接关闭后丢弃未发送的消息
+     */
+    public void close() {
+        closed = true;
+        Frame frame;
+        while ((frame = queue.poll()) != null) {
+            frame.release();
+        }
+        signalCapacity();
+    }
+
+    public WebSocketConnection getConnection() {
+        return connection;
+    }
+
+    public Stats stats() {
+        Stats stats = new Stats();
+        stats.setUserId(userId);
+        stats.setQueueDepth(queue.size());
+        stats.setSentMessages(sentMessages.sum());
+        stats.setSentFrames(sentFrames.sum());
+        stats.setDropped(dropped.sum());
+        stats.setFailed(failed.sum());
+        long messages = stats.getSentMessages();
+        stats.setAvgLatencyMicros(messages == 0 ? 0 : latencyNanos.sum() / messages / 1000);
+        stats.setMaxLatencyMicros(maxLatencyNanos.get() / 1000);
+        return stats;
+    }
+
+    private boolean offer(Frame frame) {
+        if (closed) {
+            return false;
+        }
+        if (!queue.offer(frame) && !overflow(frame)) {
+            return false;
+        }
+        if (deferrable(frame)) {
+            scheduleFlush();
+        } else {
+            drain();
+        }
+        return true;
+    }
+
+    /**
+     * 开启批量窗口的文本连接, 没有帧在发送且排队未达上限时, 新消息等待窗口到期再发送
+     */
+    private boolean deferrable(Frame frame) {
+        return !binary && frame.buffer == null && !properties.getBatchWindow().isZero()
+                && !sending.get() && queue.size() < properties.getBatchMaxMessages();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        BATCH_TIMER.schedule(() -> {
+            flushScheduled.set(false);
+            drain();
+        }, properties.getBatchWindow().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private boolean overflow(Frame frame) {
+        switch (properties.getOverflowPolicy()) {
+            case DROP_OLDEST:
+                while (!queue.offer(frame)) {
+                    Frame oldest = queue.poll();
+                    if (oldest != null) {
+                        oldest.release();
+                        dropped.increment();
+                    }
+                }
+                return true;
+            case BLOCK:
+                // 已经由发送方在awaitCapacity中等待过, 这里在通道线程中, 不再等待
+                dropped.increment();
+                return false;
+            case DISCONNECT:
+            default:
+                dropped.increment();
+                log.warn("用户userId={}的发送队列已满, 断开连接", userId);
+                closeConnection(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "outbound queue overflow"));
+                return false;
+        }
+    }
+
+    private void drain() {
+        while (!closed && !queue.isEmpty() && sending.compareAndSet(false, true)) {
+            List<Frame> batch = nextBatch();
+            if (batch.isEmpty()) {
+                sending.set(false);
+                continue;
+            }
+            try {
+                send(batch);
+            } catch (Exception e) {
+                sending.set(false);
+                failed.add(batch.size());
+                log.error("服务端发送消息给客户端[{}]失败", connection.getId(), e);
+            }
+            return;
+        }
+    }
+
+    private void send(List<Frame> batch) {
+        Frame first = batch.get(0);
+        if (first.buffer == null && !binary) {
+            connection.sendText(join(batch)).whenComplete((v, e) -> onSent(batch, e));
+            return;
+        }
+        ByteBuffer buffer = first.buffer != null ? first.buffer : BinaryMessageCodec.wrapJson(first.text);
+        connection.sendBinary(buffer).whenComplete((v, e) -> {
+            BinaryMessageCodec.release(buffer);
+            onSent(batch, e);
+        });
+    }
+
+    /**
+     * 取出下一帧要发送的消息, 连续的小文本消息合并在一起, 二进制帧单独发送
+     */
+    private List<Frame> nextBatch() {
+        List<Frame> batch = new ArrayList<>();
+        Frame first = queue.poll();
+        if (first == null) {
+            return batch;
+        }
+        signalCapacity();
+        batch.add(first);
+        if (first.buffer != null || binary) {
+            return batch;
+        }
+        int size = first.text.length();
+        int maxSize = properties.getCoalesceMaxSize();
+        Frame next;
+        while ((next = queue.peek()) != null && next.text != null && size + 1 + next.text.length() <= maxSize) {
+            // DROP_OLDEST时发送方可能同时取走队首, 以实际取到的为准
+            Frame polled = queue.poll();
+            if (polled == null) {
+                break;
+            }
+            batch.add(polled);
+            size += 1 + polled.text.length();
+        }
+        return batch;
+    }
+
+    private void signalCapacity() {
+        if (properties.getOverflowPolicy() == OverflowPolicy.BLOCK) {
+            synchronized (capacity) {
+                capacity.notifyAll();
+            }
+        }
+    }
+
+    private void onSent(List<Frame> batch, Throwable error) {
+        long now = System.nanoTime();
+        if (error == null) {
+            sentFrames.increment();
+            sentMessages.add(batch.size());
+            for (Frame frame : batch) {
+                long latency = now - frame.enqueuedNanos;
+                latencyNanos.add(latency);
+                maxLatencyNanos.accumulate(latency);
+            }
+        } else {
+            failed.add(batch.size());
+            log.error("服务端发送消息给客户端[{}]失败", connection.getId(), error);
+        }
+        sending.set(false);
+        drain();
+    }
+
+    private void closeConnection(CloseReason reason) {
+        close();
+        try {
+            connection.close(reason);
+        } catch (Exception e) {
+            log.error("关闭用户userId={}的连接失败", userId, e);
+        }
+    }
+
+    private static String join(List<Frame> batch) {
+        if (batch.size() == 1) {
+            return batch.get(0).text;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Frame frame : batch) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(frame.text);
+        }
+        return sb.toString();
+    }
+
+    private static class Frame {
+        private final String text;
+        private final ByteBuffer buffer;
+        private final long enqueuedNanos;
+
+        private Frame(String text, ByteBuffer buffer, long enqueuedNanos) {
+            this.text = text;
+            this.buffer = buffer;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        private void release() {
+            if (buffer != null) {
+                BinaryMessageCodec.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * 发送队列指标
+     */
+    @Data
+    public static class Stats {
+        private String userId;
+        private int queueDepth;
+        private long sentMessages;
+        private long sentFrames;
+        private long dropped;
+        private long failed;
+        private long avgLatencyMicros;
+        private long maxLatencyMicros;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.service;
+
+/**
+ * 发送队列满时的处理方式
+ */
+public enum OverflowPolicy {
+    /**
+     * 丢弃最早的消息
+     */
+    DROP_OLDEST,
+    /**
+     * 断开连接, 由客户端重连
+     */
+    DISCONNECT,
+    /**
+     * 点对点消息的发送方在自己的线程里等待队列有空位, 超时后丢弃新消息; 不会阻塞投递通道.
+     * 房间广播、集群转发和离线推送没有可以等待的发送方, 队列满时直接丢弃新消息
+     */
+    BLOCK
+}
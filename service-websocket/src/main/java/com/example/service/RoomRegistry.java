@@ -0,0 +1,68 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本节点的房间成员关系
+ */
+public class RoomRegistry {
+
+    private final Map<String, Set<String>> rooms = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> userRooms = new ConcurrentHashMap<>();
+
+    public void join(String roomId, String userId) {
+        // 在compute里添加, 避免和leave删除空集合交错
+        rooms.compute(roomId, (k, members) -> add(members, userId));
+        userRooms.compute(userId, (k, joined) -> add(joined, roomId));
+    }
+
+    public void leave(String roomId, String userId) {
+        rooms.computeIfPresent(roomId, (k, members) -> {
+            members.remove(userId);
+            return members.isEmpty() ? null : members;
+        });
+        userRooms.computeIfPresent(userId, (k, joined) -> {
+            joined.remove(roomId);
+            return joined.isEmpty() ? null : joined;
+        });
+    }
+
+    /**
+     * 用户断开时退出所有房间
+     */
+    public void leaveAll(String userId) {
+        Set<String> joined = userRooms.remove(userId);
+        if (joined == null) {
+            return;
+        }
+        for (String roomId : joined) {
+            rooms.computeIfPresent(roomId, (k, members) -> {
+                members.remove(userId);
+                return members.isEmpty() ? null : members;
+            });
+        }
+    }
+
+    /**
+     * 房间成员的快照
+     */
+    public List<String> members(String roomId) {
+        Set<String> members = rooms.get(roomId);
+        return members == null ? Collections.emptyList() : new ArrayList<>(members);
+    }
+
+    public int roomCount() {
+        return rooms.size();
+    }
+
+    private static Set<String> add(Set<String> set, String value) {
+        Set<String> result = set == null ? ConcurrentHashMap.newKeySet() : set;
+        result.add(value);
+        return result;
+    }
+}
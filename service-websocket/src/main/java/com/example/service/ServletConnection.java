@@ -0,0 +1,95 @@
+package com.example.service;
+
+import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * servlet容器(JSR-356)的连接, 发送走getAsyncRemote
+ * <p>
+ * 包装对象保存在Session的userProperties中, 容器对同一连接的各个回调拿到的是同一个实例.
+ */
+public class ServletConnection implements WebSocketConnection {
+
+    private static final String KEY = ServletConnection.class.getName();
+    private static final ByteBuffer PING = ByteBuffer.allocate(0);
+
+    private final Session session;
+
+    private ServletConnection(Session session) {
+        this.session = session;
+    }
+
+    public static WebSocketConnection of(Session session) {
+        return (WebSocketConnection) session.getUserProperties()
+                .computeIfAbsent(KEY, key -> new ServletConnection(session));
+    }
+
+    @Override
+    public String getId() {
+        return session.getId();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return session.getUserProperties();
+    }
+
+    @Override
+    public String getRequestParameter(String name) {
+        Map<String, List<String>> parameters = session.getRequestParameterMap();
+        List<String> values = parameters == null ? null : parameters.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendText(String text) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        session.getAsyncRemote().sendText(text, completer(future));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> sendBinary(ByteBuffer data) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        session.getAsyncRemote().sendBinary(data, completer(future));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> sendPing() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            session.getAsyncRemote().sendPing(PING.duplicate());
+            future.complete(null);
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public void close(CloseReason reason) throws IOException {
+        session.close(reason);
+    }
+
+    private static SendHandler completer(CompletableFuture<Void> future) {
+        return result -> {
+            if (result.isOK()) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(result.getException());
+            }
+        };
+    }
+}
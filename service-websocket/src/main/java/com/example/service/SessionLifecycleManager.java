@@ -0,0 +1,185 @@
+package com.example.service;
+
+import com.example.common.WebSocketLifecycleProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.websocket.CloseReason;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接的心跳和空闲超时
+ * <p>
+ * 所有连接共用一个{@link TimingWheel}, 每个连接同一时刻只有一个定时任务, 不为连接单独开线程.
+ * 任务到期时: 超过idleTimeout没有收到任何消息的连接被关闭并从在线列表移除;
+ * 超过pingInterval没有消息的连接发送一个ping, 正常的客户端会回复pong; 然后重新排定下一次检测.
+ * 收到文本、二进制消息或pong都会刷新连接的活跃时间.
+ */
+@Slf4j
+@Component
+public class SessionLifecycleManager {
+
+    private static final String HEARTBEAT = SessionLifecycleManager.class.getName();
+
+    private final WebSocketLifecycleProperties properties;
+    private final long pingIntervalNanos;
+    private final long idleTimeoutNanos;
+    private final ThreadPoolExecutor executor;
+    private final TimingWheel timingWheel;
+
+    private final LongAdder pings = new LongAdder();
+    private final LongAdder pingFailures = new LongAdder();
+
+    public SessionLifecycleManager(WebSocketLifecycleProperties properties) {
+        this.properties = properties;
+        this.pingIntervalNanos = properties.getPingInterval().toNanos();
+        this.idleTimeoutNanos = properties.getIdleTimeout().toNanos();
+        AtomicInteger index = new AtomicInteger();
+        // 每个连接最多一个任务在排队, 队列长度不会超过连接数
+        this.executor = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "ws-lifecycle-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timingWheel = new TimingWheel(properties.getTickDuration().toMillis(), TimeUnit.MILLISECONDS,
+                properties.getWheelSize(), executor, "ws-timing-wheel");
+    }
+
+    /**
+     * 连接建立后开始检测
+     */
+    public void watch(String userId, WebSocketConnection connection) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Heartbeat heartbeat = new Heartbeat(userId, connection);
+        connection.getAttributes().put(HEARTBEAT, heartbeat);
+        heartbeat.schedule(pingIntervalNanos);
+    }
+
+    /**
+     * 收到客户端的任何消息时刷新活跃时间
+     */
+    public void touch(WebSocketConnection connection) {
+        Heartbeat heartbeat = heartbeat(connection);
+        if (heartbeat != null) {
+            heartbeat.lastActiveNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 连接关闭后停止检测
+     */
+    public void unwatch(WebSocketConnection connection) {
+        Heartbeat heartbeat = heartbeat(connection);
+        if (heartbeat != null) {
+            heartbeat.stopped = true;
+            TimingWheel.Timeout timeout = heartbeat.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+
+    /**
+     * 在生命周期线程中关闭连接, 对端已经失联时关闭可能要等待写超时, 不阻塞调用方
+     */
+    public void close(WebSocketConnection connection, CloseReason reason) {
+        executor.execute(() -> closeQuietly(connection, reason));
+    }
+
+    public long getPingCount() {
+        return pings.sum();
+    }
+
+    public long getPingFailureCount() {
+        return pingFailures.sum();
+    }
+
+    /**
+     * 时间轮中的定时任务数
+     */
+    public int getScheduledCount() {
+        return timingWheel.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timingWheel.stop();
+        executor.shutdown();
+    }
+
+    static void closeQuietly(WebSocketConnection connection, CloseReason reason) {
+        try {
+            if (connection.isOpen()) {
+                connection.close(reason);
+            }
+        } catch (Exception e) {
+            log.warn("关闭连接[{}]失败: {}", connection.getId(), e.getMessage());
+        }
+    }
+
+    private static Heartbeat heartbeat(WebSocketConnection connection) {
+        return (Heartbeat) connection.getAttributes().get(HEARTBEAT);
+    }
+
+    private class Heartbeat implements Runnable {
+        private final String userId;
+        private final WebSocketConnection connection;
+        private volatile long lastActiveNanos = System.nanoTime();
+        private volatile TimingWheel.Timeout timeout;
+        private volatile boolean stopped;
+
+        private Heartbeat(String userId, WebSocketConnection connection) {
+            this.userId = userId;
+            this.connection = connection;
+        }
+
+        @Override
+        public void run() {
+            if (stopped) {
+                return;
+            }
+            long idle = System.nanoTime() - lastActiveNanos;
+            if (idle >= idleTimeoutNanos || !connection.isOpen()) {
+                stopped = true;
+                log.info("用户userId={}的连接[{}]空闲{}ms, 关闭连接", userId, connection.getId(),
+                        TimeUnit.NANOSECONDS.toMillis(idle));
+                WebSocketServer.evict(userId, connection,
+                        new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "idle timeout"));
+                return;
+            }
+            if (idle >= pingIntervalNanos) {
+                ping();
+            }
+            // 下一次在活跃时间满pingInterval时检测, 不晚于空闲超时
+            long next = Math.min(pingIntervalNanos - idle % pingIntervalNanos, idleTimeoutNanos - idle);
+            schedule(next);
+        }
+
+        private void ping() {
+            connection.sendPing().whenComplete((v, e) -> {
+                if (e == null) {
+                    pings.increment();
+                } else {
+                    // 发送失败的连接不刷新活跃时间, 到空闲超时时被关闭
+                    pingFailures.increment();
+                    log.debug("向用户userId={}发送ping失败: {}", userId, e.getMessage());
+                }
+            });
+        }
+
+        private void schedule(long delayNanos) {
+            timeout = timingWheel.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+            if (stopped) {
+                timeout.cancel();
+            }
+        }
+    }
+}
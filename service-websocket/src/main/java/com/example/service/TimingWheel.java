@@ -0,0 +1,150 @@
+package com.example.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 哈希时间轮
+ * <p>
+ * 一个线程按tick推进轮盘, 定时任务按到期时间放入对应的格子, 超过一圈的记录剩余圈数.
+ * 新任务先放入无锁队列, 由时间轮线程在每个tick搬进格子, 格子只有时间轮线程访问, 不需要加锁.
+ * 到期的任务交给executor执行, 时间轮线程不做耗时操作. 精度为一个tick, 适合心跳、空闲超时这类大量且不要求精确的定时.
+ */
+@Slf4j
+public class TimingWheel {
+
+    private final long tickNanos;
+    private final Queue<Timeout>[] wheel;
+    private final int mask;
+    private final Executor executor;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private final Thread worker;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param tickDuration 每格的时长
+     * @param wheelSize    格子数, 向上取整为2的幂
+     * @param executor     执行到期任务
+     * @param name         时间轮线程名
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickDuration, TimeUnit unit, int wheelSize, Executor executor, String name) {
+        this.tickNanos = Math.max(unit.toNanos(tickDuration), TimeUnit.MILLISECONDS.toNanos(1));
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.wheel = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.mask = size - 1;
+        this.executor = executor;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 添加定时任务
+     *
+     * @return 可以取消的句柄
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + unit.toNanos(delay));
+        scheduled.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 还未执行也未清理的任务数, 已取消的任务在所在格子到期时才清理
+     */
+    public int size() {
+        return scheduled.get();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            transferPending();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                scheduled.decrementAndGet();
+                continue;
+            }
+            // 已经过期的任务放进当前格子, 本次tick执行
+            long expireTick = Math.max(timeout.deadlineNanos / tickNanos, tick);
+            timeout.remainingRounds = (expireTick - tick) / wheel.length;
+            wheel[(int) (expireTick & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> bucket) {
+        for (int i = bucket.size(); i > 0; i--) {
+            Timeout timeout = bucket.poll();
+            if (timeout.cancelled) {
+                scheduled.decrementAndGet();
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                bucket.add(timeout);
+            } else {
+                scheduled.decrementAndGet();
+                try {
+                    executor.execute(timeout.task);
+                } catch (Exception e) {
+                    log.error("定时任务提交失败", e);
+                }
+            }
+        }
+    }
+
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.service;
+
+import javax.websocket.CloseReason;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 一个WebSocket连接
+ * <p>
+ * {@link WebSocketServer}、{@link OutboundQueue}和{@link SessionLifecycleManager}只通过它收发和关闭连接,
+ * servlet模式由{@link ServletConnection}包装容器的Session, reactive模式由ReactiveConnection包装WebFlux的连接.
+ * <p>
+ * 发送都是异步的, 同一连接上一帧完成前不能发送下一帧, 由发送队列保证.
+ */
+public interface WebSocketConnection {
+
+    String getId();
+
+    boolean isOpen();
+
+    /**
+     * 连接级的属性, 保存心跳等和连接同生命周期的状态
+     */
+    Map<String, Object> getAttributes();
+
+    /**
+     * 握手请求的查询参数
+     *
+     * @param name
+     * @return 参数的第一个值, 没有时为null
+     */
+    String getRequestParameter(String name);
+
+    /**
+     * 发送文本帧
+     *
+     * @return 帧交给底层连接后完成, 失败时异常完成
+     */
+    CompletableFuture<Void> sendText(String text);
+
+    /**
+     * 发送二进制帧, 返回的future完成后调用方可以回收data
+     */
+    CompletableFuture<Void> sendBinary(ByteBuffer data);
+
+    /**
+     * 发送空的ping帧
+     */
+    CompletableFuture<Void> sendPing();
+
+    void close(CloseReason reason) throws IOException;
+}
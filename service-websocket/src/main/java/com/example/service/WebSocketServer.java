@@ -1,37 +1,247 @@
 package com.example.service;
 
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.example.cluster.ClusterRouter;
+import com.example.codec.BinaryMessageCodec;
+import com.example.codec.ChatMessage;
+import com.example.codec.JsonMessageCodec;
+import com.example.common.WebSocketDeliveryProperties;
+import com.example.common.WebSocketEndpointConfigurator;
+import com.example.common.WebSocketOutboundProperties;
+import com.example.mailbox.MailboxService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 @Slf4j
-@ServerEndpoint(value = "/imserver/{userId}")
+@ServerEndpoint(value = "/imserver/{userId}", configurator = WebSocketEndpointConfigurator.class)
 @Component
 public class WebSocketServer {
     /**
      * 记录当前在线连接数
      */
     private static final AtomicInteger onlineCount = new AtomicInteger(0);
-    private static final Map<String, Session> sessionMap = new ConcurrentHashMap<>();
+    private static final Map<String, OutboundQueue> sessionMap = new ConcurrentHashMap<>();
+    private static final LongAdder openedCount = new LongAdder();
+    private static final LongAdder closedCount = new LongAdder();
+    private static final LongAdder replacedCount = new LongAdder();
+    private static final LongAdder evictedCount = new LongAdder();
+    private static final LongAdder errorCount = new LongAdder();
+    /**
+     * 连接由容器创建, 不经过spring注入, 配置放在静态字段里
+     */
+    private static WebSocketOutboundProperties outboundProperties = new WebSocketOutboundProperties();
+    /**
+     * 集群路由, 未启用时为null
+     */
+    private static ClusterRouter clusterRouter;
+    private static final RoomRegistry roomRegistry = new RoomRegistry();
+    private static volatile FanoutEngine fanoutEngine;
+    /**
+     * 投递给同一用户的消息都在该用户的通道线程中执行, 保证顺序
+     */
+    private static volatile DeliveryLanes deliveryLanes;
+    /**
+     * 离线信箱, 不在spring容器中使用时为null, 离线消息直接丢弃
+     */
+    private static MailboxService mailboxService;
+    /**
+     * 心跳和空闲超时, 不在spring容器中使用时为null
+     */
+    private static SessionLifecycleManager lifecycleManager;
+    /**
+     * 解码结果在容器线程内复用
+     */
+    private static final ThreadLocal<ChatMessage> inboundMessages = ThreadLocal.withInitial(ChatMessage::new);
+
+    @Autowired
+    public void setOutboundProperties(WebSocketOutboundProperties outboundProperties) {
+        WebSocketServer.outboundProperties = outboundProperties;
+    }
+
+    @Autowired(required = false)
+    public void setClusterRouter(ClusterRouter clusterRouter) {
+        WebSocketServer.clusterRouter = clusterRouter;
+    }
+
+    @Autowired
+    public void setFanoutEngine(FanoutEngine fanoutEngine) {
+        WebSocketServer.fanoutEngine = fanoutEngine;
+    }
+
+    @Autowired
+    public void setDeliveryLanes(DeliveryLanes deliveryLanes) {
+        WebSocketServer.deliveryLanes = deliveryLanes;
+    }
+
+    @Autowired(required = false)
+    public void setMailboxService(MailboxService mailboxService) {
+        WebSocketServer.mailboxService = mailboxService;
+    }
+
+    @Autowired
+    public void setLifecycleManager(SessionLifecycleManager lifecycleManager) {
+        WebSocketServer.lifecycleManager = lifecycleManager;
+    }
+
+    /**
+     * 连接在本节点的用户
+     */
+    public static Set<String> localUserIds() {
+        return sessionMap.keySet();
+    }
+
+    /**
+     * 投递给连接在本节点的用户, 在收件人的通道中异步入队
+     *
+     * @return 用户不在本节点或通道已满时返回false
+     */
+    public static boolean deliverLocal(String toUserId, String message) {
+        if (!sessionMap.containsKey(toUserId)) {
+            return false;
+        }
+        return deliveryLanes().execute(toUserId, () -> offerLocal(toUserId, message));
+    }
+
+    /**
+     * 直接放入用户的发送队列, 调用方需要已经在该用户的通道线程中
+     */
+    static boolean offerLocal(String toUserId, String message) {
+        OutboundQueue toSession = sessionMap.get(toUserId);
+        if (toSession == null) {
+            return false;
+        }
+        return toSession.offer(message);
+    }
+
+    /**
+     * 每个投递通道的队列深度
+     */
+    public static List<DeliveryLanes.Stats> deliveryStats() {
+        return deliveryLanes().stats();
+    }
+
+    /**
+     * 每个连接发送队列的指标
+     */
+    public static List<OutboundQueue.Stats> outboundStats() {
+        return sessionMap.values().stream().map(OutboundQueue::stats).collect(Collectors.toList());
+    }
+
+    /**
+     * 连接数和连接建立、关闭、替换、驱逐的累计次数
+     */
+    public static ConnectionStats connectionStats() {
+        ConnectionStats stats = new ConnectionStats();
+        stats.setOnline(onlineCount.get());
+        stats.setOpened(openedCount.sum());
+        stats.setClosed(closedCount.sum());
+        stats.setReplaced(replacedCount.sum());
+        stats.setEvicted(evictedCount.sum());
+        stats.setErrors(errorCount.sum());
+        if (lifecycleManager != null) {
+            stats.setPings(lifecycleManager.getPingCount());
+            stats.setPingFailures(lifecycleManager.getPingFailureCount());
+            stats.setScheduledTimers(lifecycleManager.getScheduledCount());
+        }
+        return stats;
+    }
+
+    /**
+     * 关闭空闲超时的连接, 立即从在线列表移除, 不等容器回调onClose
+     */
+    public static void evict(String userId, WebSocketConnection connection, CloseReason reason) {
+        evictedCount.increment();
+        remove(userId, connection);
+        SessionLifecycleManager.closeQuietly(connection, reason);
+    }
+
+    /**
+     * 把消息扇出给房间在本节点的成员
+     *
+     * @param roomId
+     * @param frame         已经序列化好的消息
+     * @param excludeUserId 不需要投递的用户(发送者), 可以为null
+     * @return 全部入队后完成, 结果为投递到的成员数
+     */
+    public static CompletableFuture<Integer> broadcastLocal(String roomId, String frame, String excludeUserId) {
+        List<String> members = roomRegistry.members(roomId);
+        if (excludeUserId != null) {
+            members.remove(excludeUserId);
+        }
+        return fanoutEngine().broadcast(members, frame);
+    }
+
+    private static FanoutEngine fanoutEngine() {
+        if (fanoutEngine == null) {
+            synchronized (WebSocketServer.class) {
+                if (fanoutEngine == null) {
+                    // 不在spring容器中使用时(如基准测试)按默认配置创建
+                    fanoutEngine = new FanoutEngine(deliveryLanes());
+                }
+            }
+        }
+        return fanoutEngine;
+    }
+
+    private static DeliveryLanes deliveryLanes() {
+        if (deliveryLanes == null) {
+            synchronized (WebSocketServer.class) {
+                if (deliveryLanes == null) {
+                    deliveryLanes = new DeliveryLanes(new WebSocketDeliveryProperties());
+                }
+            }
+        }
+        return deliveryLanes;
+    }
 
     /**
      * 连接建立成功调用的方法
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("userId") String userId) {
-        Session userSession = sessionMap.get(userId);
-        if (userSession == null) {
+        onOpen(ServletConnection.of(session), userId);
+    }
+
+    /**
+     * 连接建立, servlet和reactive模式共用
+     */
+    public void onOpen(WebSocketConnection connection, String userId) {
+        openedCount.increment();
+        // 连接参数format=binary时推送二进制帧
+        boolean binary = "binary".equals(connection.getRequestParameter("format"));
+        OutboundQueue previous = sessionMap.put(userId,
+                new OutboundQueue(userId, connection, outboundProperties, binary));
+        if (previous == null) {
             onlineCount.incrementAndGet(); // 在线数加1
+        } else {
+            // 同一用户重连, 旧连接被替换, 在线数不变
+            replacedCount.increment();
+            previous.close();
+            closeReplaced(previous.getConnection());
+        }
+        if (lifecycleManager != null) {
+            lifecycleManager.watch(userId, connection);
+        }
+        if (clusterRouter != null) {
+            clusterRouter.register(userId);
+        }
+        if (mailboxService != null) {
+            // 在信箱线程中推送离线消息, 不阻塞当前容器线程
+            mailboxService.resume(userId, lastSeq(connection));
         }
-        sessionMap.put(userId, session);
         log.info("有新用户加入，userId={}, 当前在线人数为：{}", userId, onlineCount.get());
     }
 
@@ -40,9 +250,48 @@ public class WebSocketServer {
      */
     @OnClose
     public void onClose(Session session, @PathParam("userId") String userId) {
+        onClose(ServletConnection.of(session), userId);
+    }
+
+    public void onClose(WebSocketConnection connection, String userId) {
+        closedCount.increment();
+        if (lifecycleManager != null) {
+            lifecycleManager.unwatch(connection);
+        }
+        if (remove(userId, connection)) {
+            log.info("有一连接关闭，移除userId={}的用户session, 当前在线人数为：{}", userId, onlineCount.get());
+        } else {
+            log.info("用户userId={}的连接[{}]关闭, 该连接已被替换或驱逐", userId, connection.getId());
+        }
+    }
+
+    /**
+     * 只有当前登记的是这个连接时才移除, 已经被重连替换的旧连接关闭时不影响新连接和在线数
+     *
+     * @return 是否移除
+     */
+    private static boolean remove(String userId, WebSocketConnection connection) {
+        OutboundQueue outbound = sessionMap.get(userId);
+        if (outbound == null || outbound.getConnection() != connection || !sessionMap.remove(userId, outbound)) {
+            return false;
+        }
+        outbound.close();
         onlineCount.decrementAndGet(); // 在线数减1
-        sessionMap.remove(userId);
-        log.info("有一连接关闭，移除userId={}的用户session, 当前在线人数为：{}", userId, onlineCount.get());
+        roomRegistry.leaveAll(userId);
+        if (clusterRouter != null) {
+            clusterRouter.unregister(userId);
+        }
+        return true;
+    }
+
+    private static void closeReplaced(WebSocketConnection connection) {
+        CloseReason reason = new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "replaced by new connection");
+        if (lifecycleManager != null) {
+            lifecycleManager.unwatch(connection);
+            lifecycleManager.close(connection, reason);
+        } else {
+            SessionLifecycleManager.closeQuietly(connection, reason);
+        }
     }
 
     /**
@@ -52,35 +301,164 @@ public class WebSocketServer {
      */
     @OnMessage
     public void onMessage(String message, Session session, @PathParam("userId") String userId) {
-        log.info("服务端收到用户userId={}的消息:{}", userId, message);
-        JSONObject obj = JSONUtil.parseObj(message);
-        String toUserId = obj.getStr("toUserId");
-        String text = obj.getStr("text");
-        Session toSession = sessionMap.get(toUserId);
-        if (toSession != null) {
-            String jsonStr = "{\"fromUserId: " + userId + "\", \"text\": " + text + "}";
-            this.sendMessage(jsonStr, toSession);
-            log.info("发送给用户id={}，消息：{}", toUserId, jsonStr);
+        onMessage(message, ServletConnection.of(session), userId);
+    }
+
+    public void onMessage(String message, WebSocketConnection connection, String userId) {
+        log.debug("服务端收到用户userId={}的消息:{}", userId, message);
+        touch(connection);
+        ChatMessage inbound = inboundMessages.get();
+        JsonMessageCodec.decode(message, inbound);
+        dispatch(inbound, userId);
+    }
+
+    /**
+     * 收到客户端的二进制帧, 格式见{@link BinaryMessageCodec}
+     */
+    @OnMessage
+    public void onBinaryMessage(ByteBuffer message, Session session, @PathParam("userId") String userId) {
+        onBinaryMessage(message, ServletConnection.of(session), userId);
+    }
+
+    public void onBinaryMessage(ByteBuffer message, WebSocketConnection connection, String userId) {
+        touch(connection);
+        ChatMessage inbound = inboundMessages.get();
+        BinaryMessageCodec.decode(message, inbound);
+        dispatch(inbound, userId);
+    }
+
+    /**
+     * 客户端回复的pong, 只刷新活跃时间
+     */
+    @OnMessage
+    public void onPong(PongMessage pong, Session session) {
+        onPong(ServletConnection.of(session));
+    }
+
+    public void onPong(WebSocketConnection connection) {
+        touch(connection);
+    }
+
+    private static void touch(WebSocketConnection connection) {
+        if (lifecycleManager != null) {
+            lifecycleManager.touch(connection);
+        }
+    }
+
+    private void dispatch(ChatMessage inbound, String userId) {
+        if (inbound.getRoomId() != null) {
+            onRoomMessage(inbound.getType(), inbound.getRoomId(), inbound.getText(), userId);
+            return;
+        }
+        if ("ack".equals(inbound.getType())) {
+            if (mailboxService != null) {
+                mailboxService.ack(userId, inbound.getSeq());
+            }
+            return;
+        }
+        String toUserId = inbound.getToUserId();
+        String text = inbound.getText();
+        OutboundQueue target = toUserId == null ? null : sessionMap.get(toUserId);
+        if (target != null) {
+            // BLOCK策略在发送方自己的线程里等待对方队列的空位, 不占用通道线程; 超时后仍然提交, 入队时丢弃并计数
+            target.awaitCapacity();
+            if (!deliveryLanes().execute(toUserId, () -> sendMessage(userId, text, toUserId))) {
+                log.warn("用户id={}的投递通道已满, 消息被丢弃", toUserId);
+            }
+            return;
+        }
+        undeliverable(userId, toUserId, text);
+    }
+
+    /**
+     * 收件人不在本节点: 转发到所在节点或存入离线信箱
+     */
+    private static void undeliverable(String userId, String toUserId, String text) {
+        String jsonStr = JsonMessageCodec.encodeChat(userId, text);
+        if (clusterRouter != null && clusterRouter.forward(toUserId, jsonStr)) {
+            log.debug("用户id={}在其他节点，已转发消息：{}", toUserId, jsonStr);
+        } else {
+            storeOffline(toUserId, jsonStr);
+        }
+    }
+
+    /**
+     * 存入收件人的离线信箱, 没有离线信箱时丢弃
+     *
+     * @param toUserId
+     * @param message  已经序列化好的消息
+     */
+    public static void storeOffline(String toUserId, String message) {
+        if (mailboxService != null) {
+            long seq = mailboxService.store(toUserId, message);
+            log.debug("用户id={}不在线，消息存入离线信箱，seq={}", toUserId, seq);
         } else {
             log.info("发送失败，未找到用户id={}的session", toUserId);
         }
     }
 
-    @OnError
-    public void onError(Session session, Throwable error) {
-        log.error("发生错误");
-        error.printStackTrace();
+    /**
+     * 房间消息: type为join/leave时加入/退出房间, 否则把text广播给房间其他成员
+     */
+    private void onRoomMessage(String type, String roomId, String text, String userId) {
+        if ("join".equals(type)) {
+            roomRegistry.join(roomId, userId);
+            log.info("用户userId={}加入房间{}", userId, roomId);
+            return;
+        }
+        if ("leave".equals(type)) {
+            roomRegistry.leave(roomId, userId);
+            log.info("用户userId={}退出房间{}", userId, roomId);
+            return;
+        }
+        // 只序列化一次, 所有成员共用同一帧
+        String frame = JsonMessageCodec.encodeRoom(userId, roomId, text);
+        broadcastLocal(roomId, frame, userId);
+        if (clusterRouter != null) {
+            clusterRouter.broadcast(roomId, frame, userId);
+        }
     }
 
     /**
-     * 服务端发送消息给客户端
+     * 客户端已经收到的最大离线消息序号, 通过连接参数lastSeq传入
      */
-    private void sendMessage(String message, Session toSession) {
+    private static long lastSeq(WebSocketConnection connection) {
+        String lastSeq = connection.getRequestParameter("lastSeq");
+        if (lastSeq == null) {
+            return 0;
+        }
         try {
-            log.info("服务端给客户端[{}]发送消息{}", toSession.getId(), message);
-            toSession.getBasicRemote().sendText(message);
-        } catch (Exception e) {
-            log.error("服务端发送消息给客户端失败", e);
+            return Long.parseLong(lastSeq);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @OnError
+    public void onError(Session session, Throwable error, @PathParam("userId") String userId) {
+        onError(ServletConnection.of(session), error, userId);
+    }
+
+    public void onError(WebSocketConnection connection, Throwable error, String userId) {
+        errorCount.increment();
+        log.error("用户userId={}的连接[{}]发生错误", userId, connection.getId(), error);
+    }
+
+    /**
+     * 服务端发送消息给客户端, 在收件人的通道中执行; 按对方的连接模式编码, 放入对方的发送队列后立即返回
+     */
+    private static void sendMessage(String fromUserId, String text, String toUserId) {
+        OutboundQueue toSession = sessionMap.get(toUserId);
+        if (toSession == null) {
+            // 提交后对方已经下线
+            undeliverable(fromUserId, toUserId, text);
+            return;
+        }
+        boolean offered = toSession.isBinary()
+                ? toSession.offerBinary(BinaryMessageCodec.encodeChat(fromUserId, text))
+                : toSession.offer(JsonMessageCodec.encodeChat(fromUserId, text));
+        if (!offered) {
+            log.warn("客户端[{}]的发送队列已满或已关闭, 消息被丢弃", toSession.getConnection().getId());
         }
     }
 }
@@ -0,0 +1,10 @@
+-- 追加离线消息并裁剪到容量
+-- KEYS[1] 信箱(有序集合, score为序号), KEYS[2] 序号计数器
+-- ARGV[1] 消息, ARGV[2] 容量, ARGV[3] 保存毫秒数
+-- 返回消息序号
+local seq = redis.call('INCR', KEYS[2])
+redis.call('ZADD', KEYS[1], seq, seq .. ':' .. ARGV[1])
+redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -tonumber(ARGV[2]) - 1)
+redis.call('PEXPIRE', KEYS[1], ARGV[3])
+redis.call('PEXPIRE', KEYS[2], ARGV[3])
+return seq
@@ -0,0 +1,16 @@
+-- 续期本节点用户的在线状态
+-- KEYS 用户在线状态key
+-- ARGV[1] 节点id, ARGV[2] 过期毫秒数
+-- 已经被其他节点接管的用户不处理, 已过期的重新写入
+local refreshed = 0
+for i = 1, #KEYS do
+    local node = redis.call('GET', KEYS[i])
+    if not node then
+        redis.call('SET', KEYS[i], ARGV[1], 'PX', ARGV[2])
+        refreshed = refreshed + 1
+    elseif node == ARGV[1] then
+        redis.call('PEXPIRE', KEYS[i], ARGV[2])
+        refreshed = refreshed + 1
+    end
+end
+return refreshed
@@ -0,0 +1,6 @@
+-- 用户断开时删除在线状态, 只删除属于本节点的, 避免误删在其他节点重连后的状态
+-- KEYS[1] 用户在线状态key, ARGV[1] 节点id
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
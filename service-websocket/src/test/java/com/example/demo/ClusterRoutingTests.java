@@ -0,0 +1,197 @@
+package com.example.demo;
+
+import com.example.DemoApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.ContainerProvider;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两个实例通过redis路由消息
+ * <p>
+ * 连接表是静态的, 同一个JVM里的两个spring上下文会共用, 所以每个实例单独启动一个JVM进程, 共用一个内嵌redis.
+ */
+class ClusterRoutingTests {
+
+    private RedisServer redis;
+    private int redisPort;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private final List<Process> nodes = new ArrayList<>();
+    private final List<Session> clients = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        redisPort = freePort();
+        redis = RedisServer.builder().port(redisPort).setting("maxmemory 64mb").build();
+        redis.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", redisPort));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (Session client : clients) {
+            try {
+                client.close();
+            } catch (Exception ignored) {
+            }
+        }
+        nodes.forEach(Process::destroyForcibly);
+        connectionFactory.destroy();
+        redis.stop();
+    }
+
+    @Test
+    void routesMessagesBetweenNodesAndExpiresPresence() throws Exception {
+        int portA = startNode("node-a");
+        int portB = startNode("node-b");
+
+        BlockingQueue<String> inboxA = new LinkedBlockingQueue<>();
+        BlockingQueue<String> inboxB = new LinkedBlockingQueue<>();
+        Session alice = connect(portA, "1", inboxA);
+        connect(portB, "2", inboxB);
+        Assertions.assertEquals("node-a", awaitPresence("1"));
+        Assertions.assertEquals("node-b", awaitPresence("2"));
+
+        // 1在node-a, 2在node-b, 消息经redis转发
+        alice.getBasicRemote().sendText("{\"toUserId\":\"2\",\"text\":\"hello\"}");
+        String received = inboxB.poll(10, TimeUnit.SECONDS);
+        Assertions.assertNotNull(received);
+        Assertions.assertTrue(received.contains("hello"));
+
+        // node-b宕机后不再续期, 2的在线状态过期
+        nodes.get(1).destroyForcibly().waitFor();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (redisTemplate.hasKey("im:presence:2") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+        }
+        Assertions.assertFalse(redisTemplate.hasKey("im:presence:2"));
+        Assertions.assertEquals("node-a", redisTemplate.opsForValue().get("im:presence:1"));
+    }
+
+    @Test
+    void storesMessageWhenTargetNodeIsGone() throws Exception {
+        int portA = startNode("node-a", "--websocket.mailbox.store=redis");
+        Session alice = connect(portA, "1", new LinkedBlockingQueue<>());
+        Assertions.assertEquals("node-a", awaitPresence("1"));
+
+        // 3的在线状态指向已经宕机、不再订阅的节点, 转发没有接收者, 消息进入离线信箱
+        redisTemplate.opsForValue().set("im:presence:3", "node-gone", 1, TimeUnit.MINUTES);
+        alice.getBasicRemote().sendText("{\"toUserId\":\"3\",\"text\":\"are you there\"}");
+        Set<String> stored = awaitMailbox("3");
+        Assertions.assertEquals(1, stored.size());
+        Assertions.assertTrue(stored.iterator().next().contains("are you there"));
+    }
+
+    @Test
+    void storesForwardedMessageWhenUserLeftTargetNode() throws Exception {
+        int portA = startNode("node-a", "--websocket.mailbox.store=redis");
+        startNode("node-b", "--websocket.mailbox.store=redis");
+        Session alice = connect(portA, "1", new LinkedBlockingQueue<>());
+        Assertions.assertEquals("node-a", awaitPresence("1"));
+
+        // node-b在线并订阅了转发频道, 但3已经不在node-b上, node-b收到后存入离线信箱
+        redisTemplate.opsForValue().set("im:presence:3", "node-b", 1, TimeUnit.MINUTES);
+        alice.getBasicRemote().sendText("{\"toUserId\":\"3\",\"text\":\"missed you\"}");
+        Set<String> stored = awaitMailbox("3");
+        Assertions.assertEquals(1, stored.size());
+        Assertions.assertTrue(stored.iterator().next().contains("missed you"));
+    }
+
+    private int startNode(String nodeId, String... extraArgs) throws Exception {
+        int port = freePort();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+                DemoApplication.class.getName(),
+                "--server.port=" + port,
+                "--spring.redis.port=" + redisPort,
+                "--websocket.cluster.enabled=true",
+                "--websocket.cluster.node-id=" + nodeId,
+                "--websocket.cluster.presence-ttl=3s",
+                "--websocket.cluster.heartbeat-interval=1s"));
+        command.addAll(Arrays.asList(extraArgs));
+        Process process = new ProcessBuilder(command)
+                .inheritIO()
+                .start();
+        nodes.add(process);
+        long deadline = System.currentTimeMillis() + 60000;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                return port;
+            } catch (IOException e) {
+                Assertions.assertTrue(process.isAlive(), nodeId + "启动失败");
+                Thread.sleep(200);
+            }
+        }
+        throw new IllegalStateException(nodeId + "启动超时");
+    }
+
+    private Session connect(int port, String userId, BlockingQueue<String> inbox) throws Exception {
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        Session session = container.connectToServer(new Endpoint() {
+            @Override
+            public void onOpen(Session session, EndpointConfig config) {
+                session.addMessageHandler(new MessageHandler.Whole<String>() {
+                    @Override
+                    public void onMessage(String message) {
+                        inbox.add(message);
+                    }
+                });
+            }
+        }, ClientEndpointConfig.Builder.create().build(), URI.create("ws://localhost:" + port + "/imserver/" + userId));
+        clients.add(session);
+        return session;
+    }
+
+    private String awaitPresence(String userId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        String node;
+        while ((node = redisTemplate.opsForValue().get("im:presence:" + userId)) == null
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        return node;
+    }
+
+    private Set<String> awaitMailbox(String userId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        Set<String> members;
+        while ((members = redisTemplate.opsForZSet().range("im:mailbox:{" + userId + "}", 0, -1)).isEmpty()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        return members;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.demo;
+
+import com.example.DemoApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.netty.NettyWebServer;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.ContainerProvider;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * reactive模式下的/imserver协议与servlet模式相同
+ */
+@SpringBootTest(classes = DemoApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.main.web-application-type=reactive")
+class ReactiveModeTests {
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private ReactiveWebServerApplicationContext context;
+
+    private final List<Session> clients = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        for (Session client : clients) {
+            try {
+                client.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    @Test
+    void runsOnReactorNetty() {
+        Assertions.assertTrue(context.getWebServer() instanceof NettyWebServer);
+    }
+
+    @Test
+    void routesMessagesAndRooms() throws Exception {
+        BlockingQueue<String> inboxA = new LinkedBlockingQueue<>();
+        BlockingQueue<String> inboxB = new LinkedBlockingQueue<>();
+        Session alice = connect("reactive-a", inboxA);
+        Session bob = connect("reactive-b", inboxB);
+
+        alice.getBasicRemote().sendText("{\"toUserId\":\"reactive-b\",\"text\":\"hello\"}");
+        String received = inboxB.poll(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(received);
+        Assertions.assertTrue(received.contains("\"fromUserId\":\"reactive-a\""));
+        Assertions.assertTrue(received.contains("hello"));
+
+        bob.getBasicRemote().sendText("{\"type\":\"join\",\"roomId\":\"reactive\"}");
+        alice.getBasicRemote().sendText("{\"type\":\"join\",\"roomId\":\"reactive\"}");
+        Thread.sleep(200);
+        alice.getBasicRemote().sendText("{\"roomId\":\"reactive\",\"text\":\"everyone\"}");
+        received = inboxB.poll(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(received);
+        Assertions.assertTrue(received.contains("everyone"));
+    }
+
+    private Session connect(String userId, BlockingQueue<String> inbox) throws Exception {
+        Session session = ContainerProvider.getWebSocketContainer().connectToServer(new Endpoint() {
+            @Override
+            public void onOpen(Session session, EndpointConfig config) {
+                session.addMessageHandler(new MessageHandler.Whole<String>() {
+                    @Override
+                    public void onMessage(String message) {
+                        inbox.add(message);
+                    }
+                });
+            }
+        }, ClientEndpointConfig.Builder.create().build(), URI.create("ws://localhost:" + port + "/imserver/" + userId));
+        clients.add(session);
+        return session;
+    }
+}
@@ -0,0 +1,399 @@
+package com.example.demo;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.example.codec.BinaryMessageCodec;
+import com.example.codec.ChatMessage;
+import com.example.codec.JsonMessageCodec;
+import com.example.common.WebSocketDeliveryProperties;
+import com.example.common.WebSocketLifecycleProperties;
+import com.example.common.WebSocketMailboxProperties;
+import com.example.common.WebSocketOutboundProperties;
+import com.example.mailbox.LocalMailboxStore;
+import com.example.mailbox.MailboxMessage;
+import com.example.mailbox.MailboxService;
+import com.example.service.ConnectionStats;
+import com.example.service.DeliveryLanes;
+import com.example.service.OutboundQueue;
+import com.example.service.OverflowPolicy;
+import com.example.service.RoomRegistry;
+import com.example.service.SessionLifecycleManager;
+import com.example.service.WebSocketConnection;
+import com.example.service.WebSocketServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.websocket.CloseReason;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不启动spring容器和servlet容器, 连接用{@link TestConnection}模拟
+ */
+class WebSocketServiceTests {
+
+    @Test
+    void outboundQueueCoalescesAndDropsOldest() {
+        List<String> frames = new ArrayList<>();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        WebSocketConnection connection = new TestConnection(frames, pending);
+        WebSocketOutboundProperties properties = new WebSocketOutboundProperties();
+        properties.setQueueCapacity(3);
+        properties.setCoalesceMaxSize(10);
+        properties.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+        OutboundQueue outbound = new OutboundQueue("1", connection, properties);
+
+        // 第一帧发送中, 后面的消息排队
+        Assertions.assertTrue(outbound.offer("a"));
+        for (String text : new String[]{"b", "c", "d", "e"}) {
+            Assertions.assertTrue(outbound.offer(text));
+        }
+        Assertions.assertEquals(1, frames.size());
+        Assertions.assertEquals(3, outbound.stats().getQueueDepth());
+        Assertions.assertEquals(1, outbound.stats().getDropped());
+
+        // 第一帧完成后, 排队的小消息合并成一帧
+        pending.remove(0).complete(null);
+        Assertions.assertEquals("c\nd\ne", frames.get(1));
+        pending.remove(0).complete(null);
+        OutboundQueue.Stats stats = outbound.stats();
+        Assertions.assertEquals(0, stats.getQueueDepth());
+        Assertions.assertEquals(4, stats.getSentMessages());
+        Assertions.assertEquals(2, stats.getSentFrames());
+    }
+
+    @Test
+    void blockPolicyWaitsOnSenderThreadOnly() throws Exception {
+        List<String> frames = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> pending = Collections.synchronizedList(new ArrayList<>());
+        WebSocketConnection connection = new TestConnection(frames, pending);
+        WebSocketOutboundProperties properties = new WebSocketOutboundProperties();
+        properties.setQueueCapacity(2);
+        properties.setCoalesceMaxSize(1);
+        properties.setOverflowPolicy(OverflowPolicy.BLOCK);
+        properties.setBlockTimeout(Duration.ofMillis(200));
+        OutboundQueue outbound = new OutboundQueue("1", connection, properties);
+        for (String text : new String[]{"a", "b", "c"}) {
+            Assertions.assertTrue(outbound.offer(text));
+        }
+
+        // 入队在通道线程中执行, 队列满时不等待, 直接丢弃
+        long start = System.nanoTime();
+        Assertions.assertFalse(outbound.offer("d"));
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+        Assertions.assertEquals(1, outbound.stats().getDropped());
+
+        // 发送方在自己的线程里等待, 没有空位时超时
+        start = System.nanoTime();
+        Assertions.assertFalse(outbound.awaitCapacity());
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+
+        // 等待期间上一帧完成, 发送方被唤醒后入队
+        CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pending.remove(0).complete(null);
+        });
+        Assertions.assertTrue(outbound.awaitCapacity());
+        Assertions.assertTrue(outbound.offer("e"));
+        // 取出b后就唤醒发送方, b的发送可能还没开始
+        long deadline = System.currentTimeMillis() + 5000;
+        while (frames.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(Arrays.asList("a", "b"), frames);
+    }
+
+    @Test
+    void batchWindowPacksMessagesIntoOneFrame() throws InterruptedException {
+        List<String> frames = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> pending = Collections.synchronizedList(new ArrayList<>());
+        WebSocketConnection connection = new TestConnection(frames, pending);
+        WebSocketOutboundProperties properties = new WebSocketOutboundProperties();
+        properties.setBatchWindow(Duration.ofMillis(200));
+        properties.setBatchMaxMessages(5);
+        OutboundQueue outbound = new OutboundQueue("1", connection, properties);
+
+        // 窗口内的消息等待合并, 到期后一帧发出
+        Assertions.assertTrue(outbound.offer("a"));
+        Assertions.assertTrue(outbound.offer("b"));
+        Assertions.assertTrue(frames.isEmpty());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (frames.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals("a\nb", frames.get(0));
+        pending.remove(0).complete(null);
+
+        // 排队达到batchMaxMessages时不等窗口
+        for (String text : new String[]{"c", "d", "e", "f", "g"}) {
+            Assertions.assertTrue(outbound.offer(text));
+        }
+        Assertions.assertEquals(2, frames.size());
+        Assertions.assertEquals("c\nd\ne\nf\ng", frames.get(1));
+    }
+
+    @Test
+    void roomRegistryTracksMembership() {
+        RoomRegistry registry = new RoomRegistry();
+        registry.join("r1", "1");
+        registry.join("r1", "2");
+        registry.join("r2", "1");
+        Assertions.assertEquals(2, registry.members("r1").size());
+        registry.leave("r1", "2");
+        Assertions.assertEquals(1, registry.members("r1").size());
+        registry.leaveAll("1");
+        Assertions.assertTrue(registry.members("r1").isEmpty());
+        Assertions.assertTrue(registry.members("r2").isEmpty());
+        Assertions.assertEquals(0, registry.roomCount());
+    }
+
+    @Test
+    void localMailboxIsBoundedAndResumable() {
+        WebSocketMailboxProperties properties = new WebSocketMailboxProperties();
+        properties.setCapacity(3);
+        LocalMailboxStore store = new LocalMailboxStore(properties);
+        for (int i = 1; i <= 5; i++) {
+            Assertions.assertEquals(i, store.append("1", "m" + i));
+        }
+        // 超出容量丢弃最早的两条
+        List<MailboxMessage> all = store.fetch("1", 0, 10);
+        Assertions.assertEquals(3, all.size());
+        Assertions.assertEquals(3, all.get(0).getSeq());
+
+        // 从序号3之后继续, 确认后删除
+        List<MailboxMessage> rest = store.fetch("1", 3, 1);
+        Assertions.assertEquals(1, rest.size());
+        Assertions.assertEquals("m4", rest.get(0).getMessage());
+        store.ack("1", 4);
+        Assertions.assertEquals(1, store.fetch("1", 0, 10).size());
+        Assertions.assertEquals(6, store.append("1", "m6"));
+    }
+
+    @Test
+    void mailboxPushesNewMessagesAndIgnoresStaleSeq() throws InterruptedException {
+        WebSocketMailboxProperties properties = new WebSocketMailboxProperties();
+        LocalMailboxStore store = new LocalMailboxStore(properties);
+        MailboxService mailbox = new MailboxService(store, properties);
+        WebSocketServer server = new WebSocketServer();
+        Object previous = ReflectionTestUtils.getField(WebSocketServer.class, "mailboxService");
+        server.setMailboxService(mailbox);
+        List<String> frames = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> pending = Collections.synchronizedList(new ArrayList<>());
+        WebSocketConnection connection = new TestConnection(frames, pending);
+        try {
+            // 上线时推送已有的离线消息, 待确认期间新存入的消息不推送
+            store.append("mbx", "m1");
+            server.onOpen(connection, "mbx");
+            Assertions.assertTrue(awaitFrame(frames, pending, 1).contains("m1"));
+            mailbox.store("mbx", "m2");
+
+            // 确认后推送下一批; 没有待确认批次时新消息立即推送
+            mailbox.ack("mbx", 1);
+            Assertions.assertTrue(awaitFrame(frames, pending, 2).contains("m2"));
+            mailbox.ack("mbx", 2);
+            mailbox.store("mbx", "m3");
+            Assertions.assertTrue(awaitFrame(frames, pending, 3).contains("m3"));
+
+            // 序号重置后客户端带来的旧序号超过当前最大序号, 不删除新消息
+            mailbox.resume("mbx", 100);
+            Assertions.assertTrue(awaitFrame(frames, pending, 4).contains("m3"));
+            mailbox.ack("mbx", 100);
+            mailbox.resume("mbx", 0);
+            Assertions.assertTrue(awaitFrame(frames, pending, 5).contains("m3"));
+            Assertions.assertEquals(1, store.fetch("mbx", 0, 10).size());
+        } finally {
+            server.onClose(connection, "mbx");
+            server.setMailboxService((MailboxService) previous);
+            mailbox.shutdown();
+        }
+    }
+
+    @Test
+    void codecDecodesOnlyNeededFieldsAndEscapesReplies() {
+        ChatMessage message = new ChatMessage();
+        JsonMessageCodec.decode("{ \"meta\": {\"a\": [1, {\"b\": \"}\"}]}, \"toUserId\": 2, "
+                + "\"text\": \"say \\\"hi\\\"\\n\\u4f60\", \"seq\": 7 }", message);
+        Assertions.assertEquals("2", message.getToUserId());
+        Assertions.assertEquals("say \"hi\"\n你", message.getText());
+        Assertions.assertEquals(7, message.getSeq());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> JsonMessageCodec.decode("{\"text\":", message));
+
+        // 回复是合法json, 特殊字符正确转义
+        JSONObject reply = JSONUtil.parseObj(JsonMessageCodec.encodeChat("1", "a\"b\\c\n\u0001"));
+        Assertions.assertEquals("1", reply.getStr("fromUserId"));
+        Assertions.assertEquals("a\"b\\c\n\u0001", reply.getStr("text"));
+
+        // 二进制帧: 服务端编码的一对一消息和客户端发来的格式相同
+        ByteBuffer frame = BinaryMessageCodec.encodeChat("3", "你好");
+        BinaryMessageCodec.decode(frame.duplicate(), message);
+        Assertions.assertEquals("3", message.getToUserId());
+        Assertions.assertEquals("你好", message.getText());
+        BinaryMessageCodec.release(frame);
+        ByteBuffer json = BinaryMessageCodec.wrapJson("{\"type\":\"ack\",\"seq\":5}");
+        BinaryMessageCodec.decode(json, message);
+        Assertions.assertEquals("ack", message.getType());
+        Assertions.assertEquals(5, message.getSeq());
+    }
+
+    @Test
+    void reconnectKeepsOnlineCountAndIdleSessionsAreEvicted() throws InterruptedException {
+        WebSocketLifecycleProperties properties = new WebSocketLifecycleProperties();
+        properties.setPingInterval(Duration.ofMillis(50));
+        properties.setIdleTimeout(Duration.ofMillis(150));
+        properties.setTickDuration(Duration.ofMillis(10));
+        SessionLifecycleManager manager = new SessionLifecycleManager(properties);
+        WebSocketServer server = new WebSocketServer();
+        Object previous = ReflectionTestUtils.getField(WebSocketServer.class, "lifecycleManager");
+        server.setLifecycleManager(manager);
+        try {
+            int online = WebSocketServer.connectionStats().getOnline();
+            WebSocketConnection first = new TestConnection(new ArrayList<>(), new ArrayList<>());
+            WebSocketConnection second = new TestConnection(new ArrayList<>(), new ArrayList<>());
+            server.onOpen(first, "lifecycle");
+            server.onOpen(second, "lifecycle");
+            // 被替换的旧连接关闭时不影响新连接和在线数
+            server.onClose(first, "lifecycle");
+            Assertions.assertEquals(online + 1, WebSocketServer.connectionStats().getOnline());
+            Assertions.assertTrue(WebSocketServer.localUserIds().contains("lifecycle"));
+
+            // 不回复pong的连接在空闲超时后被驱逐
+            long deadline = System.currentTimeMillis() + 5000;
+            while (WebSocketServer.localUserIds().contains("lifecycle") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            ConnectionStats stats = WebSocketServer.connectionStats();
+            Assertions.assertFalse(WebSocketServer.localUserIds().contains("lifecycle"));
+            Assertions.assertEquals(online, stats.getOnline());
+            Assertions.assertTrue(stats.getReplaced() >= 1);
+            Assertions.assertTrue(stats.getEvicted() >= 1);
+            Assertions.assertTrue(stats.getPings() >= 1);
+        } finally {
+            server.setLifecycleManager((SessionLifecycleManager) previous);
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void deliveryLanesKeepPerUserOrder() throws InterruptedException {
+        WebSocketDeliveryProperties properties = new WebSocketDeliveryProperties();
+        properties.setLanes(4);
+        properties.setOfferTimeout(Duration.ofSeconds(1));
+        DeliveryLanes lanes = new DeliveryLanes(properties);
+        try {
+            int users = 16;
+            int messages = 1000;
+            Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+            CountDownLatch done = new CountDownLatch(users * messages);
+            // 多个发送方线程交替提交, 每个用户收到的顺序与提交顺序一致
+            List<Thread> senders = new ArrayList<>();
+            for (int u = 0; u < users; u++) {
+                String userId = "u" + u;
+                received.put(userId, new ArrayList<>());
+                Assertions.assertEquals(lanes.laneOf(userId), lanes.laneOf(new String(userId)));
+                senders.add(new Thread(() -> {
+                    for (int i = 0; i < messages; i++) {
+                        int seq = i;
+                        Assertions.assertTrue(lanes.execute(userId, () -> {
+                            received.get(userId).add(seq);
+                            done.countDown();
+                        }));
+                    }
+                }));
+            }
+            senders.forEach(Thread::start);
+            Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+            for (List<Integer> sequence : received.values()) {
+                for (int i = 0; i < messages; i++) {
+                    Assertions.assertEquals(i, sequence.get(i));
+                }
+            }
+            Assertions.assertEquals(0, lanes.stats().stream().mapToLong(DeliveryLanes.Stats::getRejected).sum());
+        } finally {
+            lanes.shutdown();
+        }
+    }
+
+    /**
+     * 等待第count帧发出并完成它的发送回调
+     */
+    private static String awaitFrame(List<String> frames, List<CompletableFuture<Void>> pending, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (frames.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(count, frames.size());
+        pending.remove(0).complete(null);
+        return frames.get(count - 1);
+    }
+
+    /**
+     * 异步发送只记录, 由测试决定何时完成
+     */
+    private static class TestConnection implements WebSocketConnection {
+        private final List<String> frames;
+        private final List<CompletableFuture<Void>> pending;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        private TestConnection(List<String> frames, List<CompletableFuture<Void>> pending) {
+            this.frames = frames;
+            this.pending = pending;
+        }
+
+        @Override
+        public String getId() {
+            return "1";
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public String getRequestParameter(String name) {
+            return null;
+        }
+
+        @Override
+        public CompletableFuture<Void> sendText(String text) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            frames.add(text);
+            pending.add(future);
+            return future;
+        }
+
+        @Override
+        public CompletableFuture<Void> sendBinary(ByteBuffer data) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<Void> sendPing() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void close(CloseReason reason) {
+        }
+    }
+}